@@ -0,0 +1,51 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.configuration;
+
+import org.fineract.messagegateway.sms.util.CallbackEvent;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.SimpleApplicationEventMulticaster;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.task.TaskExecutor;
+
+/**
+ * Hands delivery callbacks to the event executor and delivers every other event on the publishing thread. Only
+ * callbacks come in bursts large enough to fill the queue, and the <code>discard</code> overflow policy of
+ * {@link EventExecutorConfiguration} may drop them; an event such as a bridge invalidation must always reach its
+ * listeners, so it never goes through the queue.
+ */
+public class CallbackEventMulticaster extends SimpleApplicationEventMulticaster {
+
+	public CallbackEventMulticaster(final TaskExecutor callbackExecutor) {
+		setTaskExecutor(callbackExecutor);
+	}
+
+	@Override
+	public void multicastEvent(final ApplicationEvent event, final ResolvableType eventType) {
+		if (event instanceof CallbackEvent) {
+			super.multicastEvent(event, eventType);
+			return;
+		}
+		final ResolvableType type = eventType != null ? eventType : ResolvableType.forInstance(event);
+		for (ApplicationListener<?> listener : getApplicationListeners(event, type)) {
+			invokeListener(listener, event);
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.configuration;
+
+import java.util.Collections;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+
+/**
+ * Executor of the delivery callback listeners, such as the callback forwarder. It runs
+ * <code>events.executor.concurrency</code> threads in front of a queue of <code>events.executor.queueCapacity</code>
+ * events, so a burst of delivery reports waits in the queue instead of starting a thread per event. Once the queue is
+ * full, <code>events.executor.overflowPolicy</code> decides what happens to the next event: <code>caller-runs</code>
+ * runs it on the publishing thread, which slows the publisher down, and <code>discard</code> drops it with a warning.
+ * Other events, such as bridge invalidations, never reach this executor and cannot be dropped, see
+ * {@link CallbackEventMulticaster}.
+ * <p>
+ * The pool is published through the <code>executor.*</code> metrics with the <code>name=events</code> tag, and
+ * overflowing events are counted by <code>events.executor.overflow</code>.
+ */
+@Configuration
+public class EventExecutorConfiguration {
+
+	private static final Logger logger = LoggerFactory.getLogger(EventExecutorConfiguration.class);
+
+	static final String DISCARD = "discard";
+
+	@Value("${events.executor.concurrency:8}")
+	private int concurrency;
+
+	@Value("${events.executor.queueCapacity:10000}")
+	private int queueCapacity;
+
+	@Value("${events.executor.overflowPolicy:caller-runs}")
+	private String overflowPolicy;
+
+	@Bean
+	public ThreadPoolTaskExecutor eventTaskExecutor(final MeterRegistry meterRegistry) {
+		final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(this.concurrency);
+		executor.setMaxPoolSize(this.concurrency);
+		executor.setQueueCapacity(this.queueCapacity);
+		executor.setThreadNamePrefix("events-");
+		executor.setRejectedExecutionHandler(overflowHandler(meterRegistry));
+		executor.setWaitForTasksToCompleteOnShutdown(true);
+		executor.setAwaitTerminationSeconds(30);
+		executor.initialize();
+		new ExecutorServiceMetrics(executor.getThreadPoolExecutor(), "events", Collections.<Tag>emptyList())
+				.bindTo(meterRegistry);
+		logger.info("Event listeners run on {} threads with a queue of {} events, overflow policy {}", this.concurrency,
+				this.queueCapacity, this.overflowPolicy);
+		return executor;
+	}
+
+	private RejectedExecutionHandler overflowHandler(final MeterRegistry meterRegistry) {
+		final Counter overflow = Counter.builder("events.executor.overflow")
+				.description("Events that did not fit in the event queue")
+				.tag("policy", this.overflowPolicy)
+				.register(meterRegistry);
+		final RejectedExecutionHandler policy = DISCARD.equals(this.overflowPolicy)
+				? (task, executor) -> logger.warn("Event queue is full, a delivery callback was discarded")
+				: new ThreadPoolExecutor.CallerRunsPolicy();
+		return (task, executor) -> {
+			overflow.increment();
+			policy.rejectedExecution(task, executor);
+		};
+	}
+}
@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.configuration;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Shared HTTP transport of the gateway. Providers and the callback forwarder use the single {@link OkHttpClient}
+ * declared here, so connections to a provider are pooled and kept alive between messages instead of paying a TCP and
+ * TLS handshake for every SMS. The pool size is published as the <code>http.client.pool.connections</code> gauge, one
+ * series per protocol, so their sum is the size of the pool.
+ */
+@Configuration
+public class HttpClientConfiguration {
+
+	private static final Logger logger = LoggerFactory.getLogger(HttpClientConfiguration.class);
+
+	@Value("${http.client.connectTimeoutMs:5000}")
+	private long connectTimeoutMs;
+
+	@Value("${http.client.readTimeoutMs:30000}")
+	private long readTimeoutMs;
+
+	@Value("${http.client.writeTimeoutMs:30000}")
+	private long writeTimeoutMs;
+
+	@Value("${http.client.maxIdleConnections:20}")
+	private int maxIdleConnections;
+
+	@Value("${http.client.keepAliveMs:300000}")
+	private long keepAliveMs;
+
+	@Value("${http.client.http2Enabled:false}")
+	private boolean http2Enabled;
+
+	@Bean
+	public ConnectionPool httpConnectionPool(final MeterRegistry meterRegistry) {
+		final ConnectionPool pool = new ConnectionPool(this.maxIdleConnections, this.keepAliveMs);
+		Gauge.builder("http.client.pool.connections", pool, ConnectionPool::getHttpConnectionCount)
+				.description("Open connections in the shared HTTP client pool")
+				.tag("protocol", "http/1.1")
+				.register(meterRegistry);
+		Gauge.builder("http.client.pool.connections", pool, ConnectionPool::getSpdyConnectionCount)
+				.description("Open connections in the shared HTTP client pool")
+				.tag("protocol", "h2")
+				.register(meterRegistry);
+		return pool;
+	}
+
+	/**
+	 * HTTP/2 is only offered when <code>http.client.http2Enabled</code> is set. It is negotiated through ALPN, and
+	 * connections fall back to HTTP/1.1 keep-alive when the provider or the runtime does not support it.
+	 */
+	@Bean
+	public OkHttpClient httpClient(final ConnectionPool httpConnectionPool) {
+		final OkHttpClient client = new OkHttpClient();
+		client.setConnectionPool(httpConnectionPool);
+		client.setConnectTimeout(this.connectTimeoutMs, TimeUnit.MILLISECONDS);
+		client.setReadTimeout(this.readTimeoutMs, TimeUnit.MILLISECONDS);
+		client.setWriteTimeout(this.writeTimeoutMs, TimeUnit.MILLISECONDS);
+		client.setProtocols(this.http2Enabled ? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)
+				: Collections.singletonList(Protocol.HTTP_1_1));
+		logger.info("Shared HTTP client: {} idle connections kept alive for {} ms, HTTP/2 {}", this.maxIdleConnections,
+				this.keepAliveMs, this.http2Enabled ? "enabled" : "disabled");
+		return client;
+	}
+}
@@ -29,7 +29,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.event.SimpleApplicationEventMulticaster;
-import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 
 @Configuration
@@ -56,9 +56,7 @@ public class MessageGatewayConfiguration {
     }
 
     @Bean
-    public SimpleApplicationEventMulticaster applicationEventMulticaster() {
-        final SimpleApplicationEventMulticaster multicaster = new SimpleApplicationEventMulticaster();
-        multicaster.setTaskExecutor(new SimpleAsyncTaskExecutor());
-        return multicaster;
+    public SimpleApplicationEventMulticaster applicationEventMulticaster(final ThreadPoolTaskExecutor eventTaskExecutor) {
+        return new CallbackEventMulticaster(eventTaskExecutor);
     }
 }
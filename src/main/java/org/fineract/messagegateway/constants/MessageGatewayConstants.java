@@ -37,4 +37,11 @@ public interface MessageGatewayConstants {
 
 	String PROVIDER_API_KEY = "Provider_API_Key";
 	String PROVIDER_PROJECT_ID = "Provider_Project_Id";
+
+	String DISPATCH_CONCURRENCY = "Dispatch_Concurrency";
+	String DISPATCH_ORDERED = "Dispatch_Ordered";
+	String RATE_LIMIT_TPS = "Rate_Limit_Tps";
+	String RATE_LIMIT_BURST = "Rate_Limit_Burst";
+	String ROUTING_WEIGHT = "Routing_Weight";
+	String ROUTING_COST = "Routing_Cost";
 }
@@ -24,9 +24,9 @@ import java.util.UUID;
 
 import org.fineract.messagegateway.exception.UnexpectedException;
 import org.fineract.messagegateway.sms.domain.SMSBridge;
+import org.fineract.messagegateway.tenants.cache.TenantAuthCache;
 import org.fineract.messagegateway.tenants.domain.Tenant;
 import org.fineract.messagegateway.tenants.repository.TenantRepository;
-import org.fineract.messagegateway.tenants.service.TenantsService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -42,15 +42,14 @@ public class SecurityService {
     private TenantRepository tenantRepository ;
     
     @Autowired
-    private TenantsService tenantService ;
+    private TenantAuthCache tenantAuthCache ;
     
     public SecurityService() {
         super();
     }
     
     public Tenant authenticate(final String tenantId, final String tenantAppKey) {
-    	Tenant tenant = this.tenantService.findTenantByTenantIdAndTenantAppKey(tenantId, tenantAppKey) ;
-    	return tenant ;
+    	return this.tenantAuthCache.authenticate(tenantId, tenantAppKey) ;
     }
 
     /*public void verifyApiKey(final String apiKey, final String tenantId) {
@@ -18,27 +18,25 @@
  */
 package org.fineract.messagegateway.sms.api;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collection;
 import java.util.List;
 
 import org.fineract.messagegateway.constants.MessageGatewayConstants;
 import org.fineract.messagegateway.exception.MessageGatewayException;
 import org.fineract.messagegateway.sms.data.DeliveryStatusData;
-import org.fineract.messagegateway.sms.domain.SMSBridge;
+import org.fineract.messagegateway.sms.data.SMSUploadData;
 import org.fineract.messagegateway.sms.domain.SMSMessage;
-import org.fineract.messagegateway.sms.exception.ProviderNotDefinedException;
-import org.fineract.messagegateway.sms.exception.SMSBridgeNotFoundException;
-import org.fineract.messagegateway.sms.providers.SMSProvider;
 import org.fineract.messagegateway.sms.providers.impl.infobip.InfoBipApiResource;
 import org.fineract.messagegateway.sms.providers.impl.telerivet.TelerivetMessageProvider;
-import org.fineract.messagegateway.sms.repository.SMSBridgeRepository;
 import org.fineract.messagegateway.sms.repository.SmsOutboundMessageRepository;
+import org.fineract.messagegateway.sms.service.DeliveryStatusRefresher;
 import org.fineract.messagegateway.sms.service.SMSMessageService;
+import org.fineract.messagegateway.sms.service.SMSMessageUploadService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.ApplicationContext;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -61,10 +59,10 @@ public class SmsApiResource {
 	private TelerivetMessageProvider telerivetMessageProvider;
 
 	@Autowired
-	private  SMSBridgeRepository smsBridgeRepository;
+	private DeliveryStatusRefresher deliveryStatusRefresher;
 
 	@Autowired
-	private ApplicationContext applicationContext;
+	private SMSMessageUploadService smsMessageUploadService;
 
 	@Autowired
     public SmsApiResource(final SMSMessageService smsMessageService) {
@@ -72,12 +70,24 @@ public class SmsApiResource {
     }
 
     @RequestMapping(method = RequestMethod.POST, consumes = {"application/json"}, produces = {"application/json"})
-    public ResponseEntity<Void> sendShortMessages(@RequestHeader(MessageGatewayConstants.TENANT_IDENTIFIER_HEADER) final String tenantId,
+    public ResponseEntity<List<Long>> sendShortMessages(@RequestHeader(MessageGatewayConstants.TENANT_IDENTIFIER_HEADER) final String tenantId,
     		@RequestHeader(MessageGatewayConstants.TENANT_APPKEY_HEADER) final String appKey, 
     		@RequestBody final List<SMSMessage> payload) {
-		logger.info("Payload "+ payload.get(0).getMessage());
-    	this.smsMessageService.sendShortMessage(tenantId, appKey, payload);
-       return new ResponseEntity<>(HttpStatus.ACCEPTED);
+		logger.info("Accepting {} messages", payload.size());
+    	final List<Long> ids = this.smsMessageService.sendShortMessage(tenantId, appKey, payload);
+       return new ResponseEntity<>(ids, HttpStatus.ACCEPTED);
+    }
+
+    /**
+     * Streams a campaign of any size as newline delimited JSON, one message per line. Invalid lines are reported in
+     * the response and the other messages are sent.
+     */
+    @RequestMapping(method = RequestMethod.POST, consumes = {"application/x-ndjson"}, produces = {"application/json"})
+    public ResponseEntity<SMSUploadData> uploadShortMessages(@RequestHeader(MessageGatewayConstants.TENANT_IDENTIFIER_HEADER) final String tenantId,
+    		@RequestHeader(MessageGatewayConstants.TENANT_APPKEY_HEADER) final String appKey,
+    		final InputStream body) throws IOException {
+    	final SMSUploadData result = this.smsMessageUploadService.upload(tenantId, appKey, body);
+    	return new ResponseEntity<>(result, HttpStatus.ACCEPTED);
     }
 
     @RequestMapping(value = "/report", method = RequestMethod.POST, consumes = {"application/json"}, produces = {"application/json"})
@@ -86,30 +96,7 @@ public class SmsApiResource {
     		@RequestBody final Collection<Long> internalIds) throws MessageGatewayException {
     	Collection<DeliveryStatusData> deliveryStatus = this.smsMessageService.getDeliveryStatus(tenantId, appKey, internalIds) ;
 		logger.info("From SMS API Resource, successfully fetched the message status");
-		for(DeliveryStatusData deliveryStatusData :  deliveryStatus) {
-			if (deliveryStatusData.getDeliveryStatus() != 300) {
-				logger.info("Delivery status is still pending, fetching message status manually ");
-				SMSBridge bridge = smsBridgeRepository.findByIdAndTenantId(deliveryStatusData.getBridgeId(),
-						deliveryStatusData.getTenantId());
-				SMSProvider provider = null;
-				try {
-					if (bridge == null) {
-						throw new SMSBridgeNotFoundException(deliveryStatusData.getBridgeId());
-					}
-					logger.info("Finding provider for fetching message status....{}", bridge.getProviderKey());
-					provider = (SMSProvider) this.applicationContext.getBean(bridge.getProviderKey());
-					if (provider == null)
-						throw new ProviderNotDefinedException();
-					provider.updateStatusByMessageId(bridge, deliveryStatusData.getExternalId());
-					Collection<Long> id = new ArrayList<Long>();
-					id.add(Long.valueOf(deliveryStatusData.getId()));
-					Collection<DeliveryStatusData> messageDeliveryStatus = this.smsMessageService.getDeliveryStatus(tenantId, appKey, id);
-					deliveryStatus = messageDeliveryStatus;
-				} catch (ProviderNotDefinedException e) {
-					e.printStackTrace();
-				}
-			}
-		}
+		deliveryStatus = this.deliveryStatusRefresher.refresh(tenantId, appKey, deliveryStatus) ;
 		return new ResponseEntity<>(deliveryStatus, HttpStatus.OK);
 
 	}
@@ -0,0 +1,202 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.fineract.messagegateway.sms.data.DeliveryStatusData;
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Read-through cache of delivery statuses keyed by tenant and internal id, so that clients polling
+ * <code>/sms/report</code> for the same messages do not query <code>m_outbound_messages</code> every time. Delivered
+ * and failed statuses cannot change any more and are kept for <code>cache.deliveryStatus.finalTtlSeconds</code>, open
+ * ones only for <code>cache.deliveryStatus.openTtlSeconds</code>. Entries are updated in place when a message is sent
+ * and when a stored status is read back, and a final status is never replaced by an open one. The cache is bounded
+ * by the estimated size of its entries, <code>cache.deliveryStatus.maxBytes</code>.
+ * <p>
+ * Hit and miss counts are published as the <code>cache.*</code> metrics of the <code>deliveryStatuses</code> cache,
+ * with the hit ratio as <code>cache.hit.ratio</code>, and the lookup latency percentiles as the
+ * <code>sms.report.lookup</code> timer.
+ */
+@Component
+public class DeliveryStatusCache {
+
+	static final String CACHE_NAME = "deliveryStatuses";
+
+	//object headers, boxed fields, the key and the cache node of an entry, on top of its strings
+	private static final int ENTRY_OVERHEAD_BYTES = 240;
+
+	private final Cache<StatusKey, DeliveryStatusData> statuses;
+
+	private final Timer lookupTimer;
+
+	@Autowired
+	public DeliveryStatusCache(final MeterRegistry meterRegistry,
+							   @Value("${cache.deliveryStatus.finalTtlSeconds:86400}") final long finalTtlSeconds,
+							   @Value("${cache.deliveryStatus.openTtlSeconds:10}") final long openTtlSeconds,
+							   @Value("${cache.deliveryStatus.maxBytes:67108864}") final long maxBytes) {
+		this.statuses = Caffeine.newBuilder()
+				.expireAfter(new StatusExpiry(TimeUnit.SECONDS.toNanos(finalTtlSeconds), TimeUnit.SECONDS.toNanos(openTtlSeconds)))
+				.maximumWeight(maxBytes)
+				.weigher((StatusKey key, DeliveryStatusData status) -> weigh(status))
+				.recordStats()
+				.build();
+		CaffeineCacheMetrics.monitor(meterRegistry, this.statuses, CACHE_NAME);
+		Gauge.builder("cache.hit.ratio", this.statuses, cache -> cache.stats().hitRate())
+				.tag("cache", CACHE_NAME)
+				.description("Share of delivery status lookups answered from the cache")
+				.register(meterRegistry);
+		this.lookupTimer = Timer.builder("sms.report.lookup")
+				.description("Time to resolve the delivery statuses of a status report")
+				.publishPercentiles(0.5, 0.95, 0.99)
+				.register(meterRegistry);
+	}
+
+	/**
+	 * Returns the statuses of the messages, loading the ones that are not cached with one call to
+	 * <code>loader</code>. Messages the loader does not find are left out and not cached.
+	 *
+	 * @return the statuses in the order of <code>internalIds</code>
+	 */
+	public List<DeliveryStatusData> getAll(final Long tenantId, final Collection<Long> internalIds,
+			final Function<Collection<Long>, Collection<DeliveryStatusData>> loader) {
+		return this.lookupTimer.record(() -> {
+			final Set<StatusKey> keys = new LinkedHashSet<>();
+			for (Long internalId : internalIds) {
+				keys.add(new StatusKey(tenantId, internalId));
+			}
+			final Map<StatusKey, DeliveryStatusData> found = this.statuses.getAll(keys, missing -> {
+				final List<Long> missingIds = new ArrayList<>();
+				for (StatusKey key : missing) {
+					missingIds.add(key.internalId());
+				}
+				final Map<StatusKey, DeliveryStatusData> loaded = new HashMap<>();
+				for (DeliveryStatusData status : loader.apply(missingIds)) {
+					loaded.put(key(status), status);
+				}
+				return loaded;
+			});
+			final List<DeliveryStatusData> result = new ArrayList<>(found.size());
+			for (StatusKey key : keys) {
+				final DeliveryStatusData status = found.get(key);
+				if (status != null) {
+					result.add(status);
+				}
+			}
+			return result;
+		});
+	}
+
+	/**
+	 * Caches a status read from <code>m_outbound_messages</code>, unless a final status of the message is already
+	 * cached. Messages without an internal id cannot be polled and are not cached.
+	 */
+	public void put(final DeliveryStatusData status) {
+		if (status.getId() == null) {
+			return;
+		}
+		this.statuses.asMap().merge(key(status), status,
+				(cached, update) -> isFinal(cached) && !isFinal(update) ? cached : update);
+	}
+
+	/**
+	 * Caches the status of messages that have just been sent and stored.
+	 */
+	public void putAll(final Collection<SMSMessage> messages) {
+		for (SMSMessage message : messages) {
+			if (message.getInternalId() == null) {
+				continue;
+			}
+			put(new DeliveryStatusData(String.valueOf(message.getInternalId()), message.getExternalId(),
+					message.getDeliveredOnDate(), message.getDeliveryStatus(), message.getDeliveryErrorMessage(),
+					message.getBridgeId(), message.getTenantId()));
+		}
+	}
+
+	private static StatusKey key(final DeliveryStatusData status) {
+		return new StatusKey(status.getTenantId(), Long.valueOf(status.getId()));
+	}
+
+	private static boolean isFinal(final DeliveryStatusData status) {
+		return SmsMessageStatusType.fromInt(status.getDeliveryStatus()).isFinal();
+	}
+
+	private static int weigh(final DeliveryStatusData status) {
+		return ENTRY_OVERHEAD_BYTES + 2 * (length(status.getId()) + length(status.getExternalId())
+				+ length(status.getErrorMessage()));
+	}
+
+	private static int length(final String value) {
+		return value == null ? 0 : value.length();
+	}
+
+	record StatusKey(Long tenantId, Long internalId) {
+	}
+
+	private static final class StatusExpiry implements Expiry<StatusKey, DeliveryStatusData> {
+
+		private final long finalTtlNanos;
+
+		private final long openTtlNanos;
+
+		StatusExpiry(final long finalTtlNanos, final long openTtlNanos) {
+			this.finalTtlNanos = finalTtlNanos;
+			this.openTtlNanos = openTtlNanos;
+		}
+
+		@Override
+		public long expireAfterCreate(final StatusKey key, final DeliveryStatusData status, final long currentTime) {
+			return isFinal(status) ? this.finalTtlNanos : this.openTtlNanos;
+		}
+
+		@Override
+		public long expireAfterUpdate(final StatusKey key, final DeliveryStatusData status, final long currentTime,
+				final long currentDuration) {
+			return expireAfterCreate(key, status, currentTime);
+		}
+
+		@Override
+		public long expireAfterRead(final StatusKey key, final DeliveryStatusData status, final long currentTime,
+				final long currentDuration) {
+			return currentDuration;
+		}
+	}
+}
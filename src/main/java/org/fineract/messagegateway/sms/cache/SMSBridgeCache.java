@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.cache;
+
+import java.util.concurrent.TimeUnit;
+
+import org.fineract.messagegateway.sms.domain.SMSBridge;
+import org.fineract.messagegateway.sms.repository.SMSBridgeRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Read-through cache of {@link SMSBridge} entities keyed by tenant and bridge id, so that resolving the bridge of a
+ * message on the send path does not query the database. Entries expire after <code>cache.bridge.ttlSeconds</code>
+ * and are evicted explicitly whenever a bridge is updated or deleted. Hit and miss counts are published as the
+ * <code>cache.*</code> metrics of the <code>smsBridges</code> cache.
+ */
+@Component
+public class SMSBridgeCache {
+
+	private final SMSBridgeRepository smsBridgeRepository;
+
+	private final Cache<BridgeKey, SMSBridge> bridges;
+
+	private final ApplicationEventPublisher publisher;
+
+	@Autowired
+	public SMSBridgeCache(final SMSBridgeRepository smsBridgeRepository,
+						  final MeterRegistry meterRegistry,
+						  final ApplicationEventPublisher publisher,
+						  @Value("${cache.bridge.ttlSeconds:300}") final long ttlSeconds,
+						  @Value("${cache.bridge.maxSize:1000}") final long maxSize) {
+		this.smsBridgeRepository = smsBridgeRepository;
+		this.publisher = publisher;
+		this.bridges = Caffeine.newBuilder()
+				.expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+				.maximumSize(maxSize)
+				.recordStats()
+				.build();
+		CaffeineCacheMetrics.monitor(meterRegistry, this.bridges, "smsBridges");
+	}
+
+	/**
+	 * @return the bridge, or <code>null</code> when the tenant has no bridge with this id
+	 */
+	public SMSBridge get(final Long bridgeId, final Long tenantId) {
+		return this.bridges.get(new BridgeKey(tenantId, bridgeId),
+				key -> this.smsBridgeRepository.findByIdAndTenantId(key.bridgeId(), key.tenantId()));
+	}
+
+	/**
+	 * Evicts a bridge. When called inside a transaction the entry is evicted again once the transaction completes,
+	 * so that a concurrent send cannot cache the row as it was before the commit. A {@link SMSBridgeInvalidatedEvent}
+	 * is published for the bridge.
+	 */
+	public void invalidate(final Long tenantId, final Long bridgeId) {
+		final BridgeKey key = new BridgeKey(tenantId, bridgeId);
+		this.bridges.invalidate(key);
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCompletion(final int status) {
+					bridges.invalidate(key);
+				}
+			});
+		}
+		this.publisher.publishEvent(new SMSBridgeInvalidatedEvent(this, tenantId, bridgeId));
+	}
+
+	record BridgeKey(Long tenantId, Long bridgeId) {
+	}
+}
@@ -0,0 +1,45 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.cache;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published when a bridge is updated or deleted, so that state derived from its configuration can be dropped.
+ */
+public class SMSBridgeInvalidatedEvent extends ApplicationEvent {
+
+	private final Long tenantId;
+
+	private final Long bridgeId;
+
+	public SMSBridgeInvalidatedEvent(final Object source, final Long tenantId, final Long bridgeId) {
+		super(source);
+		this.tenantId = tenantId;
+		this.bridgeId = bridgeId;
+	}
+
+	public Long getTenantId() {
+		return this.tenantId;
+	}
+
+	public Long getBridgeId() {
+		return this.bridgeId;
+	}
+}
@@ -0,0 +1,456 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.callback;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.fineract.messagegateway.sms.data.DeliveryStatusData;
+import org.fineract.messagegateway.sms.dispatch.DispatchThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.google.gson.Gson;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Forwards delivery statuses to <code>/sms/callback/</code> of the downstream system. Statuses are queued and sent by
+ * a single thread as one JSON array per <code>callbacks.forward.batchSize</code> statuses, or per
+ * <code>callbacks.forward.maxDelayMs</code> when fewer arrive.
+ * <p>
+ * A failed POST is retried <code>callbacks.forward.maxAttempts</code> times with a doubling backoff. After that the
+ * batch is written to <code>callbacks.forward.spoolDir</code>. Spooled batches, including those left by a previous run,
+ * are sent oldest first once the downstream system answers, and as long as any remain new batches are spooled behind
+ * them, so a newer status never overtakes an older one of the same message. The queue is spooled as well when the
+ * gateway stops.
+ * <p>
+ * A <code>4xx</code> answer other than <code>408</code> or <code>429</code> means the downstream system will never
+ * accept the batch, so it is dropped with an error and counted by <code>callbacks.forward.rejected</code> instead of
+ * being retried. The spool holds at most <code>callbacks.forward.maxSpoolFiles</code> batches; batches that do not fit
+ * are dropped and counted by <code>callbacks.forward.dropped</code>. A spooled batch is renamed before it is sent, so
+ * a file that cannot be deleted afterwards is not sent again.
+ */
+@Component
+public class CallbackForwarder {
+
+	private static final Logger logger = LoggerFactory.getLogger(CallbackForwarder.class);
+
+	private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+	private static final String SPOOL_SUFFIX = ".json";
+
+	private static final String SENDING_SUFFIX = ".sending";
+
+	private static final int REPLAYS_PER_ROUND = 10;
+
+	private enum PostResult {
+		ACCEPTED, REJECTED, UNAVAILABLE
+	}
+
+	private final OkHttpClient client;
+
+	private final Gson gson = new Gson();
+
+	private final String url;
+
+	private final int batchSize;
+
+	private final long maxDelayMs;
+
+	private final int maxAttempts;
+
+	private final long initialBackoffMs;
+
+	private final long maxBackoffMs;
+
+	private final Path spoolDir;
+
+	private final int maxSpoolFiles;
+
+	private final AtomicInteger spoolFiles = new AtomicInteger();
+
+	private final BlockingQueue<DeliveryStatusData> queue;
+
+	private final AtomicLong spoolSequence = new AtomicLong();
+
+	private final Counter sentCounter;
+
+	private final Counter spooledCounter;
+
+	private final Counter rejectedCounter;
+
+	private final Counter droppedCounter;
+
+	private ExecutorService sender;
+
+	private long backoffMs;
+
+	private long downUntil;
+
+	@Autowired
+	public CallbackForwarder(final OkHttpClient client,
+							 final MeterRegistry meterRegistry,
+							 @Value("${callbackconfig.protocol}") final String protocol,
+							 @Value("${callbackconfig.host}") final String host,
+							 @Value("${callbackconfig.port}") final int port,
+							 @Value("${callbacks.forward.batchSize:500}") final int batchSize,
+							 @Value("${callbacks.forward.maxDelayMs:200}") final long maxDelayMs,
+							 @Value("${callbacks.forward.queueCapacity:100000}") final int queueCapacity,
+							 @Value("${callbacks.forward.maxAttempts:5}") final int maxAttempts,
+							 @Value("${callbacks.forward.initialBackoffMs:500}") final long initialBackoffMs,
+							 @Value("${callbacks.forward.maxBackoffMs:30000}") final long maxBackoffMs,
+							 @Value("${callbacks.forward.spoolDir:callback-spool}") final String spoolDir,
+							 @Value("${callbacks.forward.maxSpoolFiles:10000}") final int maxSpoolFiles) {
+		this.client = client;
+		this.url = String.format("%s://%s:%d/sms/callback/", protocol, host, port);
+		this.batchSize = batchSize;
+		this.maxDelayMs = maxDelayMs;
+		this.maxAttempts = maxAttempts;
+		this.initialBackoffMs = initialBackoffMs;
+		this.maxBackoffMs = maxBackoffMs;
+		this.backoffMs = initialBackoffMs;
+		this.spoolDir = Paths.get(spoolDir);
+		this.maxSpoolFiles = maxSpoolFiles;
+		this.queue = new LinkedBlockingQueue<>(queueCapacity);
+		this.sentCounter = Counter.builder("callbacks.forward.sent")
+				.description("Delivery statuses accepted by the downstream system")
+				.register(meterRegistry);
+		this.spooledCounter = Counter.builder("callbacks.forward.spooled")
+				.description("Delivery statuses written to the spool directory")
+				.register(meterRegistry);
+		this.rejectedCounter = Counter.builder("callbacks.forward.rejected")
+				.description("Delivery statuses the downstream system refused for good")
+				.register(meterRegistry);
+		this.droppedCounter = Counter.builder("callbacks.forward.dropped")
+				.description("Delivery statuses dropped because the spool directory was full")
+				.register(meterRegistry);
+		Gauge.builder("callbacks.forward.queue", this.queue, BlockingQueue::size)
+				.description("Delivery statuses waiting to be forwarded")
+				.register(meterRegistry);
+	}
+
+	@PostConstruct
+	public void init() throws IOException {
+		Files.createDirectories(this.spoolDir);
+		recoverSpool();
+		this.sender = Executors.newSingleThreadExecutor(
+				DispatchThreads.factory(DispatchThreads.ExecutionMode.PLATFORM, "callback-forwarder-"));
+		this.sender.execute(() -> {
+			while (!Thread.currentThread().isInterrupted()) {
+				try {
+					forwardPending();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (RuntimeException e) {
+					logger.error("Forwarding delivery statuses failed with reason {}", e.getMessage(), e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Queues statuses for the next batch. Statuses that do not fit in the queue are spooled.
+	 */
+	public void forward(final Collection<DeliveryStatusData> statuses) {
+		final List<DeliveryStatusData> overflow = new ArrayList<>();
+		for (DeliveryStatusData status : statuses) {
+			if (!this.queue.offer(status)) {
+				overflow.add(status);
+			}
+		}
+		if (!overflow.isEmpty()) {
+			spool(overflow);
+		}
+	}
+
+	/**
+	 * Sends a few spooled batches if the downstream system is available, and then the next batch, waiting up to
+	 * <code>callbacks.forward.maxDelayMs</code> for it to fill. The batch is spooled instead while older batches are
+	 * still in the spool.
+	 */
+	void forwardPending() throws InterruptedException {
+		final boolean spoolDrained = replaySpool();
+		final List<DeliveryStatusData> batch = nextBatch();
+		if (batch.isEmpty()) {
+			return;
+		}
+		if (spoolDrained) {
+			deliver(batch);
+		} else {
+			spool(batch);
+		}
+	}
+
+	private List<DeliveryStatusData> nextBatch() throws InterruptedException {
+		final List<DeliveryStatusData> batch = new ArrayList<>();
+		final DeliveryStatusData first = this.queue.poll(this.maxDelayMs, TimeUnit.MILLISECONDS);
+		if (first == null) {
+			return batch;
+		}
+		batch.add(first);
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.maxDelayMs);
+		while (batch.size() < this.batchSize) {
+			this.queue.drainTo(batch, this.batchSize - batch.size());
+			final long remaining = deadline - System.nanoTime();
+			if (batch.size() >= this.batchSize || remaining <= 0) {
+				break;
+			}
+			final DeliveryStatusData next = this.queue.poll(remaining, TimeUnit.NANOSECONDS);
+			if (next == null) {
+				break;
+			}
+			batch.add(next);
+		}
+		return batch;
+	}
+
+	private void deliver(final List<DeliveryStatusData> batch) throws InterruptedException {
+		if (isDown()) {
+			spool(batch);
+			return;
+		}
+		final String json = this.gson.toJson(batch);
+		long retryBackoffMs = this.initialBackoffMs;
+		for (int attempt = 1; attempt <= this.maxAttempts; attempt++) {
+			final PostResult result = post(json);
+			if (result == PostResult.ACCEPTED) {
+				this.sentCounter.increment(batch.size());
+				return;
+			}
+			if (result == PostResult.REJECTED) {
+				reject(batch.size());
+				return;
+			}
+			if (attempt < this.maxAttempts) {
+				try {
+					TimeUnit.MILLISECONDS.sleep(retryBackoffMs);
+				} catch (InterruptedException e) {
+					spool(batch);
+					throw e;
+				}
+				retryBackoffMs = Math.min(retryBackoffMs * 2, this.maxBackoffMs);
+			}
+		}
+		logger.warn("Downstream system did not accept {} delivery statuses after {} attempts, spooling them",
+				batch.size(), this.maxAttempts);
+		markDown();
+		spool(batch);
+	}
+
+	/**
+	 * @return whether the spool is empty now
+	 */
+	private boolean replaySpool() {
+		if (isDown()) {
+			return false;
+		}
+		final List<Path> files;
+		try (Stream<Path> spooled = Files.list(this.spoolDir)) {
+			files = spooled.filter(path -> path.getFileName().toString().endsWith(SPOOL_SUFFIX))
+					.sorted()
+					.limit(REPLAYS_PER_ROUND)
+					.collect(Collectors.toList());
+		} catch (IOException e) {
+			logger.error("Reading spool directory {} failed with reason {}", this.spoolDir, e.getMessage());
+			//new batches could not be spooled either, so they are sent directly
+			return true;
+		}
+		for (Path file : files) {
+			final Path sending = sibling(file, SENDING_SUFFIX);
+			try {
+				Files.move(file, sending, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				logger.error("Replaying spooled file {} failed with reason {}", file, e.getMessage());
+				return false;
+			}
+			this.spoolFiles.decrementAndGet();
+			final PostResult result;
+			try {
+				result = post(new String(Files.readAllBytes(sending), StandardCharsets.UTF_8));
+			} catch (IOException e) {
+				logger.error("Replaying spooled file {} failed with reason {}", file, e.getMessage());
+				restore(sending, file);
+				return false;
+			}
+			if (result == PostResult.UNAVAILABLE) {
+				restore(sending, file);
+				markDown();
+				return false;
+			}
+			if (result == PostResult.ACCEPTED) {
+				this.sentCounter.increment(spooledCount(file));
+			} else {
+				reject(spooledCount(file));
+			}
+			try {
+				Files.delete(sending);
+			} catch (IOException e) {
+				logger.error("Deleting forwarded spool file {} failed with reason {}, it is not sent again", sending,
+						e.getMessage());
+			}
+		}
+		if (!files.isEmpty()) {
+			logger.info("Forwarded {} spooled batches of delivery statuses", files.size());
+		}
+		return files.size() < REPLAYS_PER_ROUND;
+	}
+
+	private PostResult post(final String json) {
+		final Request request = new Request.Builder()
+				.url(this.url)
+				.post(RequestBody.create(JSON, json))
+				.build();
+		try {
+			final Response response = this.client.newCall(request).execute();
+			response.body().close();
+			if (response.isSuccessful()) {
+				this.backoffMs = this.initialBackoffMs;
+				return PostResult.ACCEPTED;
+			}
+			final int code = response.code();
+			if (code >= 400 && code < 500 && code != 408 && code != 429) {
+				logger.error("Downstream system refused a batch of delivery statuses with {}", code);
+				return PostResult.REJECTED;
+			}
+			logger.debug("Downstream system answered {} to a batch of delivery statuses", code);
+		} catch (IOException e) {
+			logger.debug("Posting delivery statuses failed with reason {}", e.getMessage());
+		}
+		return PostResult.UNAVAILABLE;
+	}
+
+	private void reject(final int statuses) {
+		logger.error("Dropped {} delivery statuses refused by the downstream system", statuses);
+		this.rejectedCounter.increment(statuses);
+	}
+
+	private boolean isDown() {
+		return System.currentTimeMillis() < this.downUntil;
+	}
+
+	private void markDown() {
+		this.downUntil = System.currentTimeMillis() + this.backoffMs;
+		this.backoffMs = Math.min(this.backoffMs * 2, this.maxBackoffMs);
+	}
+
+	private void spool(final List<DeliveryStatusData> batch) {
+		if (this.spoolFiles.get() >= this.maxSpoolFiles) {
+			logger.error("Spool directory {} holds {} batches, dropped {} delivery statuses", this.spoolDir,
+					this.maxSpoolFiles, batch.size());
+			this.droppedCounter.increment(batch.size());
+			return;
+		}
+		// <time>-<sequence>-<statuses> sorts oldest first and keeps the count for the metrics
+		final String name = String.format("%013d-%06d-%d", System.currentTimeMillis(),
+				this.spoolSequence.incrementAndGet() % 1_000_000, batch.size());
+		final Path temporary = this.spoolDir.resolve(name + ".tmp");
+		try {
+			Files.write(temporary, this.gson.toJson(batch).getBytes(StandardCharsets.UTF_8));
+			Files.move(temporary, this.spoolDir.resolve(name + SPOOL_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+			this.spoolFiles.incrementAndGet();
+			this.spooledCounter.increment(batch.size());
+		} catch (IOException e) {
+			logger.error("Spooling {} delivery statuses failed with reason {}, they are lost", batch.size(), e.getMessage());
+		}
+	}
+
+	/**
+	 * Puts back the files of batches that were being sent when the gateway stopped, and counts the spooled batches.
+	 * Such a batch may have been accepted already, so it can reach the downstream system twice.
+	 */
+	private void recoverSpool() throws IOException {
+		final List<Path> sending;
+		try (Stream<Path> files = Files.list(this.spoolDir)) {
+			sending = files.filter(path -> path.getFileName().toString().endsWith(SENDING_SUFFIX))
+					.collect(Collectors.toList());
+		}
+		for (Path file : sending) {
+			restore(file, sibling(file, SPOOL_SUFFIX));
+		}
+		try (Stream<Path> files = Files.list(this.spoolDir)) {
+			this.spoolFiles.set((int) files.filter(path -> path.getFileName().toString().endsWith(SPOOL_SUFFIX)).count());
+		}
+	}
+
+	private void restore(final Path sending, final Path spooled) {
+		try {
+			Files.move(sending, spooled, StandardCopyOption.ATOMIC_MOVE);
+			this.spoolFiles.incrementAndGet();
+		} catch (IOException e) {
+			logger.error("Restoring spool file {} failed with reason {}", sending, e.getMessage());
+		}
+	}
+
+	private static Path sibling(final Path file, final String suffix) {
+		final String name = file.getFileName().toString();
+		return file.resolveSibling(name.substring(0, name.lastIndexOf('.')) + suffix);
+	}
+
+	private static int spooledCount(final Path file) {
+		final String name = file.getFileName().toString();
+		try {
+			return Integer.parseInt(name.substring(name.lastIndexOf('-') + 1, name.length() - SPOOL_SUFFIX.length()));
+		} catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+			return 0;
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		if (this.sender != null) {
+			this.sender.shutdownNow();
+			this.sender.awaitTermination(10, TimeUnit.SECONDS);
+		}
+		final List<DeliveryStatusData> pending = new ArrayList<>();
+		this.queue.drainTo(pending);
+		if (!pending.isEmpty()) {
+			spool(pending);
+		}
+	}
+}
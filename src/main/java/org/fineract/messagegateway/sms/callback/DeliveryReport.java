@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.callback;
+
+import java.util.Date;
+
+import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
+
+/**
+ * A status reported by a provider callback for one message, waiting in the {@link DeliveryReportBuffer}.
+ */
+public final class DeliveryReport {
+
+	private final SmsMessageStatusType status;
+
+	private final String errorMessage;
+
+	private final Date reportedOn;
+
+	private final int failedAttempts;
+
+	public DeliveryReport(final SmsMessageStatusType status, final String errorMessage) {
+		this(status, errorMessage, new Date(), 0);
+	}
+
+	private DeliveryReport(final SmsMessageStatusType status, final String errorMessage, final Date reportedOn,
+			final int failedAttempts) {
+		this.status = status;
+		this.errorMessage = errorMessage;
+		this.reportedOn = reportedOn;
+		this.failedAttempts = failedAttempts;
+	}
+
+	public SmsMessageStatusType getStatus() {
+		return this.status;
+	}
+
+	public String getErrorMessage() {
+		return this.errorMessage;
+	}
+
+	/**
+	 * @return when the callback was received, stored as the delivery date of delivered messages
+	 */
+	public Date getReportedOn() {
+		return this.reportedOn;
+	}
+
+	/**
+	 * @return how many times storing this report failed
+	 */
+	int getFailedAttempts() {
+		return this.failedAttempts;
+	}
+
+	/**
+	 * @return this report with one more failed attempt to store it
+	 */
+	DeliveryReport withFailedAttempt() {
+		return new DeliveryReport(this.status, this.errorMessage, this.reportedOn, this.failedAttempts + 1);
+	}
+
+	/**
+	 * Merges a later report for the same message into this one. The later status wins unless it would take a final
+	 * status back to an intermediate one, which happens when a provider's callbacks arrive out of order.
+	 */
+	DeliveryReport merge(final DeliveryReport later) {
+		final boolean keepStatus = this.status.isFinal() && !later.status.isFinal();
+		final SmsMessageStatusType mergedStatus = keepStatus ? this.status : later.status;
+		final String mergedErrorMessage = later.errorMessage == null || keepStatus ? this.errorMessage : later.errorMessage;
+		return new DeliveryReport(mergedStatus, mergedErrorMessage, keepStatus ? this.reportedOn : later.reportedOn,
+				this.failedAttempts);
+	}
+}
@@ -0,0 +1,379 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.callback;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+
+import org.fineract.messagegateway.sms.data.DeliveryStatusData;
+import org.fineract.messagegateway.sms.dispatch.DispatchThreads;
+import org.fineract.messagegateway.sms.repository.OutboundMessageWriter;
+import org.fineract.messagegateway.sms.service.SMSMessageService;
+import org.fineract.messagegateway.sms.util.CallbackEvent;
+import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Collects the statuses reported by provider callbacks so the callback can be acknowledged straight away. Reports for
+ * the same message are merged while they wait, and a single writer stores them every
+ * <code>callbacks.buffer.flushIntervalMs</code> with one <code>UPDATE ... CASE</code> statement per
+ * <code>callbacks.buffer.batchSize</code> messages. For every message that reached a final status, a
+ * {@link CallbackEvent} with the stored status is published once the batch is written; the statuses of a batch are
+ * read back with one query.
+ * <p>
+ * Once <code>callbacks.buffer.maxSize</code> messages are waiting, the callback thread flushes the buffer itself, which
+ * slows the provider down instead of growing the buffer. The number of waiting messages is published as the
+ * <code>callbacks.buffer.depth</code> gauge and flush durations as the <code>callbacks.buffer.flush</code> timer.
+ * <p>
+ * A batch that the database refuses, for a reason other than being unavailable, is stored again in halves until the
+ * refused reports are found. Those are kept for the next flush, and dropped with an error after
+ * <code>callbacks.buffer.maxAttempts</code> failed attempts and counted by <code>callbacks.buffer.dropped</code>, so
+ * that one bad report cannot hold back the others.
+ */
+@Component
+public class DeliveryReportBuffer {
+
+	private static final Logger logger = LoggerFactory.getLogger(DeliveryReportBuffer.class);
+
+	private final Map<Long, DeliveryReport> byId = new ConcurrentHashMap<>();
+
+	private final Map<String, DeliveryReport> byExternalId = new ConcurrentHashMap<>();
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final SMSMessageService smsMessageService;
+
+	private final ApplicationEventPublisher publisher;
+
+	private final Timer flushTimer;
+
+	private final Counter mergedCounter;
+
+	private final Counter droppedCounter;
+
+	private ScheduledExecutorService scheduledExecutorService;
+
+	@Value("${callbacks.buffer.flushIntervalMs:200}")
+	private long flushIntervalMs;
+
+	@Value("${callbacks.buffer.batchSize:500}")
+	private int batchSize;
+
+	@Value("${callbacks.buffer.maxSize:100000}")
+	private int maxSize;
+
+	@Value("${callbacks.buffer.maxAttempts:3}")
+	private int maxAttempts;
+
+	@Autowired
+	public DeliveryReportBuffer(final DataSource dataSource,
+								final SMSMessageService smsMessageService,
+								final ApplicationEventPublisher publisher,
+								final MeterRegistry meterRegistry) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.smsMessageService = smsMessageService;
+		this.publisher = publisher;
+		this.flushTimer = Timer.builder("callbacks.buffer.flush")
+				.description("Time taken to store the buffered delivery reports")
+				.register(meterRegistry);
+		this.mergedCounter = Counter.builder("callbacks.buffer.merged")
+				.description("Delivery reports merged into a report already waiting for the same message")
+				.register(meterRegistry);
+		this.droppedCounter = Counter.builder("callbacks.buffer.dropped")
+				.description("Delivery reports dropped after the database refused them maxAttempts times")
+				.register(meterRegistry);
+		Gauge.builder("callbacks.buffer.depth", this, DeliveryReportBuffer::depth)
+				.description("Messages with a delivery report waiting to be stored")
+				.register(meterRegistry);
+	}
+
+	@PostConstruct
+	public void init() {
+		this.scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(
+				DispatchThreads.factory(DispatchThreads.ExecutionMode.PLATFORM, "delivery-reports-"));
+		this.scheduledExecutorService.scheduleWithFixedDelay(this::flushSafely, this.flushIntervalMs,
+				this.flushIntervalMs, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Buffers a report for the message with the given id.
+	 */
+	public void report(final Long messageId, final DeliveryReport report) {
+		add(this.byId, messageId, report);
+	}
+
+	/**
+	 * Buffers a report for the message the provider knows as <code>externalId</code>.
+	 */
+	public void reportByExternalId(final String externalId, final DeliveryReport report) {
+		add(this.byExternalId, externalId, report);
+	}
+
+	public int depth() {
+		return this.byId.size() + this.byExternalId.size();
+	}
+
+	/**
+	 * Stores every buffered report. Only one flush runs at a time, so a later report for a message can never be
+	 * overwritten by an earlier one.
+	 *
+	 * @return the number of stored reports
+	 */
+	public synchronized int flush() {
+		final long start = System.nanoTime();
+		int flushed = 0;
+		final Map<Long, DeliveryReport> retriedIds = new LinkedHashMap<>();
+		final Map<String, DeliveryReport> retriedExternalIds = new LinkedHashMap<>();
+		try {
+			Map<Long, DeliveryReport> ids;
+			while (!(ids = drain(this.byId)).isEmpty()) {
+				final Map<Long, DeliveryReport> stored = update("id", ids, retriedIds);
+				final List<Long> finalIds = finalKeys(stored);
+				publishCallbacks(() -> this.smsMessageService.forEachDeliveryStatusById(finalIds, this::publishCallback));
+				flushed += stored.size();
+			}
+			Map<String, DeliveryReport> externalIds;
+			while (!(externalIds = drain(this.byExternalId)).isEmpty()) {
+				final Map<String, DeliveryReport> stored = update("external_id", externalIds, retriedExternalIds);
+				final List<String> finalExternalIds = finalKeys(stored);
+				publishCallbacks(() -> this.smsMessageService.forEachDeliveryStatusByExternalId(finalExternalIds, this::publishCallback));
+				flushed += stored.size();
+			}
+		} finally {
+			requeue(this.byId, retriedIds);
+			requeue(this.byExternalId, retriedExternalIds);
+			if (flushed > 0) {
+				this.flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			}
+		}
+		return flushed;
+	}
+
+	private <K> void add(final Map<K, DeliveryReport> reports, final K key, final DeliveryReport report) {
+		final DeliveryReport merged = reports.merge(key, report, DeliveryReport::merge);
+		if (merged != report) {
+			this.mergedCounter.increment();
+		}
+		if (depth() >= this.maxSize) {
+			flush();
+		}
+	}
+
+	private <K> Map<K, DeliveryReport> drain(final Map<K, DeliveryReport> reports) {
+		final Map<K, DeliveryReport> batch = new LinkedHashMap<>();
+		final Iterator<K> keys = reports.keySet().iterator();
+		while (keys.hasNext() && batch.size() < this.batchSize) {
+			final K key = keys.next();
+			final DeliveryReport report = reports.remove(key);
+			if (report != null) {
+				batch.put(key, report);
+			}
+		}
+		return batch;
+	}
+
+	/**
+	 * Stores a batch, falling back to smaller batches when the database refuses it. Reports that could not be stored
+	 * are added to <code>retries</code>; when the database is unavailable the whole batch is, and the error is thrown.
+	 *
+	 * @return the stored reports
+	 */
+	private <K> Map<K, DeliveryReport> update(final String column, final Map<K, DeliveryReport> batch,
+			final Map<K, DeliveryReport> retries) {
+		final int updated;
+		try {
+			updated = store(column, batch);
+		} catch (TransientDataAccessException | RecoverableDataAccessException | DataAccessResourceFailureException e) {
+			retries.putAll(batch);
+			throw e;
+		} catch (RuntimeException e) {
+			logger.warn("Storing {} delivery reports by {} failed with reason {}, storing them in smaller batches",
+					batch.size(), column, e.getMessage());
+			final Map<K, DeliveryReport> stored = new LinkedHashMap<>();
+			isolate(column, batch, stored, retries);
+			return stored;
+		}
+		if (updated < batch.size()) {
+			logger.info("Stored {} of {} delivery reports by {}, the other messages were not found", updated,
+					batch.size(), column);
+		}
+		return batch;
+	}
+
+	/**
+	 * Stores the two halves of a refused batch separately, down to the single reports that are refused.
+	 */
+	private <K> void isolate(final String column, final Map<K, DeliveryReport> batch, final Map<K, DeliveryReport> stored,
+			final Map<K, DeliveryReport> retries) {
+		if (batch.size() == 1) {
+			batch.forEach((key, report) -> {
+				final DeliveryReport failed = report.withFailedAttempt();
+				if (failed.getFailedAttempts() < this.maxAttempts) {
+					retries.put(key, failed);
+					return;
+				}
+				logger.error("Dropped the delivery report of message {} by {} after {} failed attempts", key, column,
+						failed.getFailedAttempts());
+				this.droppedCounter.increment();
+			});
+			return;
+		}
+		final Map<K, DeliveryReport> first = new LinkedHashMap<>();
+		final Map<K, DeliveryReport> second = new LinkedHashMap<>();
+		batch.forEach((key, report) -> (first.size() < batch.size() / 2 ? first : second).put(key, report));
+		for (Map<K, DeliveryReport> half : List.of(first, second)) {
+			try {
+				store(column, half);
+				stored.putAll(half);
+			} catch (TransientDataAccessException | RecoverableDataAccessException | DataAccessResourceFailureException e) {
+				retries.putAll(half);
+			} catch (RuntimeException e) {
+				isolate(column, half, stored, retries);
+			}
+		}
+	}
+
+	/**
+	 * Puts reports that could not be stored back in the buffer, behind anything reported for the same messages since.
+	 */
+	private static <K> void requeue(final Map<K, DeliveryReport> reports, final Map<K, DeliveryReport> retries) {
+		retries.forEach((key, report) -> reports.merge(key, report, (later, earlier) -> earlier.merge(later)));
+	}
+
+	/**
+	 * Stores the status, error message and delivery date of a batch in one statement, without loading the messages.
+	 *
+	 * @return the number of updated rows
+	 */
+	private <K> int store(final String column, final Map<K, DeliveryReport> batch) {
+		final List<Object> params = new ArrayList<>(batch.size() * 7);
+		final StringBuilder sql = new StringBuilder("update m_outbound_messages set");
+		appendCase(sql, params, column, "delivery_status", batch, report -> report.getStatus().getValue());
+		appendCase(sql, params, column, "delivery_error_message", batch, report -> OutboundMessageWriter.truncate(report.getErrorMessage()));
+		appendCase(sql, params, column, "delivered_on_date", batch,
+				report -> report.getStatus() == SmsMessageStatusType.DELIVERED ? new Timestamp(report.getReportedOn().getTime()) : null);
+		sql.append(" where ").append(column).append(" in (");
+		boolean first = true;
+		for (K key : batch.keySet()) {
+			sql.append(first ? "?" : ", ?");
+			params.add(key);
+			first = false;
+		}
+		sql.append(')');
+		return this.jdbcTemplate.update(sql.toString(), params.toArray());
+	}
+
+
+	/**
+	 * Appends <code>target = case column when key then value ... else target end</code> for the reports with a
+	 * value, or nothing when none of them has one.
+	 */
+	private static <K> void appendCase(final StringBuilder sql, final List<Object> params, final String column,
+			final String target, final Map<K, DeliveryReport> batch, final Function<DeliveryReport, Object> value) {
+		boolean first = true;
+		for (Map.Entry<K, DeliveryReport> entry : batch.entrySet()) {
+			final Object targetValue = value.apply(entry.getValue());
+			if (targetValue == null) {
+				continue;
+			}
+			if (first) {
+				sql.append(params.isEmpty() ? " " : ", ").append(target).append(" = case ").append(column);
+				first = false;
+			}
+			sql.append(" when ? then ?");
+			params.add(entry.getKey());
+			params.add(targetValue);
+		}
+		if (!first) {
+			sql.append(" else ").append(target).append(" end");
+		}
+	}
+
+	private static <K> List<K> finalKeys(final Map<K, DeliveryReport> batch) {
+		final List<K> keys = new ArrayList<>();
+		batch.forEach((key, report) -> {
+			if (report.getStatus().isFinal()) {
+				keys.add(key);
+			}
+		});
+		return keys;
+	}
+
+	private void publishCallbacks(final Runnable statusLookup) {
+		try {
+			statusLookup.run();
+		} catch (RuntimeException e) {
+			logger.error("Reading stored statuses for the delivery callbacks failed with reason {}", e.getMessage(), e);
+		}
+	}
+
+	private void publishCallback(final DeliveryStatusData status) {
+		if (!SmsMessageStatusType.fromInt(status.getDeliveryStatus()).isFinal()) {
+			return;
+		}
+		try {
+			this.publisher.publishEvent(new CallbackEvent(this, status));
+		} catch (RuntimeException e) {
+			logger.error("Delivery callback for message {} failed with reason {}", status.getId(), e.getMessage(), e);
+		}
+	}
+
+	private void flushSafely() {
+		try {
+			flush();
+		} catch (RuntimeException e) {
+			logger.error("Storing delivery reports failed with reason {}", e.getMessage(), e);
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (this.scheduledExecutorService != null) {
+			this.scheduledExecutorService.shutdownNow();
+		}
+		flushSafely();
+	}
+}
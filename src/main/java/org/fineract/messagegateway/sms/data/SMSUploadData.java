@@ -0,0 +1,77 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.fineract.messagegateway.helpers.ApiParameterError;
+
+/**
+ * Outcome of a streamed message upload: how many lines were accepted and rejected, and why the first rejected lines
+ * failed.
+ */
+public class SMSUploadData {
+
+	private long accepted;
+	private long rejected;
+	private final List<LineError> errors = new ArrayList<>();
+
+	public void accepted(final int count) {
+		this.accepted += count;
+	}
+
+	public void rejected(final long line, final List<ApiParameterError> lineErrors, final int maxReportedErrors) {
+		this.rejected++;
+		if (this.errors.size() < maxReportedErrors) {
+			this.errors.add(new LineError(line, lineErrors));
+		}
+	}
+
+	public long getAccepted() {
+		return accepted;
+	}
+
+	public long getRejected() {
+		return rejected;
+	}
+
+	public List<LineError> getErrors() {
+		return errors;
+	}
+
+	public static class LineError {
+
+		private final long line;
+		private final List<ApiParameterError> errors;
+
+		public LineError(final long line, final List<ApiParameterError> errors) {
+			this.line = line;
+			this.errors = errors;
+		}
+
+		public long getLine() {
+			return line;
+		}
+
+		public List<ApiParameterError> getErrors() {
+			return errors;
+		}
+	}
+}
@@ -0,0 +1,180 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.dispatch;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * One {@link CircuitBreaker} per bridge, so that a provider outage fails the sends of its bridge at once instead of
+ * letting every message wait for the provider timeout. A message counts as failed when the provider left it pending
+ * after a transient error, and every message of a send counts as failed when the send took longer than
+ * <code>dispatch.circuit.slowSendMs</code> per message.
+ * <p>
+ * The <code>dispatch.circuit.state</code> gauge (0 closed, 1 open, 2 half open) and the
+ * <code>dispatch.circuit.rejected</code> counter are tagged with the bridge id, and the
+ * <code>/actuator/circuitbreakers</code> endpoint lists the breakers.
+ */
+@Component
+public class BridgeCircuitBreakers {
+
+	private static final Logger logger = LoggerFactory.getLogger(BridgeCircuitBreakers.class);
+
+	private final Map<Long, Breaker> breakers = new ConcurrentHashMap<>();
+
+	private final MeterRegistry meterRegistry;
+
+	private final int failureRatePercent;
+
+	private final int minimumSends;
+
+	private final int windowSize;
+
+	private final long slowSendNanos;
+
+	private final long openMs;
+
+	private final int probeSize;
+
+	@Autowired
+	public BridgeCircuitBreakers(final MeterRegistry meterRegistry,
+								 @Value("${dispatch.circuit.failureRatePercent:50}") final int failureRatePercent,
+								 @Value("${dispatch.circuit.minimumSends:10}") final int minimumSends,
+								 @Value("${dispatch.circuit.windowSize:100}") final int windowSize,
+								 @Value("${dispatch.circuit.slowSendMs:10000}") final long slowSendMs,
+								 @Value("${dispatch.circuit.openMs:30000}") final long openMs,
+								 @Value("${dispatch.circuit.probeSize:1}") final int probeSize) {
+		this.meterRegistry = meterRegistry;
+		this.failureRatePercent = failureRatePercent;
+		this.minimumSends = minimumSends;
+		this.windowSize = windowSize;
+		this.slowSendNanos = TimeUnit.MILLISECONDS.toNanos(slowSendMs);
+		this.openMs = openMs;
+		this.probeSize = probeSize;
+	}
+
+	/**
+	 * @return how many messages may be sent through the bridge now, <code>0</code> while its breaker is open
+	 */
+	public int acquire(final Long bridgeId) {
+		final Breaker breaker = breaker(bridgeId);
+		final int permitted = breaker.circuit().acquire();
+		if (permitted == 0) {
+			breaker.rejected().increment();
+		}
+		return permitted;
+	}
+
+	/**
+	 * Counts the outcome of a send through the bridge.
+	 */
+	public void record(final Long bridgeId, final int sent, final int failed, final long elapsedNanos) {
+		final int total = sent + failed;
+		if (total == 0) {
+			return;
+		}
+		final CircuitBreaker circuit = breaker(bridgeId).circuit();
+		final CircuitBreaker.State before = circuit.getState();
+		if (elapsedNanos / total > this.slowSendNanos) {
+			circuit.record(0, total);
+		} else {
+			circuit.record(sent, failed);
+		}
+		final CircuitBreaker.State after = circuit.getState();
+		if (after != before) {
+			if (after == CircuitBreaker.State.OPEN) {
+				logger.warn("Circuit of bridge {} opened, sends are rejected until {}", bridgeId, new Date(circuit.getOpenUntil()));
+			} else {
+				logger.info("Circuit of bridge {} is {}", bridgeId, after);
+			}
+		}
+	}
+
+	/**
+	 * @return whether the breaker of the bridge is closed, that is neither rejecting sends nor probing
+	 */
+	public boolean isClosed(final Long bridgeId) {
+		return breaker(bridgeId).circuit().getState() == CircuitBreaker.State.CLOSED;
+	}
+
+	/**
+	 * @return when the breaker of the bridge lets the next probe through; while a probe is out this is when it is
+	 * replaced, not the end of the open time that has already passed
+	 */
+	public Date retryAt(final Long bridgeId) {
+		return new Date(breaker(bridgeId).circuit().getRetryAt());
+	}
+
+	/**
+	 * @return the breakers by bridge id
+	 */
+	public Map<Long, Status> getStatuses() {
+		final Map<Long, Status> statuses = new TreeMap<>();
+		this.breakers.forEach((bridgeId, breaker) -> {
+			final CircuitBreaker circuit = breaker.circuit();
+			final CircuitBreaker.State state = circuit.getState();
+			statuses.put(bridgeId, new Status(state.name(), circuit.getSends(), circuit.getFailures(),
+					state == CircuitBreaker.State.CLOSED ? null : new Date(circuit.getOpenUntil())));
+		});
+		return statuses;
+	}
+
+	private Breaker breaker(final Long bridgeId) {
+		final Breaker breaker = this.breakers.get(bridgeId);
+		return breaker != null ? breaker : this.breakers.computeIfAbsent(bridgeId, this::newBreaker);
+	}
+
+	private Breaker newBreaker(final Long bridgeId) {
+		final CircuitBreaker circuit = new CircuitBreaker(this.failureRatePercent, this.minimumSends, this.windowSize,
+				this.openMs, this.probeSize, System::currentTimeMillis);
+		final String bridge = String.valueOf(bridgeId);
+		Gauge.builder("dispatch.circuit.state", circuit, c -> c.getState().ordinal())
+				.tag("bridge", bridge)
+				.description("Circuit breaker state of the bridge: 0 closed, 1 open, 2 half open")
+				.register(this.meterRegistry);
+		final Counter rejected = Counter.builder("dispatch.circuit.rejected")
+				.tag("bridge", bridge)
+				.description("Sends rejected while the circuit of the bridge was open")
+				.register(this.meterRegistry);
+		return new Breaker(circuit, rejected);
+	}
+
+	/**
+	 * State of a breaker; <code>sends</code> and <code>failures</code> are the counts of the current window, and
+	 * <code>openUntil</code> is when an open breaker lets the next probe through.
+	 */
+	public record Status(String state, int sends, int failures, Date openUntil) {
+	}
+
+	private record Breaker(CircuitBreaker circuit, Counter rejected) {
+	}
+}
@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.dispatch;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+
+/**
+ * Live health of every bridge, as seen by the {@link BridgeRouter}: the error rate of its sends over a
+ * {@link HealthWindow} with a half life of <code>dispatch.routing.healthHalfLifeSeconds</code>, and the p95 latency
+ * per message of its sends over the last <code>dispatch.routing.healthHalfLifeSeconds</code>.
+ * <p>
+ * The <code>dispatch.routing.errorRate</code> gauge and the <code>dispatch.send.latency</code> timer, which publishes
+ * its p95, are tagged with the bridge id.
+ */
+@Component
+public class BridgeHealth {
+
+	private static final double P95 = 0.95d;
+
+	private final Map<Long, Health> healths = new ConcurrentHashMap<>();
+
+	private final MeterRegistry meterRegistry;
+
+	private final long halfLifeMs;
+
+	private final int minimumSends;
+
+	@Autowired
+	public BridgeHealth(final MeterRegistry meterRegistry,
+						@Value("${dispatch.routing.healthHalfLifeSeconds:60}") final long halfLifeSeconds,
+						@Value("${dispatch.routing.minimumSends:10}") final int minimumSends) {
+		this.meterRegistry = meterRegistry;
+		this.halfLifeMs = TimeUnit.SECONDS.toMillis(halfLifeSeconds);
+		this.minimumSends = minimumSends;
+	}
+
+	/**
+	 * Counts the outcome of a send through the bridge.
+	 */
+	public void record(final Long bridgeId, final int sent, final int failed, final long elapsedNanos) {
+		final int total = sent + failed;
+		if (total == 0) {
+			return;
+		}
+		final Health health = health(bridgeId);
+		health.window().record(sent, failed);
+		health.latency().record(elapsedNanos / total, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @return the share of the recent messages of the bridge that failed, from <code>0</code> to <code>1</code>
+	 */
+	public double errorRate(final Long bridgeId) {
+		return health(bridgeId).window().errorRate();
+	}
+
+	/**
+	 * @return the p95 latency per message of the recent sends through the bridge, <code>0</code> without sends
+	 */
+	public double p95Ms(final Long bridgeId) {
+		for (ValueAtPercentile percentile : health(bridgeId).latency().takeSnapshot().percentileValues()) {
+			if (percentile.percentile() == P95) {
+				return percentile.value(TimeUnit.MILLISECONDS);
+			}
+		}
+		return 0d;
+	}
+
+	private Health health(final Long bridgeId) {
+		final Health health = this.healths.get(bridgeId);
+		return health != null ? health : this.healths.computeIfAbsent(bridgeId, this::newHealth);
+	}
+
+	private Health newHealth(final Long bridgeId) {
+		final HealthWindow window = new HealthWindow(this.halfLifeMs, this.minimumSends, System::currentTimeMillis);
+		final String bridge = String.valueOf(bridgeId);
+		Gauge.builder("dispatch.routing.errorRate", window, HealthWindow::errorRate)
+				.tag("bridge", bridge)
+				.description("Share of the recent messages of the bridge that failed")
+				.register(this.meterRegistry);
+		final Timer latency = Timer.builder("dispatch.send.latency")
+				.tag("bridge", bridge)
+				.description("Provider latency per message of the sends through the bridge")
+				.publishPercentiles(P95)
+				.distributionStatisticExpiry(Duration.ofMillis(this.halfLifeMs))
+				.distributionStatisticBufferLength(2)
+				.register(this.meterRegistry);
+		return new Health(window, latency);
+	}
+
+	private record Health(HealthWindow window, Timer latency) {
+	}
+}
@@ -0,0 +1,83 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.dispatch;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Worker lane of a single {@link org.fineract.messagegateway.sms.domain.SMSBridge}. Every bridge gets its own
+ * pool so that a slow provider only ever delays the messages that are routed through it. A lane with a
+ * concurrency of one executes its tasks strictly in submission order. Depending on the thread factory the workers
+ * are platform threads or virtual threads, in the latter case a blocked provider call does not hold an OS thread.
+ */
+final class BridgeLane {
+
+	private static final long IDLE_KEEP_ALIVE_SECONDS = 60L;
+
+	private final Long bridgeId;
+
+	private final ThreadPoolExecutor executor;
+
+	BridgeLane(final Long bridgeId, final int concurrency, final ThreadFactory threadFactory) {
+		this.bridgeId = bridgeId;
+		this.executor = new ThreadPoolExecutor(concurrency, concurrency, IDLE_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), threadFactory);
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	void execute(final Runnable task) {
+		this.executor.execute(task);
+	}
+
+	/**
+	 * Applies a new concurrency to the lane without dropping queued work.
+	 */
+	synchronized void resize(final int concurrency) {
+		if (concurrency == this.executor.getMaximumPoolSize()) {
+			return;
+		}
+		if (concurrency > this.executor.getMaximumPoolSize()) {
+			this.executor.setMaximumPoolSize(concurrency);
+			this.executor.setCorePoolSize(concurrency);
+		} else {
+			this.executor.setCorePoolSize(concurrency);
+			this.executor.setMaximumPoolSize(concurrency);
+		}
+	}
+
+	int getConcurrency() {
+		return this.executor.getMaximumPoolSize();
+	}
+
+	int getQueuedTasks() {
+		return this.executor.getQueue().size();
+	}
+
+	Long getBridgeId() {
+		return this.bridgeId;
+	}
+
+	void shutdown(final long timeout, final TimeUnit unit) throws InterruptedException {
+		this.executor.shutdown();
+		this.executor.awaitTermination(timeout, unit);
+	}
+}
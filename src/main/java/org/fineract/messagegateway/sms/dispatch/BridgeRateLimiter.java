@@ -0,0 +1,176 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.dispatch;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.fineract.messagegateway.constants.MessageGatewayConstants;
+import org.fineract.messagegateway.sms.domain.SMSBridge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Limits the send rate of each {@link SMSBridge} to its {@link MessageGatewayConstants#RATE_LIMIT_TPS} messages per
+ * second, with bursts of up to {@link MessageGatewayConstants#RATE_LIMIT_BURST} messages (one second worth by
+ * default). Bridges without a rate are not limited. Every bridge has its own {@link TokenBucket}, which lowers the
+ * rate when the provider throttles and recovers by <code>dispatch.rateLimit.recoveryPercentPerSecond</code> of the
+ * configured rate per second.
+ * <p>
+ * The <code>dispatch.rateLimit.tokens</code> and <code>dispatch.rateLimit.rate</code> gauges, the
+ * <code>dispatch.rateLimit.wait</code> timer and the <code>dispatch.rateLimit.throttled</code> counter are tagged with
+ * the bridge id.
+ */
+@Component
+public class BridgeRateLimiter {
+
+	private static final Logger logger = LoggerFactory.getLogger(BridgeRateLimiter.class);
+
+	private final Map<Long, Limit> limits = new ConcurrentHashMap<>();
+
+	private final MeterRegistry meterRegistry;
+
+	private final double minTps;
+
+	private final double decreaseFactor;
+
+	private final double recoveryPercentPerSecond;
+
+	@Autowired
+	public BridgeRateLimiter(final MeterRegistry meterRegistry,
+							 @Value("${dispatch.rateLimit.minTps:1}") final double minTps,
+							 @Value("${dispatch.rateLimit.decreaseFactor:0.5}") final double decreaseFactor,
+							 @Value("${dispatch.rateLimit.recoveryPercentPerSecond:5}") final double recoveryPercentPerSecond) {
+		this.meterRegistry = meterRegistry;
+		this.minTps = minTps;
+		this.decreaseFactor = decreaseFactor;
+		this.recoveryPercentPerSecond = recoveryPercentPerSecond;
+	}
+
+	/**
+	 * @return the most messages a single {@link #acquire} may take for the bridge, {@link Integer#MAX_VALUE} when
+	 * the bridge is not limited
+	 */
+	public int maxPermits(final SMSBridge bridge) {
+		final Limit limit = limit(bridge);
+		return limit == null ? Integer.MAX_VALUE : limit.bucket().getBurst();
+	}
+
+	/**
+	 * Waits until <code>permits</code> messages may be sent through the bridge.
+	 */
+	public void acquire(final SMSBridge bridge, final int permits) throws InterruptedException {
+		final Limit limit = limit(bridge);
+		if (limit == null) {
+			return;
+		}
+		final long waitNanos = limit.bucket().reserve(permits);
+		if (waitNanos > 0) {
+			TimeUnit.NANOSECONDS.sleep(waitNanos);
+		}
+		limit.waits().record(waitNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Records that the provider of the bridge rejected a request because of its rate limit.
+	 */
+	public void throttled(final SMSBridge bridge) {
+		final Limit limit = limit(bridge);
+		if (limit == null) {
+			return;
+		}
+		limit.throttles().increment();
+		if (limit.bucket().throttled()) {
+			logger.warn("Bridge {} was throttled by its provider, lowering its rate to {} messages per second",
+					bridge.getId(), String.format("%.1f", limit.bucket().rate()));
+		}
+	}
+
+	private Limit limit(final SMSBridge bridge) {
+		final double tps = configValue(bridge, MessageGatewayConstants.RATE_LIMIT_TPS, 0d);
+		if (tps <= 0d) {
+			this.limits.remove(bridge.getId());
+			return null;
+		}
+		final double burst = configValue(bridge, MessageGatewayConstants.RATE_LIMIT_BURST, tps);
+		final Limit current = this.limits.get(bridge.getId());
+		if (current != null && current.bucket().hasLimits(tps, burst)) {
+			return current;
+		}
+		return this.limits.compute(bridge.getId(), (id, existing) -> existing != null && existing.bucket().hasLimits(tps, burst)
+				? existing : newLimit(id, tps, burst));
+	}
+
+	private Limit newLimit(final Long bridgeId, final double tps, final double burst) {
+		final TokenBucket bucket = new TokenBucket(tps, burst, this.minTps, this.decreaseFactor,
+				tps * this.recoveryPercentPerSecond / 100d, System::nanoTime);
+		final String bridge = String.valueOf(bridgeId);
+		Gauge.builder("dispatch.rateLimit.tokens", this.limits, limits -> tokens(limits.get(bridgeId)))
+				.tag("bridge", bridge)
+				.description("Tokens available to the bridge, negative while sends wait for tokens")
+				.register(this.meterRegistry);
+		Gauge.builder("dispatch.rateLimit.rate", this.limits, limits -> rate(limits.get(bridgeId)))
+				.tag("bridge", bridge)
+				.description("Current send rate of the bridge in messages per second")
+				.register(this.meterRegistry);
+		final Timer waits = Timer.builder("dispatch.rateLimit.wait")
+				.tag("bridge", bridge)
+				.description("Time sends waited for tokens")
+				.register(this.meterRegistry);
+		final Counter throttles = Counter.builder("dispatch.rateLimit.throttled")
+				.tag("bridge", bridge)
+				.description("Requests the provider rejected because of its rate limit")
+				.register(this.meterRegistry);
+		return new Limit(bucket, waits, throttles);
+	}
+
+	private static double tokens(final Limit limit) {
+		return limit == null ? Double.NaN : limit.bucket().available();
+	}
+
+	private static double rate(final Limit limit) {
+		return limit == null ? Double.NaN : limit.bucket().rate();
+	}
+
+	private static double configValue(final SMSBridge bridge, final String name, final double defaultValue) {
+		final String value = bridge.getConfigValue(name);
+		if (!StringUtils.hasText(value)) {
+			return defaultValue;
+		}
+		try {
+			return Double.parseDouble(value.trim());
+		} catch (NumberFormatException e) {
+			logger.warn("Ignoring invalid {} value '{}' on bridge {}", name, value, bridge.getId());
+			return defaultValue;
+		}
+	}
+
+	private record Limit(TokenBucket bucket, Timer waits, Counter throttles) {
+	}
+}
@@ -0,0 +1,262 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.dispatch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+
+import org.fineract.messagegateway.constants.MessageGatewayConstants;
+import org.fineract.messagegateway.sms.cache.SMSBridgeCache;
+import org.fineract.messagegateway.sms.cache.SMSBridgeInvalidatedEvent;
+import org.fineract.messagegateway.sms.domain.SMSBridge;
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.sms.repository.SMSBridgeRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Routes messages across the bridges of a tenant that serve the same country. Bridges take part in routing by
+ * setting a {@link MessageGatewayConstants#ROUTING_WEIGHT}; the messages of a bridge without a weight are sent
+ * through it as before.
+ * <p>
+ * Every message of a routed bridge is sent through one of the healthy bridges of its country, picked at random in
+ * proportion to its weight divided by its {@link MessageGatewayConstants#ROUTING_COST} (1 by default) and scaled down
+ * by its recent error rate. A bridge is degraded while its circuit is not closed, while more than
+ * <code>dispatch.routing.maxErrorRatePercent</code> of its recent messages failed, or while its p95 latency per
+ * message is above <code>dispatch.routing.maxP95Ms</code>, see {@link BridgeHealth}. The messages of a degraded
+ * bridge fail over to the healthy ones, and stay on it when no bridge of the country is healthy.
+ * <p>
+ * The <code>dispatch.routing.decisions</code> counter is tagged with the bridge of the message (<code>from</code>),
+ * the bridge picked (<code>to</code>) and the <code>reason</code>: <code>primary</code> or <code>weighted</code>
+ * while the bridge of the message is healthy, <code>failover</code> when it is degraded and <code>degraded</code>
+ * when no bridge of the country is healthy.
+ */
+@Component
+public class BridgeRouter implements ApplicationListener<SMSBridgeInvalidatedEvent> {
+
+	private static final Logger logger = LoggerFactory.getLogger(BridgeRouter.class);
+
+	private static final Route NO_ROUTE = new Route(null, null, Collections.emptyList(), new double[0]);
+
+	private final SMSBridgeCache smsBridgeCache;
+
+	private final SMSBridgeRepository smsBridgeRepository;
+
+	private final BridgeCircuitBreakers bridgeCircuitBreakers;
+
+	private final BridgeHealth bridgeHealth;
+
+	private final MeterRegistry meterRegistry;
+
+	private final Cache<CountryKey, List<Long>> candidates;
+
+	private final double maxErrorRatePercent;
+
+	private final double maxP95Ms;
+
+	private final DoubleSupplier random;
+
+	@Autowired
+	public BridgeRouter(final SMSBridgeCache smsBridgeCache,
+						final SMSBridgeRepository smsBridgeRepository,
+						final BridgeCircuitBreakers bridgeCircuitBreakers,
+						final BridgeHealth bridgeHealth,
+						final MeterRegistry meterRegistry,
+						@Value("${cache.bridge.ttlSeconds:300}") final long ttlSeconds,
+						@Value("${dispatch.routing.maxErrorRatePercent:20}") final double maxErrorRatePercent,
+						@Value("${dispatch.routing.maxP95Ms:5000}") final double maxP95Ms) {
+		this(smsBridgeCache, smsBridgeRepository, bridgeCircuitBreakers, bridgeHealth, meterRegistry, ttlSeconds,
+				maxErrorRatePercent, maxP95Ms, () -> ThreadLocalRandom.current().nextDouble());
+	}
+
+	BridgeRouter(final SMSBridgeCache smsBridgeCache, final SMSBridgeRepository smsBridgeRepository,
+			final BridgeCircuitBreakers bridgeCircuitBreakers, final BridgeHealth bridgeHealth,
+			final MeterRegistry meterRegistry, final long ttlSeconds, final double maxErrorRatePercent,
+			final double maxP95Ms, final DoubleSupplier random) {
+		this.smsBridgeCache = smsBridgeCache;
+		this.smsBridgeRepository = smsBridgeRepository;
+		this.bridgeCircuitBreakers = bridgeCircuitBreakers;
+		this.bridgeHealth = bridgeHealth;
+		this.meterRegistry = meterRegistry;
+		this.candidates = Caffeine.newBuilder()
+				.expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+				.build();
+		this.maxErrorRatePercent = maxErrorRatePercent;
+		this.maxP95Ms = maxP95Ms;
+		this.random = random;
+	}
+
+	/**
+	 * Moves every message of a routed bridge to the bridge picked for it. The health of the bridges is read once per
+	 * call.
+	 */
+	public void route(final Collection<SMSMessage> messages) {
+		final Map<BridgeKey, Route> routes = new HashMap<>();
+		final Map<Decision, Integer> decisions = new HashMap<>();
+		for (SMSMessage message : messages) {
+			final Route route = routes.computeIfAbsent(new BridgeKey(message.getTenantId(), message.getBridgeId()), this::route);
+			if (route == NO_ROUTE) {
+				continue;
+			}
+			final Long bridgeId = route.pick(this.random.getAsDouble());
+			if (!bridgeId.equals(message.getBridgeId())) {
+				message.setProviderId(bridgeId);
+			}
+			final String reason = route.reason() != null ? route.reason()
+					: bridgeId.equals(route.from()) ? "primary" : "weighted";
+			decisions.merge(new Decision(route.from(), bridgeId, reason), 1, Integer::sum);
+		}
+		decisions.forEach((decision, count) -> Counter.builder("dispatch.routing.decisions")
+				.tag("from", String.valueOf(decision.from()))
+				.tag("to", String.valueOf(decision.to()))
+				.tag("reason", decision.reason())
+				.description("Messages routed from the bridge they were sent to to the bridge picked for them")
+				.register(this.meterRegistry)
+				.increment(count));
+	}
+
+	@Override
+	public void onApplicationEvent(final SMSBridgeInvalidatedEvent event) {
+		//the country or the weight of the bridge may have changed
+		this.candidates.invalidateAll();
+	}
+
+	private Route route(final BridgeKey key) {
+		final SMSBridge primary = this.smsBridgeCache.get(key.bridgeId(), key.tenantId());
+		if (primary == null || primary.getCountry() == null || weight(primary) <= 0d) {
+			return NO_ROUTE;
+		}
+		final List<Long> bridgeIds = new ArrayList<>();
+		bridgeIds.add(primary.getId());
+		for (Long bridgeId : this.candidates.get(new CountryKey(key.tenantId(), primary.getCountry().getName()), this::load)) {
+			if (!bridgeId.equals(primary.getId())) {
+				bridgeIds.add(bridgeId);
+			}
+		}
+		final List<Long> healthy = new ArrayList<>(bridgeIds.size());
+		final double[] cumulative = new double[bridgeIds.size()];
+		double total = 0d;
+		boolean primaryDegraded = false;
+		for (Long bridgeId : bridgeIds) {
+			final SMSBridge bridge = this.smsBridgeCache.get(bridgeId, key.tenantId());
+			final double weight = bridge == null ? 0d : weight(bridge);
+			if (weight <= 0d) {
+				continue;
+			}
+			if (isDegraded(bridgeId)) {
+				primaryDegraded |= bridgeId.equals(primary.getId());
+				continue;
+			}
+			final double score = weight / cost(bridge) * (1d - this.bridgeHealth.errorRate(bridgeId));
+			if (score > 0d) {
+				total += score;
+				cumulative[healthy.size()] = total;
+				healthy.add(bridgeId);
+			}
+		}
+		if (healthy.isEmpty()) {
+			logger.warn("No bridge of {} is healthy, messages of bridge {} are kept on it", primary.getCountry().getName(),
+					primary.getId());
+			return new Route(primary.getId(), "degraded", Collections.singletonList(primary.getId()), new double[] {1d});
+		}
+		if (primaryDegraded) {
+			logger.info("Bridge {} is degraded, failing its messages over to bridges {}", primary.getId(), healthy);
+		}
+		return new Route(primary.getId(), primaryDegraded ? "failover" : null, healthy, cumulative);
+	}
+
+	private boolean isDegraded(final Long bridgeId) {
+		return !this.bridgeCircuitBreakers.isClosed(bridgeId)
+				|| this.bridgeHealth.errorRate(bridgeId) * 100d > this.maxErrorRatePercent
+				|| (this.maxP95Ms > 0d && this.bridgeHealth.p95Ms(bridgeId) > this.maxP95Ms);
+	}
+
+	private List<Long> load(final CountryKey key) {
+		final List<Long> bridgeIds = new ArrayList<>();
+		for (SMSBridge bridge : this.smsBridgeRepository.findByTenantIdAndCountryName(key.tenantId(), key.countryName())) {
+			bridgeIds.add(bridge.getId());
+		}
+		return bridgeIds;
+	}
+
+	private static double weight(final SMSBridge bridge) {
+		return configValue(bridge, MessageGatewayConstants.ROUTING_WEIGHT, 0d);
+	}
+
+	private static double cost(final SMSBridge bridge) {
+		final double cost = configValue(bridge, MessageGatewayConstants.ROUTING_COST, 1d);
+		return cost > 0d ? cost : 1d;
+	}
+
+	private static double configValue(final SMSBridge bridge, final String name, final double defaultValue) {
+		final String value = bridge.getConfigValue(name);
+		if (!StringUtils.hasText(value)) {
+			return defaultValue;
+		}
+		try {
+			return Double.parseDouble(value.trim());
+		} catch (NumberFormatException e) {
+			logger.warn("Ignoring invalid {} value '{}' on bridge {}", name, value, bridge.getId());
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Healthy bridges a message may be routed to, with the running total of their scores.
+	 */
+	private record Route(Long from, String reason, List<Long> bridgeIds, double[] cumulative) {
+
+		Long pick(final double random) {
+			final double target = random * this.cumulative[this.bridgeIds.size() - 1];
+			for (int i = 0; i < this.bridgeIds.size() - 1; i++) {
+				if (target < this.cumulative[i]) {
+					return this.bridgeIds.get(i);
+				}
+			}
+			return this.bridgeIds.get(this.bridgeIds.size() - 1);
+		}
+	}
+
+	private record BridgeKey(Long tenantId, Long bridgeId) {
+	}
+
+	private record CountryKey(Long tenantId, String countryName) {
+	}
+
+	private record Decision(Long from, Long to, String reason) {
+	}
+}
@@ -0,0 +1,166 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.dispatch;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker of a single bridge, counting sent and failed messages. While closed, the breaker opens once at
+ * least <code>minimumSends</code> messages were counted and <code>failureRatePercent</code> of them failed; the
+ * counts start over every <code>windowSize</code> messages. An open breaker rejects sends for
+ * <code>openMs</code>, then lets one probe of up to <code>probeSize</code> messages through. The breaker closes when
+ * the probe succeeds and opens again when it fails; a probe that never reports back is replaced after
+ * <code>openMs</code>.
+ */
+final class CircuitBreaker {
+
+	enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final int failureRatePercent;
+
+	private final int minimumSends;
+
+	private final int windowSize;
+
+	private final long openMs;
+
+	private final int probeSize;
+
+	private final LongSupplier clock;
+
+	private State state = State.CLOSED;
+
+	private int sends;
+
+	private int failures;
+
+	private long openUntil;
+
+	private long probeStartedAt = -1L;
+
+	CircuitBreaker(final int failureRatePercent, final int minimumSends, final int windowSize, final long openMs,
+			final int probeSize, final LongSupplier clock) {
+		this.failureRatePercent = failureRatePercent;
+		this.minimumSends = Math.max(1, minimumSends);
+		this.windowSize = Math.max(this.minimumSends, windowSize);
+		this.openMs = openMs;
+		this.probeSize = Math.max(1, probeSize);
+		this.clock = clock;
+	}
+
+	/**
+	 * @return how many messages may be sent now: {@link Integer#MAX_VALUE} while closed, the probe size for the
+	 * caller that gets to probe, <code>0</code> when the send is rejected
+	 */
+	synchronized int acquire() {
+		final long now = this.clock.getAsLong();
+		switch (this.state) {
+		case CLOSED:
+			return Integer.MAX_VALUE;
+		case OPEN:
+			if (now < this.openUntil) {
+				return 0;
+			}
+			this.state = State.HALF_OPEN;
+			this.probeStartedAt = now;
+			return this.probeSize;
+		default:
+			if (now - this.probeStartedAt < this.openMs) {
+				return 0;
+			}
+			this.probeStartedAt = now;
+			return this.probeSize;
+		}
+	}
+
+	/**
+	 * Counts the outcome of a send. Results arriving while the breaker is open belong to sends started before it
+	 * opened and are ignored.
+	 */
+	synchronized void record(final int sent, final int failed) {
+		switch (this.state) {
+		case CLOSED:
+			this.sends += sent + failed;
+			this.failures += failed;
+			if (this.sends >= this.minimumSends && this.failures * 100L >= (long) this.failureRatePercent * this.sends) {
+				open();
+			} else if (this.sends >= this.windowSize) {
+				reset();
+			}
+			break;
+		case HALF_OPEN:
+			if (failed == 0) {
+				this.state = State.CLOSED;
+				reset();
+			} else {
+				open();
+			}
+			break;
+		default:
+			break;
+		}
+	}
+
+	private void open() {
+		this.state = State.OPEN;
+		this.openUntil = this.clock.getAsLong() + this.openMs;
+		reset();
+	}
+
+	private void reset() {
+		this.sends = 0;
+		this.failures = 0;
+	}
+
+	synchronized State getState() {
+		return this.state;
+	}
+
+	/**
+	 * @return when an open breaker lets the next probe through, in clock milliseconds
+	 */
+	synchronized long getOpenUntil() {
+		return this.openUntil;
+	}
+
+	/**
+	 * @return when a rejected send can be tried again, in clock milliseconds: the end of the open time, or while a
+	 * probe is out the time it is replaced after
+	 */
+	synchronized long getRetryAt() {
+		switch (this.state) {
+		case OPEN:
+			return this.openUntil;
+		case HALF_OPEN:
+			return this.probeStartedAt + this.openMs;
+		default:
+			return this.clock.getAsLong();
+		}
+	}
+
+	synchronized int getSends() {
+		return this.sends;
+	}
+
+	synchronized int getFailures() {
+		return this.failures;
+	}
+}
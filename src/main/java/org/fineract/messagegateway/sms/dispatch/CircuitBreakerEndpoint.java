@@ -0,0 +1,46 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.dispatch;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * <code>/actuator/circuitbreakers</code>: the circuit breaker state of every bridge that sent messages.
+ */
+@Component
+@Endpoint(id = "circuitbreakers")
+public class CircuitBreakerEndpoint {
+
+	private final BridgeCircuitBreakers bridgeCircuitBreakers;
+
+	@Autowired
+	public CircuitBreakerEndpoint(final BridgeCircuitBreakers bridgeCircuitBreakers) {
+		this.bridgeCircuitBreakers = bridgeCircuitBreakers;
+	}
+
+	@ReadOperation
+	public Map<Long, BridgeCircuitBreakers.Status> circuitBreakers() {
+		return this.bridgeCircuitBreakers.getStatuses();
+	}
+}
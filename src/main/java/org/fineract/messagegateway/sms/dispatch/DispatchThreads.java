@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.dispatch;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread factories for the dispatch lanes. Virtual threads are created reflectively, so the gateway still builds
+ * and runs on Java 17 and only switches to lightweight threads when it is started on Java 21 or later. On Java 19
+ * and 20 virtual threads are a preview feature whose builder throws unless preview features are enabled, so a builder
+ * is created once up front to tell whether they can be used.
+ */
+final class DispatchThreads {
+
+	private static final ThreadFactoryBuilder VIRTUAL_BUILDER = virtualBuilder();
+
+	private DispatchThreads() {
+	}
+
+	static boolean virtualThreadsSupported() {
+		return VIRTUAL_BUILDER != null;
+	}
+
+	static ThreadFactory factory(final ExecutionMode mode, final String prefix) {
+		if (mode == ExecutionMode.VIRTUAL && virtualThreadsSupported()) {
+			return VIRTUAL_BUILDER.build(prefix);
+		}
+		return new PlatformThreadFactory(prefix);
+	}
+
+	private static ThreadFactoryBuilder virtualBuilder() {
+		try {
+			final Method ofVirtual = Thread.class.getMethod("ofVirtual");
+			final Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+			final Method name = builderType.getMethod("name", String.class, long.class);
+			final Method factory = builderType.getMethod("factory");
+			ofVirtual.invoke(null);
+			return prefix -> {
+				try {
+					final Object builder = name.invoke(ofVirtual.invoke(null), prefix, 0L);
+					return (ThreadFactory) factory.invoke(builder);
+				} catch (IllegalAccessException | InvocationTargetException e) {
+					throw new IllegalStateException("Could not create a virtual thread factory", e);
+				}
+			};
+		} catch (NoSuchMethodException | ClassNotFoundException | IllegalAccessException | InvocationTargetException
+				| UnsupportedOperationException e) {
+			return null;
+		}
+	}
+
+	enum ExecutionMode {
+		PLATFORM, VIRTUAL
+	}
+
+	private interface ThreadFactoryBuilder {
+		ThreadFactory build(String prefix);
+	}
+
+	private static final class PlatformThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger counter = new AtomicInteger();
+
+		private final String prefix;
+
+		PlatformThreadFactory(final String prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			return new Thread(runnable, this.prefix + this.counter.getAndIncrement());
+		}
+	}
+}
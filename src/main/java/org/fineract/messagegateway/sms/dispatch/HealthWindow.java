@@ -0,0 +1,72 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.dispatch;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Error rate of a single bridge over a sliding, exponentially decaying window: the counted messages lose half their
+ * weight every <code>halfLifeMs</code>. A bridge that is no longer sent to therefore falls back under
+ * <code>minimumSends</code> after a while and is reported healthy again, which lets routing probe it.
+ */
+final class HealthWindow {
+
+	private final long halfLifeMs;
+
+	private final int minimumSends;
+
+	private final LongSupplier clock;
+
+	private double sends;
+
+	private double failures;
+
+	private long updatedAt;
+
+	HealthWindow(final long halfLifeMs, final int minimumSends, final LongSupplier clock) {
+		this.halfLifeMs = Math.max(1L, halfLifeMs);
+		this.minimumSends = minimumSends;
+		this.clock = clock;
+		this.updatedAt = clock.getAsLong();
+	}
+
+	synchronized void record(final int sent, final int failed) {
+		decay();
+		this.sends += sent + failed;
+		this.failures += failed;
+	}
+
+	/**
+	 * @return the share of failed messages, <code>0</code> while fewer than <code>minimumSends</code> are counted
+	 */
+	synchronized double errorRate() {
+		decay();
+		return this.sends < this.minimumSends ? 0d : this.failures / this.sends;
+	}
+
+	private void decay() {
+		final long now = this.clock.getAsLong();
+		if (now > this.updatedAt) {
+			final double factor = Math.pow(0.5d, (now - this.updatedAt) / (double) this.halfLifeMs);
+			this.sends *= factor;
+			this.failures *= factor;
+			this.updatedAt = now;
+		}
+	}
+}
@@ -0,0 +1,279 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.dispatch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.fineract.messagegateway.constants.MessageGatewayConstants;
+import org.fineract.messagegateway.sms.cache.DeliveryStatusCache;
+import org.fineract.messagegateway.sms.cache.SMSBridgeCache;
+import org.fineract.messagegateway.sms.dispatch.DispatchThreads.ExecutionMode;
+import org.fineract.messagegateway.sms.domain.SMSBridge;
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.sms.providers.SMSProviderFactory;
+import org.fineract.messagegateway.sms.repository.OutboundMessageWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+/**
+ * Dispatches accepted messages to their providers. Messages are grouped by bridge and handed to the
+ * {@link BridgeLane} of that bridge in chunks, so tenants using different bridges never wait on each other.
+ * Messages that are still pending after their send are handed to the {@link RetryScheduler}. Before being grouped,
+ * messages are moved across the bridges of their country by the {@link BridgeRouter}.
+ * <p>
+ * The claim tokens of the messages waiting in a lane or being sent are listed by {@link #getClaimTokens}, so that the
+ * {@link OutboundMessageQueue} can renew their lease however long they wait. The outcome of a chunk is only stored
+ * for the rows still claimed with the token the message was dispatched with.
+ * <p>
+ * The concurrency of a lane comes from the <code>dispatch.concurrency</code> property and can be overridden per
+ * bridge with the {@link MessageGatewayConstants#DISPATCH_CONCURRENCY} configuration. Bridges whose provider
+ * needs messages in order set {@link MessageGatewayConstants#DISPATCH_ORDERED}, which pins the lane to one worker.
+ * <p>
+ * With <code>dispatch.executionMode: virtual</code> the lane workers are virtual threads (Java 21+), which lets a
+ * lane keep thousands of blocking provider calls in flight while only using a handful of carrier threads. The lane
+ * concurrency then defaults to <code>dispatch.virtualConcurrency</code>.
+ */
+@Component
+public class MessageDispatcher {
+
+	private static final Logger logger = LoggerFactory.getLogger(MessageDispatcher.class);
+
+	private static final long SHUTDOWN_TIMEOUT_SECONDS = 30L;
+
+	private final SMSBridgeCache smsBridgeCache;
+
+	private final SMSProviderFactory smsProviderFactory;
+
+	private final OutboundMessageWriter outboundMessageWriter;
+
+	private final DeliveryStatusCache deliveryStatusCache;
+
+	private final RetryScheduler retryScheduler;
+
+	private final BridgeRouter bridgeRouter;
+
+	private final Map<Long, BridgeLane> lanes = new ConcurrentHashMap<>();
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	private final Map<String, AtomicInteger> claims = new ConcurrentHashMap<>();
+
+	@Value("${dispatch.executionMode:platform}")
+	private String executionModeName;
+
+	@Value("${dispatch.concurrency:4}")
+	private int platformConcurrency;
+
+	@Value("${dispatch.virtualConcurrency:1000}")
+	private int virtualConcurrency;
+
+	@Value("${dispatch.ordered:false}")
+	private boolean defaultOrdered;
+
+	@Value("${dispatch.chunkSize:50}")
+	private int chunkSize;
+
+	private ExecutionMode executionMode = ExecutionMode.PLATFORM;
+
+	private int defaultConcurrency;
+
+	@Autowired
+	public MessageDispatcher(final SMSBridgeCache smsBridgeCache,
+							 final SMSProviderFactory smsProviderFactory,
+							 final OutboundMessageWriter outboundMessageWriter,
+							 final DeliveryStatusCache deliveryStatusCache,
+							 final RetryScheduler retryScheduler,
+							 final BridgeRouter bridgeRouter) {
+		this.smsBridgeCache = smsBridgeCache;
+		this.smsProviderFactory = smsProviderFactory;
+		this.outboundMessageWriter = outboundMessageWriter;
+		this.deliveryStatusCache = deliveryStatusCache;
+		this.retryScheduler = retryScheduler;
+		this.bridgeRouter = bridgeRouter;
+	}
+
+	@PostConstruct
+	public void init() {
+		this.executionMode = ExecutionMode.valueOf(this.executionModeName.trim().toUpperCase());
+		if (this.executionMode == ExecutionMode.VIRTUAL && !DispatchThreads.virtualThreadsSupported()) {
+			logger.warn("Virtual threads need Java 21 or later, dispatching on platform threads instead");
+			this.executionMode = ExecutionMode.PLATFORM;
+		}
+		this.defaultConcurrency = this.executionMode == ExecutionMode.VIRTUAL ? this.virtualConcurrency : this.platformConcurrency;
+		logger.info("Dispatching messages on {} threads with a default lane concurrency of {}", this.executionMode, this.defaultConcurrency);
+		this.retryScheduler.start(this::dispatch);
+	}
+
+	public void dispatch(final Collection<SMSMessage> messages) {
+		this.bridgeRouter.route(messages);
+		final Map<Long, List<SMSMessage>> messagesByBridge = new LinkedHashMap<>();
+		for (SMSMessage message : messages) {
+			messagesByBridge.computeIfAbsent(message.getBridgeId(), id -> new ArrayList<>()).add(message);
+		}
+		for (Map.Entry<Long, List<SMSMessage>> entry : messagesByBridge.entrySet()) {
+			final List<SMSMessage> bridgeMessages = entry.getValue();
+			final BridgeLane lane = lane(entry.getKey(), bridgeMessages.get(0).getTenantId());
+			final int size = Math.max(1, this.chunkSize);
+			for (int from = 0; from < bridgeMessages.size(); from += size) {
+				final List<SMSMessage> chunk = bridgeMessages.subList(from, Math.min(from + size, bridgeMessages.size()));
+				final ChunkTask task = new ChunkTask(chunk);
+				this.inFlight.addAndGet(chunk.size());
+				task.claimTokens.forEach(this::addClaim);
+				lane.execute(task);
+			}
+			logger.debug("Queued {} messages on lane of bridge {}", bridgeMessages.size(), entry.getKey());
+		}
+	}
+
+	/**
+	 * @return the number of dispatched messages that are queued on a lane or being sent
+	 */
+	public int getInFlight() {
+		return this.inFlight.get();
+	}
+
+	/**
+	 * @return the claim tokens of the dispatched messages that are queued on a lane or being sent
+	 */
+	public Collection<String> getClaimTokens() {
+		return new ArrayList<>(this.claims.keySet());
+	}
+
+	private void addClaim(final String claimToken) {
+		if (claimToken != null) {
+			this.claims.computeIfAbsent(claimToken, token -> new AtomicInteger()).incrementAndGet();
+		}
+	}
+
+	private void removeClaim(final String claimToken) {
+		if (claimToken != null) {
+			this.claims.computeIfPresent(claimToken, (token, count) -> count.decrementAndGet() == 0 ? null : count);
+		}
+	}
+
+	private BridgeLane lane(final Long bridgeId, final Long tenantId) {
+		final int concurrency = resolveConcurrency(this.smsBridgeCache.get(bridgeId, tenantId));
+		final BridgeLane lane = this.lanes.computeIfAbsent(bridgeId,
+				id -> new BridgeLane(id, concurrency, DispatchThreads.factory(this.executionMode, "dispatch-bridge-" + id + "-")));
+		lane.resize(concurrency);
+		return lane;
+	}
+
+	int resolveConcurrency(final SMSBridge bridge) {
+		boolean ordered = this.defaultOrdered;
+		int concurrency = this.defaultConcurrency;
+		if (bridge != null) {
+			final String orderedValue = bridge.getConfigValue(MessageGatewayConstants.DISPATCH_ORDERED);
+			if (StringUtils.hasText(orderedValue)) {
+				ordered = Boolean.parseBoolean(orderedValue.trim());
+			}
+			final String concurrencyValue = bridge.getConfigValue(MessageGatewayConstants.DISPATCH_CONCURRENCY);
+			if (StringUtils.hasText(concurrencyValue)) {
+				try {
+					concurrency = Integer.parseInt(concurrencyValue.trim());
+				} catch (NumberFormatException e) {
+					logger.warn("Ignoring invalid {} value '{}' on bridge {}", MessageGatewayConstants.DISPATCH_CONCURRENCY,
+							concurrencyValue, bridge.getId());
+				}
+			}
+		}
+		return ordered ? 1 : Math.max(1, concurrency);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		for (BridgeLane lane : this.lanes.values()) {
+			try {
+				lane.shutdown(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				logger.warn("Interrupted while draining lane of bridge {}", lane.getBridgeId());
+			}
+		}
+	}
+
+	class ChunkTask implements Runnable {
+
+		final List<SMSMessage> messages;
+
+		final List<String> claimTokens;
+
+		ChunkTask(final List<SMSMessage> messages) {
+			this.messages = messages;
+			this.claimTokens = new ArrayList<>(messages.size());
+			for (SMSMessage message : messages) {
+				this.claimTokens.add(message.getClaimToken());
+			}
+		}
+
+		@Override
+		public void run() {
+			List<SMSMessage> retries = Collections.emptyList();
+			List<SMSMessage> stored = Collections.emptyList();
+			try {
+				smsProviderFactory.sendShortMessage(this.messages);
+				retries = retryScheduler.prepare(this.messages);
+				final Set<SMSMessage> held = Collections.newSetFromMap(new IdentityHashMap<>());
+				held.addAll(retries);
+				for (SMSMessage message : this.messages) {
+					if (!held.contains(message)) {
+						message.releaseClaim();
+					}
+				}
+				stored = outboundMessageWriter.updateClaimed(this.messages, this.claimTokens);
+				if (stored.size() < this.messages.size()) {
+					logger.warn("{} of {} messages were claimed by another dispatcher while being sent, their outcome is not stored",
+							this.messages.size() - stored.size(), this.messages.size());
+				}
+				deliveryStatusCache.putAll(stored);
+			} catch (RuntimeException e) {
+				logger.error("Dispatching {} messages failed with reason {}", this.messages.size(), e.getMessage(), e);
+			} finally {
+				final Set<SMSMessage> storedMessages = Collections.newSetFromMap(new IdentityHashMap<>());
+				storedMessages.addAll(stored);
+				final List<SMSMessage> scheduled = new ArrayList<>(retries.size());
+				final List<SMSMessage> cancelled = new ArrayList<>();
+				for (SMSMessage retry : retries) {
+					(storedMessages.contains(retry) ? scheduled : cancelled).add(retry);
+				}
+				retryScheduler.schedule(scheduled);
+				retryScheduler.cancel(cancelled);
+				this.claimTokens.forEach(MessageDispatcher.this::removeClaim);
+				inFlight.addAndGet(-this.messages.size());
+			}
+		}
+	}
+}
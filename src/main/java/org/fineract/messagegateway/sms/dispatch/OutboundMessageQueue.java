@@ -0,0 +1,241 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.dispatch;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.sms.repository.OutboundMessageWriter;
+import org.fineract.messagegateway.sms.repository.SmsOutboundMessageRepository;
+import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Durable dispatch queue on top of <code>m_outbound_messages</code>. A message is leased to the instance that accepts
+ * it in the same insert, written through the {@link OutboundMessageWriter}, and handed to the {@link MessageDispatcher} straight away. Every instance periodically
+ * claims pending messages whose lease has expired (or which never had one) with a single
+ * <code>UPDATE ... ORDER BY id LIMIT</code>, so rows left behind by a crashed or stopped instance are sent again
+ * while two instances can never claim the same row. Sweep durations are published as the
+ * <code>outbound.queue.sweep</code> timer and the number of pending rows as the <code>outbound.queue.backlog</code>
+ * gauge.
+ * <p>
+ * Messages can wait in a lane far longer than <code>dispatch.queue.leaseSeconds</code>, behind a rate limit or an
+ * open circuit, so the leases of all messages queued or being sent by this instance are renewed every third of the
+ * lease. Should a lease still expire, say while the database was unreachable, the outcome of the send is only stored
+ * if the row is still claimed by the same token.
+ */
+@Component
+public class OutboundMessageQueue {
+
+	private static final Logger logger = LoggerFactory.getLogger(OutboundMessageQueue.class);
+
+	private static final String CLAIM_SQL = "update m_outbound_messages set claim_token = ?, lease_expires_at = ?"
+			+ " where delivery_status = ? and (lease_expires_at is null or lease_expires_at < ?)"
+			+ " and (next_attempt_at is null or next_attempt_at <= ?) and id > ?"
+			+ " order by id limit ?";
+
+	private static final String BACKLOG_SQL = "select count(*) from m_outbound_messages where delivery_status = ?";
+
+	private final SmsOutboundMessageRepository smsOutboundMessageRepository;
+
+	private final OutboundMessageWriter outboundMessageWriter;
+
+	private final MessageDispatcher messageDispatcher;
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final Timer sweepTimer;
+
+	private final AtomicLong backlog = new AtomicLong();
+
+	private ScheduledExecutorService scheduledExecutorService;
+
+	@Value("${dispatch.queue.leaseSeconds:300}")
+	private long leaseSeconds;
+
+	@Value("${dispatch.queue.pollIntervalSeconds:30}")
+	private long pollIntervalSeconds;
+
+	@Value("${dispatch.queue.claimSize:500}")
+	private int claimSize;
+
+	@Value("${dispatch.queue.maxInFlight:5000}")
+	private int maxInFlight;
+
+	@Autowired
+	public OutboundMessageQueue(final SmsOutboundMessageRepository smsOutboundMessageRepository,
+								final OutboundMessageWriter outboundMessageWriter,
+								final MessageDispatcher messageDispatcher,
+								final DataSource dataSource,
+								final MeterRegistry meterRegistry) {
+		this.smsOutboundMessageRepository = smsOutboundMessageRepository;
+		this.outboundMessageWriter = outboundMessageWriter;
+		this.messageDispatcher = messageDispatcher;
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.sweepTimer = Timer.builder("outbound.queue.sweep")
+				.description("Time taken to claim and dispatch expired pending messages")
+				.register(meterRegistry);
+		Gauge.builder("outbound.queue.backlog", this.backlog, AtomicLong::get)
+				.description("Pending messages at the end of the last sweep")
+				.register(meterRegistry);
+		Gauge.builder("outbound.queue.inflight", messageDispatcher, MessageDispatcher::getInFlight)
+				.description("Dispatched messages not sent yet")
+				.register(meterRegistry);
+	}
+
+	@PostConstruct
+	public void init() {
+		this.scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(
+				DispatchThreads.factory(DispatchThreads.ExecutionMode.PLATFORM, "dispatch-queue-"));
+		this.scheduledExecutorService.scheduleWithFixedDelay(this::reclaimSafely, this.pollIntervalSeconds,
+				this.pollIntervalSeconds, TimeUnit.SECONDS);
+		final long renewalSeconds = Math.max(1L, this.leaseSeconds / 3);
+		this.scheduledExecutorService.scheduleWithFixedDelay(this::renewLeasesSafely, renewalSeconds, renewalSeconds,
+				TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Stores new messages leased to this instance and dispatches them. The messages carry their assigned ids once
+	 * this returns. While <code>dispatch.queue.maxInFlight</code> messages are already waiting in the lanes the
+	 * messages are only stored, without a lease, and the next sweep claims them.
+	 */
+	public void submit(final List<SMSMessage> messages) {
+		if (this.messageDispatcher.getInFlight() + messages.size() > this.maxInFlight) {
+			this.outboundMessageWriter.insert(messages);
+			logger.debug("{} messages are waiting to be sent, stored {} messages for the next sweep",
+					this.messageDispatcher.getInFlight(), messages.size());
+			return;
+		}
+		final String claimToken = UUID.randomUUID().toString();
+		final Date leaseExpiresAt = leaseExpiry();
+		for (SMSMessage message : messages) {
+			message.lease(claimToken, leaseExpiresAt);
+		}
+		this.outboundMessageWriter.insert(messages);
+		this.messageDispatcher.dispatch(messages);
+	}
+
+	/**
+	 * Claims and dispatches pending messages whose lease has expired. The sweep walks the table by id in batches of
+	 * <code>dispatch.queue.claimSize</code>, and stops early once <code>dispatch.queue.maxInFlight</code> messages
+	 * are waiting in the lanes; the rest is claimed by a later sweep.
+	 *
+	 * @return the number of claimed messages
+	 */
+	public int reclaim() {
+		final long start = System.nanoTime();
+		int total = 0;
+		try {
+			long lastId = 0L;
+			int limit;
+			int claimed;
+			do {
+				limit = Math.min(this.claimSize, this.maxInFlight - this.messageDispatcher.getInFlight());
+				if (limit <= 0) {
+					logger.info("{} messages are waiting to be sent, postponing the rest of the sweep",
+							this.messageDispatcher.getInFlight());
+					break;
+				}
+				final String claimToken = UUID.randomUUID().toString();
+				final Timestamp now = new Timestamp(System.currentTimeMillis());
+				claimed = this.jdbcTemplate.update(CLAIM_SQL, claimToken, new Timestamp(leaseExpiry().getTime()),
+						SmsMessageStatusType.PENDING.getValue(), now, now, lastId, limit);
+				if (claimed > 0) {
+					final List<SMSMessage> messages = this.smsOutboundMessageRepository.findByClaimToken(claimToken);
+					for (SMSMessage message : messages) {
+						lastId = Math.max(lastId, message.getId());
+					}
+					this.messageDispatcher.dispatch(messages);
+					total += messages.size();
+				}
+			} while (claimed >= limit);
+			this.backlog.set(this.jdbcTemplate.queryForObject(BACKLOG_SQL, Long.class,
+					SmsMessageStatusType.PENDING.getValue()));
+		} finally {
+			this.sweepTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+		if (total > 0) {
+			logger.info("Claimed {} pending messages", total);
+		}
+		return total;
+	}
+
+	/**
+	 * Extends the lease of the messages that are queued on a lane or being sent by this instance.
+	 *
+	 * @return the number of rows whose lease was extended
+	 */
+	public int renewLeases() {
+		final Collection<String> claimTokens = this.messageDispatcher.getClaimTokens();
+		if (claimTokens.isEmpty()) {
+			return 0;
+		}
+		final int renewed = this.outboundMessageWriter.renewLeases(claimTokens, leaseExpiry());
+		logger.debug("Renewed the lease of {} messages", renewed);
+		return renewed;
+	}
+
+	private void renewLeasesSafely() {
+		try {
+			renewLeases();
+		} catch (RuntimeException e) {
+			logger.error("Renewing leases failed with reason {}", e.getMessage(), e);
+		}
+	}
+
+	private void reclaimSafely() {
+		try {
+			reclaim();
+		} catch (RuntimeException e) {
+			logger.error("Claiming pending messages failed with reason {}", e.getMessage(), e);
+		}
+	}
+
+	private Date leaseExpiry() {
+		return new Date(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(this.leaseSeconds));
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (this.scheduledExecutorService != null) {
+			this.scheduledExecutorService.shutdownNow();
+		}
+	}
+}
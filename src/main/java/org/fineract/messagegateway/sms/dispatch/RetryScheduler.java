@@ -0,0 +1,251 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.dispatch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import javax.annotation.PreDestroy;
+
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Schedules the messages that are still pending after a send attempt, which means the provider failed transiently
+ * or throttled, for another attempt. Attempt <i>n</i> waits <code>dispatch.retry.initialDelayMs * 2^(n-1)</code>,
+ * capped at <code>dispatch.retry.maxDelayMs</code>, of which a random half is jitter so that the retries of one
+ * outage do not all hit the provider at once. After <code>dispatch.retry.maxAttempts</code> attempts the message
+ * fails.
+ * <p>
+ * <code>attempt_count</code> and <code>next_attempt_at</code> are stored with the message. Up to
+ * <code>dispatch.retry.budgetPerBridge</code> retries per bridge wait in memory on a {@link DelayQueue} and keep
+ * their claim token and lease, so no other instance claims them; beyond that budget, and after a restart, the message is claimed by
+ * the dispatch sweep once it is due.
+ */
+@Component
+public class RetryScheduler {
+
+	private static final Logger logger = LoggerFactory.getLogger(RetryScheduler.class);
+
+	private final DelayQueue<Retry> retries = new DelayQueue<>();
+
+	private final Map<Long, AtomicInteger> scheduledByBridge = new ConcurrentHashMap<>();
+
+	private final int maxAttempts;
+
+	private final long initialDelayMs;
+
+	private final long maxDelayMs;
+
+	private final int budgetPerBridge;
+
+	private final long leaseSeconds;
+
+	private final Counter scheduled;
+
+	private final Counter deferred;
+
+	private final Counter exhausted;
+
+	private ExecutorService executorService;
+
+	@Autowired
+	public RetryScheduler(final MeterRegistry meterRegistry,
+						  @Value("${dispatch.retry.maxAttempts:8}") final int maxAttempts,
+						  @Value("${dispatch.retry.initialDelayMs:1000}") final long initialDelayMs,
+						  @Value("${dispatch.retry.maxDelayMs:300000}") final long maxDelayMs,
+						  @Value("${dispatch.retry.budgetPerBridge:1000}") final int budgetPerBridge,
+						  @Value("${dispatch.queue.leaseSeconds:300}") final long leaseSeconds) {
+		this.maxAttempts = maxAttempts;
+		this.initialDelayMs = Math.max(1L, initialDelayMs);
+		this.maxDelayMs = Math.max(this.initialDelayMs, maxDelayMs);
+		this.budgetPerBridge = budgetPerBridge;
+		this.leaseSeconds = leaseSeconds;
+		this.scheduled = Counter.builder("dispatch.retry.scheduled")
+				.description("Send attempts scheduled again after a transient failure")
+				.register(meterRegistry);
+		this.deferred = Counter.builder("dispatch.retry.deferred")
+				.description("Retries over the bridge budget, left to the dispatch sweep")
+				.register(meterRegistry);
+		this.exhausted = Counter.builder("dispatch.retry.exhausted")
+				.description("Messages failed after their last attempt")
+				.register(meterRegistry);
+		Gauge.builder("dispatch.retry.queue", this.retries, DelayQueue::size)
+				.description("Retries waiting in memory")
+				.register(meterRegistry);
+	}
+
+	/**
+	 * Starts handing due retries to <code>dispatcher</code>.
+	 */
+	void start(final Consumer<List<SMSMessage>> dispatcher) {
+		this.executorService = Executors.newSingleThreadExecutor(
+				DispatchThreads.factory(DispatchThreads.ExecutionMode.PLATFORM, "dispatch-retry-"));
+		this.executorService.execute(() -> run(dispatcher));
+	}
+
+	/**
+	 * Records the failed attempt on every message that is still pending after being sent, and fails the ones out of
+	 * attempts. Messages postponed without being sent keep their attempt count and wait until their next attempt.
+	 * Must be called before the messages are stored.
+	 *
+	 * @return the messages to hand to {@link #schedule} once they are stored
+	 */
+	List<SMSMessage> prepare(final Collection<SMSMessage> messages) {
+		final List<SMSMessage> held = new ArrayList<>();
+		final long now = System.currentTimeMillis();
+		for (SMSMessage message : messages) {
+			if (!SmsMessageStatusType.PENDING.getValue().equals(message.getDeliveryStatus()) || message.getExternalId() != null) {
+				continue;
+			}
+			if (message.getNextAttemptAt() != null && message.getNextAttemptAt().getTime() > now) {
+				final Date nextAttemptAt = message.getNextAttemptAt();
+				if (reserve(message.getBridgeId())) {
+					message.lease(message.getClaimToken(), new Date(nextAttemptAt.getTime() + TimeUnit.SECONDS.toMillis(this.leaseSeconds)));
+					held.add(message);
+				} else {
+					this.deferred.increment();
+					message.lease(null, null);
+				}
+				continue;
+			}
+			final int attempt = message.getAttemptCount() + 1;
+			if (attempt >= this.maxAttempts) {
+				this.exhausted.increment();
+				message.setDeliveryStatus(SmsMessageStatusType.FAILED.getValue());
+				message.setDeliveryErrorMessage("Failed after " + attempt + " attempts: " + message.getDeliveryErrorMessage());
+				continue;
+			}
+			final Date nextAttemptAt = new Date(now + delayMs(attempt));
+			if (reserve(message.getBridgeId())) {
+				this.scheduled.increment();
+				message.scheduleRetry(nextAttemptAt, new Date(nextAttemptAt.getTime() + TimeUnit.SECONDS.toMillis(this.leaseSeconds)));
+				held.add(message);
+			} else {
+				this.deferred.increment();
+				message.scheduleRetry(nextAttemptAt, null);
+			}
+		}
+		return held;
+	}
+
+	/**
+	 * Queues stored messages returned by {@link #prepare} until their next attempt is due.
+	 */
+	void schedule(final List<SMSMessage> messages) {
+		for (SMSMessage message : messages) {
+			this.retries.add(new Retry(message));
+		}
+	}
+
+	/**
+	 * Gives back the budget of messages returned by {@link #prepare} that could not be stored; the sweep sends them
+	 * once their previous lease expires.
+	 */
+	void cancel(final List<SMSMessage> messages) {
+		for (SMSMessage message : messages) {
+			this.scheduledByBridge.get(message.getBridgeId()).decrementAndGet();
+		}
+	}
+
+	/**
+	 * @return the delay before attempt <code>attempt + 1</code>: half of the exponential backoff, plus up to as much
+	 * random jitter
+	 */
+	long delayMs(final int attempt) {
+		final long backoff = this.initialDelayMs << Math.min(attempt - 1, 32);
+		final long capped = backoff <= 0 ? this.maxDelayMs : Math.min(backoff, this.maxDelayMs);
+		return capped / 2 + ThreadLocalRandom.current().nextLong(capped / 2 + 1);
+	}
+
+	private boolean reserve(final Long bridgeId) {
+		final AtomicInteger count = this.scheduledByBridge.computeIfAbsent(bridgeId, id -> new AtomicInteger());
+		if (count.incrementAndGet() > this.budgetPerBridge) {
+			count.decrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	private void run(final Consumer<List<SMSMessage>> dispatcher) {
+		final List<Retry> due = new ArrayList<>();
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				due.add(this.retries.take());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			this.retries.drainTo(due);
+			final List<SMSMessage> messages = new ArrayList<>(due.size());
+			for (Retry retry : due) {
+				this.scheduledByBridge.get(retry.message().getBridgeId()).decrementAndGet();
+				messages.add(retry.message());
+			}
+			due.clear();
+			try {
+				dispatcher.accept(messages);
+			} catch (RuntimeException e) {
+				logger.error("Dispatching {} retries failed with reason {}, the sweep claims them once their lease expires",
+						messages.size(), e.getMessage(), e);
+			}
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (this.executorService != null) {
+			this.executorService.shutdownNow();
+		}
+	}
+
+	private record Retry(SMSMessage message) implements Delayed {
+
+		@Override
+		public long getDelay(final TimeUnit unit) {
+			return unit.convert(this.message.getNextAttemptAt().getTime() - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public int compareTo(final Delayed other) {
+			return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+		}
+	}
+}
@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.dispatch;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free token bucket. Tokens refill at the current rate up to <code>burst</code>; a reservation may take more
+ * tokens than are available, and the caller then waits until the debt is paid back, so concurrent callers are served
+ * in the order they reserved.
+ * <p>
+ * The rate adapts to the provider: every throttle multiplies it by <code>decreaseFactor</code>, down to
+ * <code>minTps</code>, after which it grows back linearly by <code>recoveryTpsPerSecond</code> until it reaches the
+ * configured rate again. Throttles reported within a second of the last decrease belong to the same overload and are
+ * ignored.
+ */
+final class TokenBucket {
+
+	private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+	private final double tps;
+
+	private final double burst;
+
+	private final double minTps;
+
+	private final double decreaseFactor;
+
+	private final double recoveryTpsPerSecond;
+
+	private final LongSupplier nanoClock;
+
+	private final AtomicReference<Tokens> tokens;
+
+	private final AtomicReference<Decrease> decrease;
+
+	TokenBucket(final double tps, final double burst, final double minTps, final double decreaseFactor,
+			final double recoveryTpsPerSecond, final LongSupplier nanoClock) {
+		this.tps = tps;
+		this.burst = Math.max(1d, burst);
+		this.minTps = Math.min(tps, minTps);
+		this.decreaseFactor = decreaseFactor;
+		this.recoveryTpsPerSecond = recoveryTpsPerSecond;
+		this.nanoClock = nanoClock;
+		final long now = nanoClock.getAsLong();
+		this.tokens = new AtomicReference<>(new Tokens(this.burst, now));
+		this.decrease = new AtomicReference<>(new Decrease(tps, now - (long) NANOS_PER_SECOND));
+	}
+
+	/**
+	 * Takes <code>permits</code> tokens.
+	 *
+	 * @return how many nanoseconds the caller has to wait before using them
+	 */
+	long reserve(final int permits) {
+		while (true) {
+			final Tokens current = this.tokens.get();
+			final long now = this.nanoClock.getAsLong();
+			final double rate = rate(now);
+			final double available = Math.min(this.burst, current.available() + (now - current.updatedNanos()) * rate / NANOS_PER_SECOND);
+			final double remaining = available - permits;
+			if (this.tokens.compareAndSet(current, new Tokens(remaining, now))) {
+				return remaining >= 0 ? 0L : (long) (-remaining / rate * NANOS_PER_SECOND);
+			}
+		}
+	}
+
+	/**
+	 * Lowers the rate after the provider throttled a request.
+	 *
+	 * @return <code>false</code> when the throttle was ignored because the rate was lowered less than a second ago
+	 */
+	boolean throttled() {
+		while (true) {
+			final Decrease current = this.decrease.get();
+			final long now = this.nanoClock.getAsLong();
+			if (now - current.atNanos() < NANOS_PER_SECOND) {
+				return false;
+			}
+			final Decrease lowered = new Decrease(Math.max(this.minTps, rate(now) * this.decreaseFactor), now);
+			if (this.decrease.compareAndSet(current, lowered)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * @return the tokens available now, negative while callers are waiting for tokens
+	 */
+	double available() {
+		final Tokens current = this.tokens.get();
+		final long now = this.nanoClock.getAsLong();
+		return Math.min(this.burst, current.available() + (now - current.updatedNanos()) * rate(now) / NANOS_PER_SECOND);
+	}
+
+	double rate() {
+		return rate(this.nanoClock.getAsLong());
+	}
+
+	private double rate(final long now) {
+		final Decrease current = this.decrease.get();
+		final double recovered = current.tps() + this.recoveryTpsPerSecond * (now - current.atNanos()) / NANOS_PER_SECOND;
+		return Math.min(this.tps, recovered);
+	}
+
+	boolean hasLimits(final double tps, final double burst) {
+		return this.tps == tps && this.burst == Math.max(1d, burst);
+	}
+
+	int getBurst() {
+		return (int) this.burst;
+	}
+
+	private record Tokens(double available, long updatedNanos) {
+	}
+
+	private record Decrease(double tps, long atNanos) {
+	}
+}
@@ -182,6 +182,11 @@ public class SMSBridge extends AbstractPersistableCustom<Long> {
 		this.modifiedOnDate = modifiedOnDate ;
 	}
 	
+	@com.fasterxml.jackson.annotation.JsonIgnore
+	public Date getModifiedOnDate() {
+		return this.modifiedOnDate ;
+	}
+	
 	public void setSMSBridgeToBridgeConfigs() {
 		if(this.bridgeConfigurations != null) {
 			for(SMSBridgeConfig config: this.bridgeConfigurations) {
@@ -71,6 +71,24 @@ public class SMSMessage extends AbstractPersistableCustom<Long> {
 	@Column(name = "response")
 	private String response;
 
+	@com.fasterxml.jackson.annotation.JsonIgnore
+	@Column(name = "claim_token", nullable = true)
+	private String claimToken;
+
+	@com.fasterxml.jackson.annotation.JsonIgnore
+	@Column(name = "lease_expires_at", nullable = true)
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date leaseExpiresAt;
+
+	@com.fasterxml.jackson.annotation.JsonIgnore
+	@Column(name = "attempt_count", nullable = false)
+	private Integer attemptCount = 0;
+
+	@com.fasterxml.jackson.annotation.JsonIgnore
+	@Column(name = "next_attempt_at", nullable = true)
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date nextAttemptAt;
+
 	protected SMSMessage() {
 		
 	}
@@ -175,6 +193,18 @@ public class SMSMessage extends AbstractPersistableCustom<Long> {
 		this.submittedOnDate = submittedDate ;
 	}
 	
+	public Date getSubmittedOnDate() {
+		return this.submittedOnDate;
+	}
+
+	public Date getDeliveredOnDate() {
+		return this.deliveredOnDate;
+	}
+
+	public String getDeliveryErrorMessage() {
+		return this.deliveryErrorMessage;
+	}
+
 	public void setDeliveryErrorMessage(final String deliveryErrorMessage) {
 		this.deliveryErrorMessage = deliveryErrorMessage ;
 	}
@@ -199,6 +229,69 @@ public class SMSMessage extends AbstractPersistableCustom<Long> {
 		this.response = response;
 	}
 
+	/**
+	 * Sets the id allocated for a row written outside of JPA.
+	 */
+	public void assignId(final Long id) {
+		setId(id);
+	}
+
+	/**
+	 * Reserves the message for the dispatcher holding <code>claimToken</code>; no other worker picks it up before
+	 * <code>leaseExpiresAt</code>.
+	 */
+	public void lease(final String claimToken, final Date leaseExpiresAt) {
+		this.claimToken = claimToken;
+		this.leaseExpiresAt = leaseExpiresAt;
+	}
+
+	/**
+	 * Ends the claim once a send attempt is recorded. The lease time is kept, so a message that is still pending is
+	 * only retried after it expires.
+	 */
+	public void releaseClaim() {
+		this.claimToken = null;
+	}
+
+	/**
+	 * Records a send attempt that failed transiently. The message stays pending and is sent again at
+	 * <code>nextAttemptAt</code>; the lease is replaced by <code>leaseExpiresAt</code>, <code>null</code> when any
+	 * instance may claim it once it is due.
+	 */
+	public void scheduleRetry(final Date nextAttemptAt, final Date leaseExpiresAt) {
+		this.attemptCount = getAttemptCount() + 1;
+		this.nextAttemptAt = nextAttemptAt;
+		this.leaseExpiresAt = leaseExpiresAt;
+	}
+
+	/**
+	 * Moves the next attempt to <code>nextAttemptAt</code> without counting an attempt, for a message that was not
+	 * handed to its provider.
+	 */
+	public void postpone(final Date nextAttemptAt) {
+		this.nextAttemptAt = nextAttemptAt;
+	}
+
+	@com.fasterxml.jackson.annotation.JsonIgnore
+	public int getAttemptCount() {
+		return this.attemptCount == null ? 0 : this.attemptCount;
+	}
+
+	@com.fasterxml.jackson.annotation.JsonIgnore
+	public Date getNextAttemptAt() {
+		return this.nextAttemptAt;
+	}
+
+	@com.fasterxml.jackson.annotation.JsonIgnore
+	public String getClaimToken() {
+		return this.claimToken;
+	}
+
+	@com.fasterxml.jackson.annotation.JsonIgnore
+	public Date getLeaseExpiresAt() {
+		return this.leaseExpiresAt;
+	}
+
 	@Override
     public String toString() {
         return "SmsOutboundMessage [externalId=" + externalId + ", internalId=" + internalId
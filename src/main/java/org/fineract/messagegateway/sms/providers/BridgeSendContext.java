@@ -0,0 +1,162 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.providers;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.fineract.messagegateway.constants.MessageGatewayConstants;
+import org.fineract.messagegateway.sms.domain.SMSBridge;
+import org.fineract.messagegateway.sms.domain.SMSBridgeConfig;
+
+/**
+ * Immutable view of one version of a bridge, compiled once by the {@link ProviderClientRegistry} so that providers
+ * do not scan the bridge configuration for every message. Besides the typed configuration, a context holds what
+ * providers build from it, such as API clients, base URLs and authorization headers, see {@link #compiled}.
+ */
+public final class BridgeSendContext {
+
+	private final Long bridgeId;
+
+	private final Long tenantId;
+
+	private final long version;
+
+	private final Map<String, String> configValues;
+
+	private final String phoneNo;
+
+	private final String countryCode;
+
+	private final String providerUrl;
+
+	private final String accountId;
+
+	private final String authToken;
+
+	private final String authType;
+
+	private final String authCustomPrefix;
+
+	private final String senderName;
+
+	private final String apiKey;
+
+	private final String projectId;
+
+	private final Map<Class<?>, Object> compiled = new ConcurrentHashMap<>();
+
+	BridgeSendContext(final SMSBridge bridge, final long version) {
+		this.bridgeId = bridge.getId();
+		this.tenantId = bridge.getTenantId();
+		this.version = version;
+		final Map<String, String> values = new HashMap<>();
+		if (bridge.bridgeConfigurations != null) {
+			for (SMSBridgeConfig config : bridge.bridgeConfigurations) {
+				//the last value of a name wins, as with SMSBridge.getConfigValue
+				values.put(config.getConfigName(), config.getConfigValue());
+			}
+		}
+		this.configValues = Collections.unmodifiableMap(values);
+		this.phoneNo = bridge.getPhoneNo();
+		this.countryCode = bridge.getCountryCode() == null ? "" : bridge.getCountryCode();
+		this.providerUrl = values.get(MessageGatewayConstants.PROVIDER_URL);
+		this.accountId = values.get(MessageGatewayConstants.PROVIDER_ACCOUNT_ID);
+		this.authToken = values.get(MessageGatewayConstants.PROVIDER_AUTH_TOKEN);
+		this.authType = values.get(MessageGatewayConstants.PROVIDER_AUTH_TYPE);
+		this.authCustomPrefix = values.get(MessageGatewayConstants.PROVIDER_AUTH_CUSTOM_PREFIX);
+		this.senderName = values.get(MessageGatewayConstants.SENDER_NAME);
+		this.apiKey = values.get(MessageGatewayConstants.PROVIDER_API_KEY);
+		this.projectId = values.get(MessageGatewayConstants.PROVIDER_PROJECT_ID);
+	}
+
+	/**
+	 * @return the value built by <code>compiler</code> for this version of the bridge, built on first use
+	 */
+	public <T> T compiled(final Class<T> type, final Function<BridgeSendContext, T> compiler) {
+		final Object value = this.compiled.get(type);
+		return type.cast(value != null ? value : this.compiled.computeIfAbsent(type, key -> compiler.apply(this)));
+	}
+
+	/**
+	 * @return <code>mobileNumber</code> prefixed with the country code of the bridge
+	 */
+	public String internationalNumber(final String mobileNumber) {
+		return this.countryCode.isEmpty() ? mobileNumber : this.countryCode.concat(mobileNumber);
+	}
+
+	public String getConfigValue(final String configName) {
+		return this.configValues.get(configName);
+	}
+
+	/**
+	 * A context compiled from a newer version of the bridge than the one at hand is kept, the caller may hold a
+	 * bridge that was loaded before the update.
+	 */
+	boolean isCurrent(final long bridgeVersion) {
+		return this.version >= bridgeVersion;
+	}
+
+	public Long getBridgeId() {
+		return this.bridgeId;
+	}
+
+	public Long getTenantId() {
+		return this.tenantId;
+	}
+
+	public String getPhoneNo() {
+		return this.phoneNo;
+	}
+
+	public String getProviderUrl() {
+		return this.providerUrl;
+	}
+
+	public String getAccountId() {
+		return this.accountId;
+	}
+
+	public String getAuthToken() {
+		return this.authToken;
+	}
+
+	public String getAuthType() {
+		return this.authType;
+	}
+
+	public String getAuthCustomPrefix() {
+		return this.authCustomPrefix;
+	}
+
+	public String getSenderName() {
+		return this.senderName;
+	}
+
+	public String getApiKey() {
+		return this.apiKey;
+	}
+
+	public String getProjectId() {
+		return this.projectId;
+	}
+}
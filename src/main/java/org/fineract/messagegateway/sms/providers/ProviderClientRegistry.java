@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.providers;
+
+import org.fineract.messagegateway.sms.cache.SMSBridgeInvalidatedEvent;
+import org.fineract.messagegateway.sms.domain.SMSBridge;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Holds a {@link BridgeSendContext} per bridge id, with the API clients providers build from the bridge
+ * configuration. A context is compiled again when the bridge has been modified since it was compiled, and dropped
+ * when the bridge is updated or deleted. Lookups of an existing context do not lock, so providers can be called from
+ * any number of dispatch threads.
+ */
+@Component
+public class ProviderClientRegistry implements ApplicationListener<SMSBridgeInvalidatedEvent> {
+
+	private final Cache<Long, BridgeSendContext> contexts;
+
+	@Autowired
+	public ProviderClientRegistry(final MeterRegistry meterRegistry,
+								  @Value("${providers.clients.maxSize:1000}") final long maxSize) {
+		this.contexts = Caffeine.newBuilder()
+				.maximumSize(maxSize)
+				.recordStats()
+				.build();
+		CaffeineCacheMetrics.monitor(meterRegistry, this.contexts, "providerClients");
+	}
+
+	/**
+	 * @return the context of the current version of <code>bridge</code>
+	 */
+	public BridgeSendContext context(final SMSBridge bridge) {
+		final long version = version(bridge);
+		final BridgeSendContext current = this.contexts.getIfPresent(bridge.getId());
+		if (current != null && current.isCurrent(version)) {
+			return current;
+		}
+		return this.contexts.asMap().compute(bridge.getId(),
+				(bridgeId, existing) -> existing != null && existing.isCurrent(version) ? existing
+						: new BridgeSendContext(bridge, version));
+	}
+
+	public void evict(final Long bridgeId) {
+		this.contexts.invalidate(bridgeId);
+	}
+
+	@Override
+	public void onApplicationEvent(final SMSBridgeInvalidatedEvent event) {
+		evict(event.getBridgeId());
+	}
+
+	private static long version(final SMSBridge bridge) {
+		return bridge.getModifiedOnDate() == null ? 0L : bridge.getModifiedOnDate().getTime();
+	}
+}
@@ -18,18 +18,88 @@
  */
 package org.fineract.messagegateway.sms.providers;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.net.UnknownHostException;
 import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
 
 import org.fineract.messagegateway.constants.MessageGatewayConstants;
 import org.fineract.messagegateway.exception.MessageGatewayException;
 import org.fineract.messagegateway.sms.domain.SMSBridge;
 import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.sms.exception.ProviderThrottledException;
+import org.fineract.messagegateway.sms.exception.ProviderUnavailableException;
+import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
 
 public abstract class SMSProvider {
 	
 	public abstract void sendMessage(final SMSBridge smsBridgeConfig, final SMSMessage message)
 	        throws MessageGatewayException ;
 	
+	/**
+	 * Sends messages that all belong to <code>smsBridgeConfig</code>. A failure of a single message is recorded on
+	 * that message, so the other messages are still sent. Providers whose API accepts many messages per request
+	 * override this; the default sends them one by one.
+	 *
+	 * Transient failures, reported with {@link ProviderUnavailableException}, leave the message pending so that it is
+	 * retried.
+	 *
+	 * @throws ProviderThrottledException when the provider rate limits the account; the messages not sent yet are
+	 * left pending
+	 */
+	public void sendMessages(final SMSBridge smsBridgeConfig, final List<SMSMessage> messages)
+	        throws MessageGatewayException {
+		for (SMSMessage message : messages) {
+			try {
+				sendMessage(smsBridgeConfig, message);
+			} catch (ProviderThrottledException e) {
+				throw e;
+			} catch (ProviderUnavailableException e) {
+				markRetryable(message, e.getMessage());
+			} catch (MessageGatewayException e) {
+				markFailed(message, e.getMessage());
+			}
+		}
+	}
+	
+	protected void markFailed(final SMSMessage message, final String error) {
+		message.setDeliveryErrorMessage(error);
+		message.setDeliveryStatus(SmsMessageStatusType.FAILED.getValue());
+	}
+	
+	/**
+	 * Records a transient failure; the message stays pending and is retried.
+	 */
+	protected void markRetryable(final SMSMessage message, final String error) {
+		message.setDeliveryErrorMessage(error);
+		message.setDeliveryStatus(SmsMessageStatusType.PENDING.getValue());
+	}
+	
+	/**
+	 * @return <code>true</code> when an HTTP status means the request may succeed later: a timeout, a rate limit or
+	 * a server error
+	 */
+	protected static boolean isTransient(final int httpStatus) {
+		return httpStatus == 408 || httpStatus == 429 || httpStatus >= 500;
+	}
+	
+	/**
+	 * @return <code>true</code> when the request failed on the network, before the provider could answer it
+	 */
+	protected static boolean isNetworkError(final IOException e) {
+		return e instanceof InterruptedIOException || e instanceof SocketException || e instanceof UnknownHostException;
+	}
+	
+	/**
+	 * @return <code>true</code> when an HTTP status means the provider rate limited the request
+	 */
+	protected static boolean isThrottled(final int httpStatus) {
+		return httpStatus == 429;
+	}
+	
 	protected String encodeBase64(final SMSBridge smsBridgeConfig) {
 		String tenant = smsBridgeConfig.getTenantId().toString() ;
 		String username = smsBridgeConfig.getConfigValue(MessageGatewayConstants.PROVIDER_ACCOUNT_ID) ;
@@ -39,4 +109,26 @@ public abstract class SMSProvider {
     }
 
 	public abstract void updateStatusByMessageId(SMSBridge bridge, String externalId) throws MessageGatewayException ;
+	
+	/**
+	 * @return <code>true</code> when the provider can fetch the status of a sent message; the status of the other
+	 * providers' messages only changes through their delivery callbacks
+	 */
+	public boolean supportsStatusQuery() {
+		return false ;
+	}
+	
+	/**
+	 * Fetches and stores the status of several messages of <code>bridge</code>. The default queries them one by one;
+	 * implementations stop early when the calling thread is interrupted.
+	 */
+	public void updateStatusByMessageIds(final SMSBridge bridge, final Collection<String> externalIds)
+	        throws MessageGatewayException {
+		for (String externalId : externalIds) {
+			if (Thread.currentThread().isInterrupted()) {
+				return ;
+			}
+			updateStatusByMessageId(bridge, externalId) ;
+		}
+	}
 }
@@ -18,19 +18,31 @@
  */
 package org.fineract.messagegateway.sms.providers;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.fineract.messagegateway.exception.MessageGatewayException;
+import org.fineract.messagegateway.sms.cache.SMSBridgeCache;
+import org.fineract.messagegateway.sms.dispatch.BridgeCircuitBreakers;
+import org.fineract.messagegateway.sms.dispatch.BridgeHealth;
+import org.fineract.messagegateway.sms.dispatch.BridgeRateLimiter;
 import org.fineract.messagegateway.sms.domain.SMSBridge;
 import org.fineract.messagegateway.sms.domain.SMSMessage;
 import org.fineract.messagegateway.sms.exception.ProviderNotDefinedException;
+import org.fineract.messagegateway.sms.exception.ProviderThrottledException;
+import org.fineract.messagegateway.sms.exception.ProviderUnavailableException;
 import org.fineract.messagegateway.sms.exception.SMSBridgeNotFoundException;
-import org.fineract.messagegateway.sms.repository.SMSBridgeRepository;
 import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.stereotype.Component;
@@ -42,15 +54,31 @@ public class SMSProviderFactory implements ApplicationContextAware {
 	 
 	private ApplicationContext applicationContext;
 
-	private final SMSBridgeRepository smsBridgeRepository;
+	private final SMSBridgeCache smsBridgeCache;
+
+	private final BridgeRateLimiter bridgeRateLimiter;
+
+	private final BridgeCircuitBreakers bridgeCircuitBreakers;
+
+	private final BridgeHealth bridgeHealth;
+
+	private final int maxThrottleRetries;
 
 	@Autowired
-	public SMSProviderFactory(final SMSBridgeRepository smsBridgeRepository) {
-		this.smsBridgeRepository = smsBridgeRepository;
+	public SMSProviderFactory(final SMSBridgeCache smsBridgeCache,
+							  final BridgeRateLimiter bridgeRateLimiter,
+							  final BridgeCircuitBreakers bridgeCircuitBreakers,
+							  final BridgeHealth bridgeHealth,
+							  @Value("${dispatch.rateLimit.maxThrottleRetries:3}") final int maxThrottleRetries) {
+		this.smsBridgeCache = smsBridgeCache;
+		this.bridgeRateLimiter = bridgeRateLimiter;
+		this.bridgeCircuitBreakers = bridgeCircuitBreakers;
+		this.bridgeHealth = bridgeHealth;
+		this.maxThrottleRetries = maxThrottleRetries;
 	}
 
 	public SMSProvider getSMSProvider(final SMSMessage message) throws SMSBridgeNotFoundException, ProviderNotDefinedException {
-		SMSBridge bridge = this.smsBridgeRepository.findByIdAndTenantId(message.getBridgeId(),
+		SMSBridge bridge = this.smsBridgeCache.get(message.getBridgeId(),
 				message.getTenantId());
 		if (bridge == null) {
 			throw new SMSBridgeNotFoundException(message.getBridgeId());
@@ -60,13 +88,19 @@ public class SMSProviderFactory implements ApplicationContextAware {
 		return provider ;
 	}
 
+	public SMSProvider getSMSProvider(final SMSBridge bridge) throws ProviderNotDefinedException {
+		SMSProvider provider = (SMSProvider) this.applicationContext.getBean(bridge.getProviderKey()) ;
+		if(provider == null) throw new ProviderNotDefinedException() ;
+		return provider ;
+	}
+
 	@Override
 	public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
 		this.applicationContext = applicationContext;
 	}
 
 	public void sendShortMessage(final SMSMessage message) {
-		SMSBridge bridge = this.smsBridgeRepository.findByIdAndTenantId(message.getBridgeId(),
+		SMSBridge bridge = this.smsBridgeCache.get(message.getBridgeId(),
 				message.getTenantId());
 		SMSProvider provider = null;
 		try {
@@ -84,26 +118,114 @@ public class SMSProviderFactory implements ApplicationContextAware {
 		}
 	}
 	
+	/**
+	 * Sends the messages through the batch API of their provider, one {@link SMSProvider#sendMessages} call per
+	 * tenant and bridge, or per burst of the bridge when its rate is limited by the {@link BridgeRateLimiter}.
+	 */
 	public void sendShortMessage(final Collection<SMSMessage> messages) {
-		for(SMSMessage message: messages) {
-			logger.info("Sending message....{}", message.getId());
-			SMSBridge bridge = this.smsBridgeRepository.findByIdAndTenantId(message.getBridgeId(),
-					message.getTenantId());
+		final Map<List<Long>, List<SMSMessage>> messagesByBridge = new LinkedHashMap<>();
+		for (SMSMessage message : messages) {
+			messagesByBridge.computeIfAbsent(Arrays.asList(message.getTenantId(), message.getBridgeId()),
+					key -> new ArrayList<>()).add(message);
+		}
+		for (List<SMSMessage> bridgeMessages : messagesByBridge.values()) {
+			final SMSMessage first = bridgeMessages.get(0);
+			logger.info("Sending {} messages....", bridgeMessages.size());
+			SMSBridge bridge = this.smsBridgeCache.get(first.getBridgeId(), first.getTenantId());
 			SMSProvider provider = null;
 			try {
 				if (bridge == null) {
-					throw new SMSBridgeNotFoundException(message.getBridgeId());
+					throw new SMSBridgeNotFoundException(first.getBridgeId());
 				}
 				logger.info("Finding provider....{}", bridge.getProviderKey());
 				provider = (SMSProvider) this.applicationContext.getBean(bridge.getProviderKey()) ;
 				if (provider == null)
 					throw new ProviderNotDefinedException();
-				provider.sendMessage(bridge, message);
+				sendLimited(bridge, provider, bridgeMessages);
+			} catch (ProviderUnavailableException e) {
+				logger.error("Sending through bridge {} failed, retrying later: {}", first.getBridgeId(), e.getMessage());
+				for (SMSMessage message : unsent(bridgeMessages)) {
+					message.setDeliveryErrorMessage(e.getMessage());
+				}
 			} catch (SMSBridgeNotFoundException | MessageGatewayException | ProviderNotDefinedException | BeansException e) {
 				logger.error(e.getMessage());
-				message.setDeliveryErrorMessage(e.getMessage());
-				message.setDeliveryStatus(SmsMessageStatusType.FAILED.getValue());
+				for (SMSMessage message : unsent(bridgeMessages)) {
+					message.setDeliveryErrorMessage(e.getMessage());
+					message.setDeliveryStatus(SmsMessageStatusType.FAILED.getValue());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sends the messages in slices the rate limiter allows. When the provider throttles, its rate is lowered and the
+	 * messages it did not send are sent again at the lower rate. After
+	 * <code>dispatch.rateLimit.maxThrottleRetries</code> throttles they are left pending and retried later.
+	 * <p>
+	 * Every slice passes the {@link BridgeCircuitBreakers}; while the circuit of the bridge is open the remaining
+	 * messages are postponed until its next probe without calling the provider. The outcome of every slice is also
+	 * counted by the {@link BridgeHealth} the messages are routed by.
+	 */
+	private void sendLimited(final SMSBridge bridge, final SMSProvider provider, final List<SMSMessage> messages)
+			throws MessageGatewayException {
+		final int sliceSize = Math.max(1, this.bridgeRateLimiter.maxPermits(bridge));
+		List<SMSMessage> remaining = messages;
+		int throttles = 0;
+		while (!remaining.isEmpty()) {
+			final int permitted = this.bridgeCircuitBreakers.acquire(bridge.getId());
+			if (permitted == 0) {
+				final Date retryAt = this.bridgeCircuitBreakers.retryAt(bridge.getId());
+				for (SMSMessage message : remaining) {
+					message.setDeliveryErrorMessage("Circuit of bridge " + bridge.getId() + " is open");
+					message.postpone(retryAt);
+				}
+				return;
+			}
+			final List<SMSMessage> slice = remaining.subList(0, Math.min(Math.min(sliceSize, permitted), remaining.size()));
+			try {
+				this.bridgeRateLimiter.acquire(bridge, slice.size());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				logger.warn("Interrupted while waiting for the rate limit of bridge {}, {} messages are left pending",
+						bridge.getId(), remaining.size());
+				return;
+			}
+			final long started = System.nanoTime();
+			try {
+				provider.sendMessages(bridge, slice);
+				final int failed = unsent(slice).size();
+				record(bridge, slice.size() - failed, failed, started);
+				remaining = remaining.subList(slice.size(), remaining.size());
+			} catch (ProviderUnavailableException e) {
+				record(bridge, 0, slice.size(), started);
+				throw e;
+			} catch (ProviderThrottledException e) {
+				//a throttling provider is up, so the slice counts as sent for the circuit
+				record(bridge, slice.size(), 0, started);
+				this.bridgeRateLimiter.throttled(bridge);
+				remaining = unsent(remaining);
+				if (++throttles > this.maxThrottleRetries) {
+					logger.warn("Bridge {} is still throttled, {} messages are left pending", bridge.getId(), remaining.size());
+					return;
+				}
+			}
+		}
+	}
+
+	private void record(final SMSBridge bridge, final int sent, final int failed, final long started) {
+		final long elapsedNanos = System.nanoTime() - started;
+		this.bridgeCircuitBreakers.record(bridge.getId(), sent, failed, elapsedNanos);
+		this.bridgeHealth.record(bridge.getId(), sent, failed, elapsedNanos);
+	}
+
+	private static List<SMSMessage> unsent(final List<SMSMessage> messages) {
+		final List<SMSMessage> unsent = new ArrayList<>();
+		for (SMSMessage message : messages) {
+			if (message.getExternalId() == null
+					&& SmsMessageStatusType.PENDING.getValue().equals(message.getDeliveryStatus())) {
+				unsent.add(message);
 			}
 		}
+		return unsent;
 	}
 }
@@ -18,8 +18,8 @@
  */
 package org.fineract.messagegateway.sms.providers.impl.infobip;
 
-import org.fineract.messagegateway.sms.domain.SMSMessage;
-import org.fineract.messagegateway.sms.repository.SmsOutboundMessageRepository;
+import org.fineract.messagegateway.sms.callback.DeliveryReport;
+import org.fineract.messagegateway.sms.callback.DeliveryReportBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -40,24 +40,18 @@ public class InfoBipApiResource {
 
 	private static final Logger logger = LoggerFactory.getLogger(InfoBipApiResource.class);
 	
-	private final SmsOutboundMessageRepository smsOutboundMessageRepository ;
+	private final DeliveryReportBuffer deliveryReportBuffer ;
 	
 	@Autowired
-	public InfoBipApiResource(final SmsOutboundMessageRepository smsOutboundMessageRepository) {
-		this.smsOutboundMessageRepository = smsOutboundMessageRepository ;
+	public InfoBipApiResource(final DeliveryReportBuffer deliveryReportBuffer) {
+		this.deliveryReportBuffer = deliveryReportBuffer ;
 	}
 	
 	@RequestMapping(value = "/report/{messageId}", method = RequestMethod.POST, consumes = {"application/json"}, produces = {"application/json"})
     public ResponseEntity<Void> updateDeliveryStatus(@PathVariable("messageId") final Long messageId, @RequestBody final SMSReportResponse payload) {
-    	SMSMessage message = this.smsOutboundMessageRepository.findById(messageId).get();
-    	if(message != null) {
-    		SMSReport report = payload.getResults().get(0) ;
-    		logger.debug("Status Callback received from InfoBip for "+messageId+" with status:"+report.getStatus());
-    		message.setDeliveryStatus(InfoBipStatus.smsStatus(report.getStatus().getGroupId()).getValue());
-    		this.smsOutboundMessageRepository.save(message) ;
-    	}else {
-    		logger.info("Message with Message id "+messageId+" Not found");
-    	}
+    	SMSReport report = payload.getResults().get(0) ;
+    	logger.debug("Status Callback received from InfoBip for "+messageId+" with status:"+report.getStatus());
+    	this.deliveryReportBuffer.report(messageId, new DeliveryReport(InfoBipStatus.smsStatus(report.getStatus().getGroupId()), null)) ;
        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
     }
 }
@@ -18,21 +18,28 @@
  */
 package org.fineract.messagegateway.sms.providers.impl.infobip;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import infobip.api.config.ApiKeyAuthConfiguration;
 import infobip.api.config.Configuration;
 import org.fineract.messagegateway.configuration.HostConfig;
-import org.fineract.messagegateway.constants.MessageGatewayConstants;
 import org.fineract.messagegateway.exception.MessageGatewayException;
 import org.fineract.messagegateway.sms.domain.SMSBridge;
 import org.fineract.messagegateway.sms.util.AuthorizationType;
 import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.sms.exception.ProviderThrottledException;
+import org.fineract.messagegateway.sms.exception.ProviderUnavailableException;
+import org.fineract.messagegateway.sms.providers.BridgeSendContext;
+import org.fineract.messagegateway.sms.providers.ProviderClientRegistry;
 import org.fineract.messagegateway.sms.providers.SMSProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import infobip.api.client.SendMultipleTextualSmsAdvanced;
@@ -42,6 +49,7 @@ import infobip.api.model.sms.mt.send.Message;
 import infobip.api.model.sms.mt.send.SMSResponse;
 import infobip.api.model.sms.mt.send.SMSResponseDetails;
 import infobip.api.model.sms.mt.send.textual.SMSAdvancedTextualRequest;
+import retrofit.RetrofitError;
 import org.springframework.util.StringUtils;
 
 @Service(value = "InfoBip")
@@ -49,44 +57,107 @@ public class InfoBipMessageProvider extends SMSProvider {
 
 	private static final Logger logger = LoggerFactory.getLogger(InfoBipMessageProvider.class);
 
-	private HashMap<String, SendMultipleTextualSmsAdvanced> restClients = new HashMap<>() ; //tenantId, twilio clients
+	private final ProviderClientRegistry restClients ;
 	private final String callBackUrl ;
-	 
-	private final StringBuilder builder ;
+	
+	private final int batchSize ;
 	  
 	@Autowired
-	public InfoBipMessageProvider(final HostConfig hostConfig) {
+	public InfoBipMessageProvider(final HostConfig hostConfig, final ProviderClientRegistry restClients,
+			@Value("${providers.infobip.batchSize:100}") final int batchSize) {
+		this.restClients = restClients ;
 		callBackUrl = String.format("%s://%s:%d/infobip/report/", hostConfig.getProtocol(),  hostConfig.getHostName(), hostConfig.getPort());
     	logger.info("Registering call back to InfoBip: {}", callBackUrl);
-    	builder = new StringBuilder() ;
+    	this.batchSize = Math.max(1, batchSize) ;
 	}
 
 	@Override
 	public void sendMessage(SMSBridge smsBridgeConfig, SMSMessage message) throws MessageGatewayException {
-		String statusCallback = callBackUrl+message.getId() ;
+		BridgeSendContext context = this.restClients.context(smsBridgeConfig) ;
+		send(getRestClient(context), context, Collections.singletonList(message));
+	}
+
+	/**
+	 * Sends up to <code>providers.infobip.batchSize</code> messages per request. If a request fails, only the
+	 * messages of that request are marked as failed. Each destination carries the gateway id of its message as
+	 * message id, and the results are matched to the messages by that id; a message without a result is marked as
+	 * failed.
+	 */
+	@Override
+	public void sendMessages(SMSBridge smsBridgeConfig, List<SMSMessage> messages) throws MessageGatewayException {
+		BridgeSendContext context = this.restClients.context(smsBridgeConfig) ;
+		SendMultipleTextualSmsAdvanced client = getRestClient(context) ;
+		for (int from = 0; from < messages.size(); from += batchSize) {
+			List<SMSMessage> chunk = messages.subList(from, Math.min(from + batchSize, messages.size()));
+			try {
+				send(client, context, chunk);
+			} catch (RetrofitError e) {
+				if (e.getResponse() != null && isThrottled(e.getResponse().getStatus())) {
+					throw new ProviderThrottledException(e.getMessage());
+				}
+				logger.error("Sending {} messages to InfoBip failed: {}", chunk.size(), e.getMessage());
+				final boolean retryable = e.isNetworkError() || (e.getResponse() != null && isTransient(e.getResponse().getStatus()));
+				for (SMSMessage message : chunk) {
+					if (retryable) {
+						markRetryable(message, e.getMessage());
+					} else {
+						markFailed(message, e.getMessage());
+					}
+				}
+			} catch (MessageGatewayException | RuntimeException e) {
+				logger.error("Sending {} messages to InfoBip failed: {}", chunk.size(), e.getMessage());
+				for (SMSMessage message : chunk) {
+					markFailed(message, e.getMessage());
+				}
+			}
+		}
+	}
+
+	private void send(final SendMultipleTextualSmsAdvanced client, final BridgeSendContext context,
+			final List<SMSMessage> messages) throws MessageGatewayException {
+		List<Message> infoBipMessages = new ArrayList<>(messages.size()) ;
+		for (SMSMessage message : messages) {
+			infoBipMessages.add(toInfoBipMessage(context, message)) ;
+		}
+		SMSAdvancedTextualRequest requestBody = new SMSAdvancedTextualRequest();
+		requestBody.setMessages(infoBipMessages);
+		SMSResponse response = client.execute(requestBody);
+		//Every destination carries the id of its message, and InfoBip reports it back with the result
+		Map<String, SMSResponseDetails> sentMessages = new HashMap<>() ;
+		if (response.getMessages() != null) {
+			for (SMSResponseDetails sentMessageInfo : response.getMessages()) {
+				sentMessages.put(sentMessageInfo.getMessageId(), sentMessageInfo) ;
+			}
+		}
+		for (SMSMessage message : messages) {
+			SMSResponseDetails sentMessageInfo = sentMessages.get(String.valueOf(message.getId())) ;
+			if (sentMessageInfo == null) {
+				logger.error("InfoBip returned no result for message {}", message.getId());
+				markFailed(message, "InfoBip returned no result for the message");
+				continue;
+			}
+			message.setExternalId(sentMessageInfo.getMessageId());
+			message.setDeliveryStatus(InfoBipStatus.smsStatus(sentMessageInfo.getStatus().getGroupId()).getValue());
+			logger.debug("InfoBipMessageProvider.send():{}", message.getDeliveryStatus());
+		}
+	}
+
+	private Message toInfoBipMessage(final BridgeSendContext context, final SMSMessage message) {
 		//Based on message id, register call back. so that we get notification from Infobip about message status
-		SendMultipleTextualSmsAdvanced client = getRestClient(smsBridgeConfig) ;
+		String statusCallback = callBackUrl+message.getId() ;
 		Destination destination = new Destination();
-		builder.setLength(0);
-        builder.append(smsBridgeConfig.getCountryCode()) ;
-        builder.append(message.getMobileNumber()) ;
-        String mobile = builder.toString() ;
+		destination.setMessageId(String.valueOf(message.getId()));
+        String mobile = context.internationalNumber(message.getMobileNumber()) ;
         logger.info("Sending SMS to {} ...", mobile);
 		destination.setTo(mobile);
 		Message infoBipMessage = new Message();
 		infoBipMessage.setDestinations(Collections.singletonList(destination));
-		infoBipMessage.setFrom(smsBridgeConfig.getPhoneNo());
+		infoBipMessage.setFrom(context.getPhoneNo());
 		infoBipMessage.setText(message.getMessage());
 		infoBipMessage.setNotifyUrl(statusCallback);
 		infoBipMessage.setNotifyContentType("application/json") ;
 		infoBipMessage.setNotify(true) ;
-		SMSAdvancedTextualRequest requestBody = new SMSAdvancedTextualRequest();
-		requestBody.setMessages(Collections.singletonList(infoBipMessage));
-		SMSResponse response = client.execute(requestBody);
-		SMSResponseDetails sentMessageInfo = response.getMessages().get(0);
-		message.setExternalId(sentMessageInfo.getMessageId());
-		message.setDeliveryStatus(InfoBipStatus.smsStatus(sentMessageInfo.getStatus().getGroupId()).getValue());
-		logger.debug("InfoBipMessageProvider.sendMessage():"+InfoBipStatus.smsStatus(sentMessageInfo.getStatus().getGroupId()).getValue());
+		return infoBipMessage ;
 	}
 
 	@Override
@@ -95,21 +166,15 @@ public class InfoBipMessageProvider extends SMSProvider {
 	}
 
 
-	private SendMultipleTextualSmsAdvanced getRestClient(final SMSBridge smsBridge) {
-		String authorizationKey = encodeBase64(smsBridge) ;
-		 SendMultipleTextualSmsAdvanced client = this.restClients.get(authorizationKey) ;
-		if(client == null) {
-			client = this.get(smsBridge) ;
-			this.restClients.put(authorizationKey, client) ;
-		}
-	    return client ;
-	 }
+	private SendMultipleTextualSmsAdvanced getRestClient(final BridgeSendContext context) {
+		return context.compiled(SendMultipleTextualSmsAdvanced.class, this::get) ;
+	}
 	 
-	SendMultipleTextualSmsAdvanced get(final SMSBridge smsBridgeConfig) {
+	SendMultipleTextualSmsAdvanced get(final BridgeSendContext context) {
     	logger.debug("Creating a new InfoBip Client ....");
-		String baseURL = smsBridgeConfig.getConfigValue(MessageGatewayConstants.PROVIDER_URL);
-		String providerAuthType = smsBridgeConfig.getConfigValue(MessageGatewayConstants.PROVIDER_AUTH_TYPE);
-		String password = smsBridgeConfig.getConfigValue(MessageGatewayConstants.PROVIDER_AUTH_TOKEN) ;
+		String baseURL = context.getProviderUrl();
+		String providerAuthType = context.getAuthType();
+		String password = context.getAuthToken() ;
 
 		AuthorizationType authType = (StringUtils.hasText(providerAuthType ))? AuthorizationType.valueOf(providerAuthType.toUpperCase()) : AuthorizationType.BASIC;
 
@@ -120,11 +185,11 @@ public class InfoBipMessageProvider extends SMSProvider {
 				configuration = StringUtils.hasText(baseURL) ? new ApiKeyAuthConfiguration(baseURL, password):  new ApiKeyAuthConfiguration(password);
 				break;
 			case CUSTOM:
-				String customPrefix = smsBridgeConfig.getConfigValue(MessageGatewayConstants.PROVIDER_AUTH_CUSTOM_PREFIX);
+				String customPrefix = context.getAuthCustomPrefix();
 				configuration = StringUtils.hasText(baseURL) ? new CustomPrefixAuthConfiguration(baseURL, password, customPrefix): new CustomPrefixAuthConfiguration(password, customPrefix);
 				break;
 			default:
-				String userName = smsBridgeConfig.getConfigValue(MessageGatewayConstants.PROVIDER_ACCOUNT_ID) ;
+				String userName = context.getAccountId() ;
 				configuration = StringUtils.hasText(baseURL) ? new BasicAuthConfiguration(baseURL, userName, password):  new BasicAuthConfiguration(userName, password);
 				break;
 		}
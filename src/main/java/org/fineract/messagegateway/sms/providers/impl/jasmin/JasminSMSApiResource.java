@@ -18,8 +18,8 @@
  */
 package org.fineract.messagegateway.sms.providers.impl.jasmin;
 
-import org.fineract.messagegateway.sms.domain.SMSMessage;
-import org.fineract.messagegateway.sms.repository.SmsOutboundMessageRepository;
+import org.fineract.messagegateway.sms.callback.DeliveryReport;
+import org.fineract.messagegateway.sms.callback.DeliveryReportBuffer;
 import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,11 +37,11 @@ import org.springframework.web.bind.annotation.RestController;
 public class JasminSMSApiResource {
 private static final Logger logger = LoggerFactory.getLogger(JasminSMSApiResource.class);
 	
-	private final SmsOutboundMessageRepository smsOutboundMessageRepository ;
+	private final DeliveryReportBuffer deliveryReportBuffer ;
 	
 	@Autowired
-	public JasminSMSApiResource(final SmsOutboundMessageRepository smsOutboundMessageRepository) {
-		this.smsOutboundMessageRepository = smsOutboundMessageRepository ;
+	public JasminSMSApiResource(final DeliveryReportBuffer deliveryReportBuffer) {
+		this.deliveryReportBuffer = deliveryReportBuffer ;
 	}
 	
 	@RequestMapping(value = "/report/{messageId}", method = RequestMethod.GET, consumes = {"application/x-www-form-urlencoded"}, produces = {"application/x-www-form-urlencoded"})
@@ -57,14 +57,8 @@ private static final Logger logger = LoggerFactory.getLogger(JasminSMSApiResourc
     		@RequestParam("dlvrd") Integer dlvrd,
     		@RequestParam("err") Integer err,
     		@RequestParam("text") String text) {
-    	SMSMessage message = this.smsOutboundMessageRepository.findById(messageId).get();
-    	if(message != null) {
-    		logger.info("Status Callback received from JasminSMS for "+messageId+" with status:"+messageStatus);
-    		message.setDeliveryStatus(smsStatus(messageStatus).getValue());
-    		this.smsOutboundMessageRepository.save(message) ;
-    	}else {
-    		logger.info("Message with Message id "+messageId+" Not found");
-    	}
+    	logger.info("Status Callback received from JasminSMS for "+messageId+" with status:"+messageStatus);
+    	this.deliveryReportBuffer.report(messageId, new DeliveryReport(smsStatus(messageStatus), null)) ;
        return new ResponseEntity<>(HttpStatus.OK);
     }
 	
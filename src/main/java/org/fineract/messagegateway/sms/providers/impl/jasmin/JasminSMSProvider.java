@@ -19,20 +19,21 @@
 package org.fineract.messagegateway.sms.providers.impl.jasmin;
 
 import java.io.IOException;
-import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
-import java.util.HashMap;
 
-import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.utils.URIBuilder;
 import org.fineract.messagegateway.configuration.HostConfig;
-import org.fineract.messagegateway.constants.MessageGatewayConstants;
 import org.fineract.messagegateway.exception.MessageGatewayException;
 import org.fineract.messagegateway.sms.domain.SMSBridge;
 import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.sms.exception.ProviderThrottledException;
+import org.fineract.messagegateway.sms.exception.ProviderUnavailableException;
 import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
+import org.fineract.messagegateway.sms.providers.BridgeSendContext;
+import org.fineract.messagegateway.sms.providers.ProviderClientRegistry;
 import org.fineract.messagegateway.sms.providers.SMSProvider;
 
 import org.slf4j.Logger;
@@ -49,14 +50,19 @@ public class JasminSMSProvider extends SMSProvider {
 
     private static final Logger logger = LoggerFactory.getLogger(JasminSMSProvider.class);
 
-    private HashMap<String, OkHttpClient> restClients = new HashMap<>() ; 
+    private final OkHttpClient okHttpClient ;
+
+    private final ProviderClientRegistry sendContexts ;
     
     private static final String SCHEME = "http";
     
     private final String callBackUrl ;
     
     @Autowired
-		public JasminSMSProvider(final HostConfig hostConfig) {
+		public JasminSMSProvider(final HostConfig hostConfig, final OkHttpClient okHttpClient,
+				final ProviderClientRegistry sendContexts) {
+		this.okHttpClient = okHttpClient ;
+		this.sendContexts = sendContexts ;
 		callBackUrl = String.format("%s://%s:%d/jasminsms/report/", hostConfig.getProtocol(),  hostConfig.getHostName(), hostConfig.getPort());
     	logger.info("Registering call back to jasminsms:"+callBackUrl);
 	}
@@ -65,22 +71,54 @@ public class JasminSMSProvider extends SMSProvider {
 	@Override
 	public void sendMessage(SMSBridge smsBridgeConfig, SMSMessage message) throws MessageGatewayException {
 		logger.info("Reached Jasmin Provider...");
-		OkHttpClient okHttpClient = getRestClient(smsBridgeConfig);
-		String baseURL = smsBridgeConfig.getConfigValue(MessageGatewayConstants.PROVIDER_URL);
-    	String providerAccountId = smsBridgeConfig.getConfigValue(MessageGatewayConstants.PROVIDER_ACCOUNT_ID) ;
-    	String providerAuthToken = smsBridgeConfig.getConfigValue(MessageGatewayConstants.PROVIDER_AUTH_TOKEN) ;
-    	String sender = smsBridgeConfig.getConfigValue(MessageGatewayConstants.SENDER_NAME);
-    	logger.info("Base URL.....{}", baseURL);
 		try {
-			URI uri = new URIBuilder()
+			final String urlPrefix = this.sendContexts.context(smsBridgeConfig).compiled(JasminUrl.class, this::compile).prefix() ;
+			final String url = new StringBuilder(urlPrefix.length() + 64 + message.getMessage().length())
+					.append(urlPrefix)
+					.append("&to=").append(URLEncoder.encode(message.getMobileNumber(), StandardCharsets.UTF_8))
+					.append("&content=").append(URLEncoder.encode(message.getMessage(), StandardCharsets.UTF_8))
+					.toString() ;
+			
+			Request request = new Request.Builder()
+				   .url(url)
+				   .build(); 
+		
+			Response response = okHttpClient.newCall(request).execute();
+			if (isThrottled(response.code())) {
+				throw new ProviderThrottledException("Jasmin rate limit exceeded: " + response.body().string());
+			}
+			if (isTransient(response.code())) {
+				throw new ProviderUnavailableException("Jasmin returned HTTP " + response.code() + ": " + response.body().string());
+			}
+			if (!response.isSuccessful()) {
+				throw new MessageGatewayException("Jasmin returned HTTP " + response.code() + ": " + response.body().string());
+			}
+			message.setDeliveryStatus(SmsMessageStatusType.SENT.getValue());
+			message.setDeliveredOnDate(new Date());
+			message.setResponse(response.body().string());
+
+		} catch (IOException e) {
+			throw new ProviderUnavailableException(e.getMessage());
+		} catch (IllegalArgumentException e) {
+			throw new MessageGatewayException(e.getMessage());
+		}
+
+	}
+
+	/**
+	 * Builds the part of the send URL that is the same for every message of the bridge.
+	 */
+	private JasminUrl compile(final BridgeSendContext context) {
+		logger.info("Base URL.....{}", context.getProviderUrl());
+		try {
+			return new JasminUrl(new URIBuilder()
 			        .setScheme(SCHEME)
-			        .setHost(baseURL)
+			        .setHost(context.getProviderUrl())
 			        //.setPath("/send")
-			        .setParameter("to", message.getMobileNumber())
-			        .setParameter("from", sender)
+			        .setParameter("from", context.getSenderName())
 			        //.setParameter("coding", "")
-			        .setParameter("username", providerAccountId)
-			        .setParameter("password", providerAuthToken)
+			        .setParameter("username", context.getAccountId())
+			        .setParameter("password", context.getAuthToken())
 			        .setParameter("priority", "2")
 			        //.setParameter("sdt", "")  //000000000100000R (send in 1 minute)
 			        //.setParameter("validity-period", "")
@@ -89,50 +127,19 @@ public class JasminSMSProvider extends SMSProvider {
 			        .setParameter("dlr-level", "2")
 			        .setParameter("dlr-method", "GET")
 			        //.setParameter("tags", "")
-			        .setParameter("content", message.getMessage())
 			        //.setParameter("hex-content", "")
-			        .build();
-			
-			HttpGet httpget = new HttpGet(uri);
-			
-			URL url =  httpget.getURI().toURL(); 
-			
-			Request request = new Request.Builder()
-				   .url(url)
-				   .build(); 
-		
-			Response response = okHttpClient.newCall(request).execute();
-			message.setDeliveryStatus(SmsMessageStatusType.SENT.getValue());
-			message.setDeliveredOnDate(new Date());
-			message.setResponse(response.body().string());
-
-		} catch (IOException | URISyntaxException e) {
-			throw new MessageGatewayException(e.getMessage());
+			        .build()
+			        .toString());
+		} catch (URISyntaxException e) {
+			throw new IllegalArgumentException(e.getMessage(), e);
 		}
+	}
 
+	private record JasminUrl(String prefix) {
 	}
 
 	@Override
 	public void updateStatusByMessageId(SMSBridge bridge, String externalId) throws MessageGatewayException {
 
 	}
-
-
-	private OkHttpClient getRestClient(final SMSBridge smsBridge) {
-    	String authorizationKey = encodeBase64(smsBridge) ;
-    	OkHttpClient client = this.restClients.get(authorizationKey) ;
-		if(client == null) {
-			client = this.get(smsBridge) ;
-			this.restClients.put(authorizationKey, client) ;
-		}
-	    return client ;
-    }
-    
-	OkHttpClient get(final SMSBridge smsBridgeConfig) {
-    	logger.debug("Creating a new Twilio Client ....");
-
-        final OkHttpClient client = new OkHttpClient();
-        return client;
-    }
-    
 }
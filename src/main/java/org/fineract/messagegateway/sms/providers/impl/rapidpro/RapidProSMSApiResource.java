@@ -18,12 +18,9 @@
  */
 package org.fineract.messagegateway.sms.providers.impl.rapidpro;
 
-import org.fineract.messagegateway.sms.domain.SMSMessage;
-import org.fineract.messagegateway.sms.repository.SmsOutboundMessageRepository;
 import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -40,15 +37,6 @@ public class RapidProSMSApiResource {
     RapidProSMSApiResource.class
   );
 
-  private final SmsOutboundMessageRepository smsOutboundMessageRepository;
-
-  @Autowired
-  public RapidProSMSApiResource(
-    final SmsOutboundMessageRepository smsOutboundMessageRepository
-  ) {
-    this.smsOutboundMessageRepository = smsOutboundMessageRepository;
-  }
-
   @RequestMapping(
     value = "/report/{messageId}",
     method = RequestMethod.GET,
@@ -58,16 +46,11 @@ public class RapidProSMSApiResource {
   public ResponseEntity<Void> updateDeliveryStatus(
     @PathVariable("messageId") final Long messageId
   ) {
-    SMSMessage message = this.smsOutboundMessageRepository.findById(messageId).get();
-    if (message != null) {
-      logger.info(
-        "Status Callback received from RapidProSMS for " +
-        messageId
-      );
-      this.smsOutboundMessageRepository.save(message);
-    } else {
-      logger.info("Message with Message id " + messageId + " Not found");
-    }
+    // the RapidPro report carries no status, so there is nothing to store
+    logger.info(
+      "Status Callback received from RapidProSMS for " +
+      messageId
+    );
     return new ResponseEntity<>(HttpStatus.OK);
   }
 
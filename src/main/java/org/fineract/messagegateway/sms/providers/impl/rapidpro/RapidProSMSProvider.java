@@ -21,19 +21,30 @@ package org.fineract.messagegateway.sms.providers.impl.rapidpro;
 import com.squareup.okhttp.*;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.fineract.messagegateway.configuration.HostConfig;
-import org.fineract.messagegateway.constants.MessageGatewayConstants;
 import org.fineract.messagegateway.exception.MessageGatewayException;
 import org.fineract.messagegateway.sms.domain.SMSBridge;
 import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.sms.exception.ProviderThrottledException;
+import org.fineract.messagegateway.sms.exception.ProviderUnavailableException;
+import org.fineract.messagegateway.sms.providers.BridgeSendContext;
+import org.fineract.messagegateway.sms.providers.ProviderClientRegistry;
 import org.fineract.messagegateway.sms.providers.SMSProvider;
 import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 @Service(value = "RapidPro")
@@ -43,14 +54,26 @@ public class RapidProSMSProvider extends SMSProvider {
             RapidProSMSProvider.class
     );
 
-    private HashMap<String, OkHttpClient> restClients = new HashMap<>();
+    private final OkHttpClient okHttpClient;
+
+    private final ProviderClientRegistry sendContexts;
 
     private static final String SCHEME = "https";
 
+    private static final MediaType JSON = MediaType.parse("application/json");
+
     private final String callBackUrl;
 
+    private final int batchSize;
+
     @Autowired
-    public RapidProSMSProvider(final HostConfig hostConfig) {
+    public RapidProSMSProvider(final HostConfig hostConfig,
+                               final OkHttpClient okHttpClient,
+                               final ProviderClientRegistry sendContexts,
+                               @Value("${providers.rapidpro.batchSize:100}") final int batchSize) {
+        this.okHttpClient = okHttpClient;
+        this.sendContexts = sendContexts;
+        this.batchSize = Math.max(1, batchSize);
         callBackUrl =
                 String.format(
                         "%s://%s:%d/rapidprosms/report/",
@@ -65,57 +88,112 @@ public class RapidProSMSProvider extends SMSProvider {
     public void sendMessage(SMSBridge smsBridgeConfig, SMSMessage message)
             throws MessageGatewayException {
         logger.info("Reached RapidPro Provider...");
-        OkHttpClient okHttpClient = getRestClient(smsBridgeConfig);
-        String url = smsBridgeConfig.getConfigValue(
-                MessageGatewayConstants.PROVIDER_URL
-        ) + "/broadcasts.json";
-        String providerAuthToken = smsBridgeConfig.getConfigValue(
-                MessageGatewayConstants.PROVIDER_AUTH_TOKEN
-        );
-        logger.info("URL.....{}", url);
+        broadcast(smsBridgeConfig, Collections.singletonList(message));
+    }
+
+    /**
+     * Messages with the same text are sent as one broadcast to up to <code>providers.rapidpro.batchSize</code> URNs.
+     * If a broadcast fails, only its messages are marked as failed. RapidPro answers with the id of the broadcast
+     * only, not of the message sent to each URN, so the messages keep no <code>externalId</code>: one id shared by a
+     * whole broadcast would make every status update by <code>external_id</code> hit all of its messages. The
+     * broadcast id stays in the stored response.
+     */
+    @Override
+    public void sendMessages(SMSBridge smsBridgeConfig, List<SMSMessage> messages)
+            throws MessageGatewayException {
+        logger.info("Reached RapidPro Provider with {} messages...", messages.size());
+        Map<String, List<SMSMessage>> messagesByText = new LinkedHashMap<>();
+        for (SMSMessage message : messages) {
+            messagesByText.computeIfAbsent(message.getMessage(), text -> new ArrayList<>()).add(message);
+        }
+        for (List<SMSMessage> sameText : messagesByText.values()) {
+            for (int from = 0; from < sameText.size(); from += batchSize) {
+                List<SMSMessage> chunk = sameText.subList(from, Math.min(from + batchSize, sameText.size()));
+                try {
+                    broadcast(smsBridgeConfig, chunk);
+                } catch (ProviderThrottledException e) {
+                    throw e;
+                } catch (ProviderUnavailableException e) {
+                    logger.error("RapidPro broadcast to {} contacts failed, retrying later: {}", chunk.size(), e.getMessage());
+                    for (SMSMessage message : chunk) {
+                        markRetryable(message, e.getMessage());
+                    }
+                } catch (MessageGatewayException e) {
+                    logger.error("RapidPro broadcast to {} contacts failed: {}", chunk.size(), e.getMessage());
+                    for (SMSMessage message : chunk) {
+                        markFailed(message, e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    private void broadcast(SMSBridge smsBridgeConfig, List<SMSMessage> messages)
+            throws MessageGatewayException {
+        BroadcastTarget target = this.sendContexts.context(smsBridgeConfig)
+                .compiled(BroadcastTarget.class, RapidProSMSProvider::compile);
+        JSONArray urns = new JSONArray();
+        for (SMSMessage message : messages) {
+            urns.put("tel:" + message.getMobileNumber());
+        }
+        JSONObject broadcast = new JSONObject()
+                .put("urns", urns)
+                .put("contacts", new JSONArray())
+                .put("text", messages.get(0).getMessage());
         try {
-            OkHttpClient client = new OkHttpClient();
-            MediaType mediaType = MediaType.parse("application/json");
-            RequestBody body = RequestBody.create(
-                    mediaType,
-                    "{\"urns\": [\"tel:" + message.getMobileNumber() + "\"],\"contacts\": [],\"text\": \"" + message.getMessage() + "\"}"
-            );
+            RequestBody body = RequestBody.create(JSON, broadcast.toString());
             Request request = new Request.Builder()
-                    .url(url)
+                    .url(target.url())
                     .method("POST", body)
-                    .addHeader("Authorization", providerAuthToken)
+                    .addHeader("Authorization", target.authorization())
                     .addHeader("Content-Type", "application/json")
                     .build();
-            Response response = client.newCall(request).execute();
+            Response response = okHttpClient.newCall(request).execute();
             String responseBody =response.body().string();
             logger.info(responseBody);
-            message.setDeliveryStatus(SmsMessageStatusType.SENT.getValue());
-            message.setDeliveredOnDate(new Date());
-            message.setResponse(responseBody);
+            if (isThrottled(response.code())) {
+                throw new ProviderThrottledException("RapidPro rate limit exceeded: " + responseBody);
+            }
+            if (isTransient(response.code())) {
+                throw new ProviderUnavailableException("RapidPro returned HTTP " + response.code() + ": " + responseBody);
+            }
+            if (!response.isSuccessful()) {
+                throw new MessageGatewayException("RapidPro returned HTTP " + response.code() + ": " + responseBody);
+            }
+            logger.info("RapidPro broadcast {} sent to {} contacts", broadcastId(responseBody), messages.size());
+            Date sentOn = new Date();
+            for (SMSMessage message : messages) {
+                message.setDeliveryStatus(SmsMessageStatusType.SENT.getValue());
+                message.setDeliveredOnDate(sentOn);
+                message.setResponse(responseBody);
+            }
         } catch (IOException e) {
-            throw new MessageGatewayException(e.getMessage());
+            throw new ProviderUnavailableException(e.getMessage());
         }
     }
 
-    @Override
-    public void updateStatusByMessageId(SMSBridge bridge, String externalId) throws MessageGatewayException {
+    /**
+     * Builds the broadcast URL of the bridge once per version of the bridge.
+     */
+    private static BroadcastTarget compile(BridgeSendContext context) {
+        String url = context.getProviderUrl() + "/broadcasts.json";
+        logger.info("URL.....{}", url);
+        return new BroadcastTarget(url, context.getAuthToken());
+    }
 
+    private record BroadcastTarget(String url, String authorization) {
     }
 
-    private OkHttpClient getRestClient(final SMSBridge smsBridge) {
-        String authorizationKey = encodeBase64(smsBridge);
-        OkHttpClient client = this.restClients.get(authorizationKey);
-        if (client == null) {
-            client = this.get(smsBridge);
-            this.restClients.put(authorizationKey, client);
+    private String broadcastId(String responseBody) {
+        try {
+            return new JSONObject(responseBody).optString("id", null);
+        } catch (JSONException e) {
+            return null;
         }
-        return client;
     }
 
-    OkHttpClient get(final SMSBridge smsBridgeConfig) {
-        logger.debug("Creating a new Twilio Client ....");
+    @Override
+    public void updateStatusByMessageId(SMSBridge bridge, String externalId) throws MessageGatewayException {
 
-        final OkHttpClient client = new OkHttpClient();
-        return client;
     }
 }
@@ -19,14 +19,11 @@
  */
 package org.fineract.messagegateway.sms.providers.impl.telerivet;
 
-import org.fineract.messagegateway.sms.domain.SMSMessage;
-import org.fineract.messagegateway.sms.repository.SmsOutboundMessageRepository;
-import org.fineract.messagegateway.sms.util.CallbackEvent;
+import org.fineract.messagegateway.sms.callback.DeliveryReport;
+import org.fineract.messagegateway.sms.callback.DeliveryReportBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.ApplicationEventPublisher;
-import org.springframework.context.ApplicationEventPublisherAware;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -34,41 +31,23 @@ import org.springframework.web.bind.annotation.*;
 
 @RestController
 @RequestMapping("/telerivet")
-public class TelerivetApiResource implements ApplicationEventPublisherAware {
+public class TelerivetApiResource {
 
     private static final Logger logger = LoggerFactory.getLogger(TelerivetApiResource.class);
 
-    private final SmsOutboundMessageRepository smsOutboundMessageRepository ;
-
-    private ApplicationEventPublisher publisher;
-
-    //You must override this method; It will give you acces to ApplicationEventPublisher
-    public void setApplicationEventPublisher(ApplicationEventPublisher publisher) {
-        this.publisher = publisher;
-    }
-
+    private final DeliveryReportBuffer deliveryReportBuffer ;
 
     @Autowired
-    public TelerivetApiResource(final SmsOutboundMessageRepository smsOutboundMessageRepository) {
-        this.smsOutboundMessageRepository = smsOutboundMessageRepository ;
+    public TelerivetApiResource(final DeliveryReportBuffer deliveryReportBuffer) {
+        this.deliveryReportBuffer = deliveryReportBuffer ;
     }
 
     @RequestMapping(value = "/report", method = RequestMethod.POST, consumes ={"application/x-www-form-urlencoded"}, produces = {"application/x-www-form-urlencoded"})
     public ResponseEntity<Void> updateDeliveryStatus(@ModelAttribute final TelerivetResponseData report) {
-        SMSMessage message = this.smsOutboundMessageRepository.findByExternalId(report.getId());
-        if(message != null) {
-            logger.debug("Status Callback received from Telerivet for "+report.getId() +" with status:" + report.getStatus());
-            message.setDeliveryStatus(TelerivetStatus.smsStatus(report.getStatus()).getValue());
-            message.setDeliveryErrorMessage(report.getError_message());
-            this.smsOutboundMessageRepository.save(message) ;
-            //publishing the event here
-            if(message.getDeliveryStatus() == 300 || message.getDeliveryStatus() == 400) {
-                logger.info("Publishing Event with id " + report.getId());
-                publisher.publishEvent(new CallbackEvent(this, smsOutboundMessageRepository, report.getId()));
-            }
-        }else {
-            logger.info("Message with Message id "+report.getId()+" Not found");
-        }
+        logger.debug("Status Callback received from Telerivet for "+report.getId() +" with status:" + report.getStatus());
+        //the delivery callback is published once the final status is stored
+        this.deliveryReportBuffer.reportByExternalId(report.getId(),
+                new DeliveryReport(TelerivetStatus.smsStatus(report.getStatus()), report.getError_message())) ;
         return new ResponseEntity<>(HttpStatus.NO_CONTENT);
     }
 }
\ No newline at end of file
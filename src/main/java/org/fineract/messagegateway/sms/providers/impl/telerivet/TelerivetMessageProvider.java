@@ -19,14 +19,22 @@
 package org.fineract.messagegateway.sms.providers.impl.telerivet;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
+import java.util.List;
 
 import org.fineract.messagegateway.configuration.HostConfig;
-import org.fineract.messagegateway.constants.MessageGatewayConstants;
 import org.fineract.messagegateway.exception.MessageGatewayException;
 import org.fineract.messagegateway.sms.domain.SMSBridge;
 import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.sms.exception.ProviderThrottledException;
+import org.fineract.messagegateway.sms.exception.ProviderUnavailableException;
+import org.fineract.messagegateway.sms.providers.BridgeSendContext;
+import org.fineract.messagegateway.sms.providers.ProviderClientRegistry;
 import org.fineract.messagegateway.sms.providers.SMSProvider;
+import org.fineract.messagegateway.sms.repository.OutboundMessageWriter;
 import org.fineract.messagegateway.sms.repository.SmsOutboundMessageRepository;
 import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
 import org.slf4j.Logger;
@@ -59,35 +67,26 @@ public class TelerivetMessageProvider extends SMSProvider {
     @Autowired
     private SmsOutboundMessageRepository smsOutboundMessageRepository;
 
+    @Autowired
+    private OutboundMessageWriter outboundMessageWriter;
 
+    private final ProviderClientRegistry sendContexts;
 
     @Autowired
-    public TelerivetMessageProvider(final HostConfig hostConfig) {
+    public TelerivetMessageProvider(final HostConfig hostConfig, final ProviderClientRegistry sendContexts) {
+        this.sendContexts = sendContexts;
         callBackUrl = String.format("%s://%s/telerivet/report/", hostConfig.getProtocol(), hostConfig.getHostName());
         logger.info("Registering call back to Telerivet:" + callBackUrl);
     }
 
     @Override
     public void sendMessage(SMSBridge smsBridgeConfig, SMSMessage message) throws MessageGatewayException {
-        String providerAPIKey = null;
-        String providerProjectId = null;
-        if(ymlCheck.equals("enabled")){
-           logger.info("Yml values are enables so attaching provider related values from yml");
-           providerAPIKey = apiKey;
-           providerProjectId = projectId;
-        }
-        else{
-          providerAPIKey = smsBridgeConfig.getConfigValue(MessageGatewayConstants.PROVIDER_API_KEY);
-          providerProjectId = smsBridgeConfig.getConfigValue(MessageGatewayConstants.PROVIDER_PROJECT_ID);
-        }
-
         String statusURL = callBackUrl;
         String mobileNumber = message.getMobileNumber();
         String messageToSend = message.getMessage();
         try {
-            TelerivetAPI tr = new TelerivetAPI(providerAPIKey);
-           Project project = tr.initProjectById(providerProjectId);
-            logger.info("Sending SMS to " + mobileNumber + " ...");
+            Project project = getProject(smsBridgeConfig);
+            logger.info("Sending SMS to {} ...", mobileNumber);
             Message sent_msg = project.sendMessage(Util.options(
                     "content", messageToSend,
                     "to_number", mobileNumber,
@@ -102,6 +101,12 @@ public class TelerivetMessageProvider extends SMSProvider {
                 logger.error("Sending SMS to :" + message.getMobileNumber() + " failed with reason " + sent_msg.getErrorMessage());
             }
         } catch (IOException e) {
+            if (isRateLimitError(e)) {
+                throw new ProviderThrottledException(e.getMessage());
+            }
+            if (isNetworkError(e)) {
+                throw new ProviderUnavailableException(e.getMessage());
+            }
             logger.error("ApiException while sending message to :" + message.getMobileNumber() + " with reason " + e.getMessage());
             message.setDeliveryStatus(SmsMessageStatusType.FAILED.getValue());
             message.setDeliveryErrorMessage(e.getMessage());
@@ -113,29 +118,69 @@ public class TelerivetMessageProvider extends SMSProvider {
         Message msg = null;
         try {
             logger.info("Fetching message status by id");
-            String providerAPIKey = null;
-            String providerProjectId = null;
-            if(ymlCheck.equals("enabled")){
-                logger.info("Yml values are enables so attaching provider related values from yml");
-                providerAPIKey = apiKey;
-                providerProjectId = projectId;
-            }
-            else{
-                providerAPIKey = bridge.getConfigValue(MessageGatewayConstants.PROVIDER_API_KEY);
-                providerProjectId = bridge.getConfigValue(MessageGatewayConstants.PROVIDER_PROJECT_ID);
-            }
-
-            SMSMessage message = this.smsOutboundMessageRepository.findByExternalId(externalId);
-            TelerivetAPI tr = new TelerivetAPI(providerAPIKey);
-            Project project = tr.initProjectById(providerProjectId);
+            Project project = getProject(bridge);
             msg = project.getMessageById(externalId);
-            message.setDeliveryStatus(TelerivetStatus.smsStatus(msg.getStatus()).getValue());
-            message.setDeliveryErrorMessage(msg.getErrorMessage());
-            this.smsOutboundMessageRepository.save(message) ;
+            SmsMessageStatusType status = TelerivetStatus.smsStatus(msg.getStatus());
+            this.smsOutboundMessageRepository.updateDeliveryStatusByExternalId(externalId, status.getValue(),
+                    msg.getErrorMessage(), status == SmsMessageStatusType.DELIVERED ? new Date() : null);
             logger.debug("Value updated");
 
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public boolean supportsStatusQuery() {
+        return true;
+    }
+
+    /**
+     * Fetches the statuses from Telerivet one message at a time, and stores them with one batched update.
+     */
+    @Override
+    public void updateStatusByMessageIds(SMSBridge bridge, Collection<String> externalIds) throws MessageGatewayException {
+        Project project = getProject(bridge);
+        logger.info("Fetching status of {} messages", externalIds.size());
+        List<OutboundMessageWriter.StatusUpdate> updates = new ArrayList<>(externalIds.size());
+        for (String externalId : externalIds) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            try {
+                Message msg = project.getMessageById(externalId);
+                SmsMessageStatusType status = TelerivetStatus.smsStatus(msg.getStatus());
+                updates.add(new OutboundMessageWriter.StatusUpdate(externalId, status.getValue(), msg.getErrorMessage(),
+                        status == SmsMessageStatusType.DELIVERED ? new Date() : null));
+            } catch (IOException e) {
+                logger.error("Fetching status of message " + externalId + " failed with reason " + e.getMessage());
+            }
+        }
+        this.outboundMessageWriter.updateDeliveryStatuses(updates);
+    }
+
+    /**
+     * The Telerivet client reports API errors, rate limits included, as exceptions that only carry the error message.
+     */
+    private static boolean isRateLimitError(final IOException e) {
+        final String error = String.valueOf(e.getMessage()).toLowerCase();
+        return error.contains("rate limit") || error.contains("too many requests");
+    }
+
+    /**
+     * Projects are built once per version of the bridge, from the yml keys when <code>providerSource.fromyml</code> is
+     * enabled and from the bridge configuration otherwise. The Telerivet client cannot use the shared HTTP client and
+     * relies on the JVM keep-alive cache instead.
+     */
+    private Project getProject(final SMSBridge bridge) {
+        return this.sendContexts.context(bridge).compiled(Project.class, this::newProject);
+    }
+
+    private Project newProject(final BridgeSendContext context) {
+        if ("enabled".equals(ymlCheck)) {
+            logger.info("Yml values are enables so attaching provider related values from yml");
+            return new TelerivetAPI(apiKey).initProjectById(projectId);
+        }
+        return new TelerivetAPI(context.getApiKey()).initProjectById(context.getProjectId());
+    }
+}
@@ -18,8 +18,8 @@
  */
 package org.fineract.messagegateway.sms.providers.impl.twilio;
 
-import org.fineract.messagegateway.sms.domain.SMSMessage;
-import org.fineract.messagegateway.sms.repository.SmsOutboundMessageRepository;
+import org.fineract.messagegateway.sms.callback.DeliveryReport;
+import org.fineract.messagegateway.sms.callback.DeliveryReportBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -37,23 +37,17 @@ public class TwilioApiResource {
 
 	private static final Logger logger = LoggerFactory.getLogger(TwilioApiResource.class);
 	
-	private final SmsOutboundMessageRepository smsOutboundMessageRepository ;
+	private final DeliveryReportBuffer deliveryReportBuffer ;
 	
 	@Autowired
-	public TwilioApiResource(final SmsOutboundMessageRepository smsOutboundMessageRepository) {
-		this.smsOutboundMessageRepository = smsOutboundMessageRepository ;
+	public TwilioApiResource(final DeliveryReportBuffer deliveryReportBuffer) {
+		this.deliveryReportBuffer = deliveryReportBuffer ;
 	}
 	
 	@RequestMapping(value = "/report/{messageId}", method = RequestMethod.POST, consumes = {"application/x-www-form-urlencoded"}, produces = {"application/x-www-form-urlencoded"})
     public ResponseEntity<Void> updateDeliveryStatus(@PathVariable("messageId") final Long messageId, @ModelAttribute final TwilioReponseData payload) {
-    	SMSMessage message = this.smsOutboundMessageRepository.getById(messageId) ;
-    	if(message != null) {
-    		logger.info("Status Callback received from Twilio for "+messageId+" with status:"+payload.getMessageStatus());
-    		message.setDeliveryStatus(TwilioStatus.smsStatus(payload.getMessageStatus()).getValue());
-    		this.smsOutboundMessageRepository.save(message) ;
-    	}else {
-    		logger.info("Message with Message id "+messageId+" Not found");
-    	}
+    	logger.info("Status Callback received from Twilio for "+messageId+" with status:"+payload.getMessageStatus());
+    	this.deliveryReportBuffer.report(messageId, new DeliveryReport(TwilioStatus.smsStatus(payload.getMessageStatus()), null)) ;
        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
     }
 }
@@ -19,13 +19,15 @@
 package org.fineract.messagegateway.sms.providers.impl.twilio;
 
 import java.util.Date;
-import java.util.HashMap;
 
 import org.fineract.messagegateway.configuration.HostConfig;
-import org.fineract.messagegateway.constants.MessageGatewayConstants;
 import org.fineract.messagegateway.exception.MessageGatewayException;
 import org.fineract.messagegateway.sms.domain.SMSBridge;
 import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.sms.exception.ProviderThrottledException;
+import org.fineract.messagegateway.sms.exception.ProviderUnavailableException;
+import org.fineract.messagegateway.sms.providers.BridgeSendContext;
+import org.fineract.messagegateway.sms.providers.ProviderClientRegistry;
 import org.fineract.messagegateway.sms.providers.SMSProvider;
 import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
 import org.slf4j.Logger;
@@ -33,6 +35,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.twilio.exception.ApiConnectionException;
 import com.twilio.exception.ApiException;
 import com.twilio.http.TwilioRestClient;
 import com.twilio.rest.api.v2010.account.Message;
@@ -44,16 +47,13 @@ public class TwilioMessageProvider extends SMSProvider {
 
     private static final Logger logger = LoggerFactory.getLogger(TwilioMessageProvider.class);
 
-    private HashMap<String, TwilioRestClient> restClients = new HashMap<>() ; //tenantId, twilio clients
-    
+    private final ProviderClientRegistry restClients ;
     
     private final String callBackUrl ;
     
-    private final StringBuilder builder ;
-    
     @Autowired
-    TwilioMessageProvider(final HostConfig hostConfig) {
-    	builder = new StringBuilder() ;
+    TwilioMessageProvider(final HostConfig hostConfig, final ProviderClientRegistry restClients) {
+    	this.restClients = restClients ;
     	callBackUrl = String.format("%s://%s:%d/twilio/report/", hostConfig.getProtocol(),  hostConfig.getHostName(), hostConfig.getPort());
     	logger.info("Registering call back to twilio:"+callBackUrl);
     }
@@ -64,28 +64,34 @@ public class TwilioMessageProvider extends SMSProvider {
         throws MessageGatewayException {
     	//Based on message id, register call back. so that we get notification from Twilio about message status
     	String statusCallback = callBackUrl+message.getId() ;
-        final TwilioRestClient twilioRestClient = this.getRestClient(smsBridgeConfig);
-        builder.setLength(0);
-        builder.append(smsBridgeConfig.getCountryCode()) ;
-        builder.append(message.getMobileNumber()) ;
-        String mobile = builder.toString() ;
-        logger.info("Sending SMS to " + mobile + " ...");
-        MessageCreator creator = new MessageCreator(new PhoneNumber(mobile), new PhoneNumber(smsBridgeConfig.getPhoneNo()) , message.getMessage() ) ;
+        final BridgeSendContext context = this.restClients.context(smsBridgeConfig) ;
+        final TwilioSender sender = context.compiled(TwilioSender.class, this::get) ;
+        String mobile = context.internationalNumber(message.getMobileNumber()) ;
+        logger.info("Sending SMS to {} ...", mobile);
+        MessageCreator creator = new MessageCreator(new PhoneNumber(mobile), sender.from(), message.getMessage() ) ;
         creator.setStatusCallback(statusCallback) ;
         try {
         	message.setSubmittedOnDate(new Date());
-        	Message twilioMessage = creator.create(twilioRestClient) ;
+        	Message twilioMessage = creator.create(sender.client()) ;
         	message.setExternalId(twilioMessage.getSid());
-        	logger.debug("TwilioMessageProvider.sendMessage():"+TwilioStatus.smsStatus(twilioMessage.getStatus()).getValue());
         	message.setDeliveryStatus(TwilioStatus.smsStatus(twilioMessage.getStatus()).getValue()) ;
+        	logger.debug("TwilioMessageProvider.sendMessage():{}", message.getDeliveryStatus());
         	if(message.getDeliveryStatus().equals(SmsMessageStatusType.FAILED.getValue())) {
         		message.setDeliveryErrorMessage(twilioMessage.getErrorMessage());
         		logger.error("Sending SMS to :"+message.getMobileNumber()+" failed with reason "+twilioMessage.getErrorMessage());
         	}
         }catch (ApiException e) {
+        	if (e.getStatusCode() != null && isThrottled(e.getStatusCode())) {
+        		throw new ProviderThrottledException(e.getMessage());
+        	}
+        	if (e.getStatusCode() != null && isTransient(e.getStatusCode())) {
+        		throw new ProviderUnavailableException(e.getMessage());
+        	}
         	logger.error("ApiException while sending message to :"+message.getMobileNumber()+" with reason "+e.getMessage());
         	message.setDeliveryStatus(SmsMessageStatusType.FAILED.getValue());
         	message.setDeliveryErrorMessage(e.getMessage());
+        } catch (ApiConnectionException e) {
+        	throw new ProviderUnavailableException(e.getMessage());
         }
     }
 
@@ -94,21 +100,15 @@ public class TwilioMessageProvider extends SMSProvider {
 
     }
 
-    private TwilioRestClient getRestClient(final SMSBridge smsBridge) {
-    	String authorizationKey = encodeBase64(smsBridge) ;
-    	TwilioRestClient client = this.restClients.get(authorizationKey) ;
-		if(client == null) {
-			client = this.get(smsBridge) ;
-			this.restClients.put(authorizationKey, client) ;
-		}
-	    return client ;
-    }
-    
-    TwilioRestClient get(final SMSBridge smsBridgeConfig) {
+    TwilioSender get(final BridgeSendContext context) {
     	logger.debug("Creating a new Twilio Client ....");
-    	String providerAccountId = smsBridgeConfig.getConfigValue(MessageGatewayConstants.PROVIDER_ACCOUNT_ID) ;
-    	String providerAuthToken = smsBridgeConfig.getConfigValue(MessageGatewayConstants.PROVIDER_AUTH_TOKEN) ;
-        final TwilioRestClient client = new TwilioRestClient.Builder(providerAccountId, providerAuthToken).build();
-        return client;
+        final TwilioRestClient client = new TwilioRestClient.Builder(context.getAccountId(), context.getAuthToken()).build();
+        return new TwilioSender(client, new PhoneNumber(context.getPhoneNo()));
+    }
+
+    /**
+     * Client and sender number of a bridge, built once per version of the bridge.
+     */
+    record TwilioSender(TwilioRestClient client, PhoneNumber from) {
     }
 }
@@ -0,0 +1,301 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.sql.DataSource;
+
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Writes new outbound messages with multi-row <code>INSERT</code> statements. JPA inserts the rows one by one because
+ * <code>AUTO_INCREMENT</code> ids disable JDBC batching, so the ids are taken as one block from
+ * <code>m_id_allocator</code> instead and assigned to the messages before they are written. All rows of a call are
+ * written in one transaction; the block is allocated outside of it, so a rolled back call only leaves a gap in the ids.
+ * <p>
+ * New rows of <code>m_outbound_messages</code> must only be written here. A row inserted through
+ * <code>AUTO_INCREMENT</code> would take an id of a block handed out later, because every explicit id moves the
+ * table's counter past it; this is why instances of a release without the allocator have to be stopped before
+ * upgrading.
+ * <p>
+ * The outcome of a send is written back with {@link #updateClaimed}, fenced by the claim token of each row.
+ */
+@Component
+public class OutboundMessageWriter {
+
+	static final String ALLOCATOR_NAME = "m_outbound_messages";
+
+	/**
+	 * Width of <code>m_outbound_messages.delivery_error_message</code>
+	 */
+	public static final int ERROR_MESSAGE_LENGTH = 500;
+
+	private static final String ALLOCATE_SQL = "update m_id_allocator set next_id = last_insert_id(next_id + ?) where name = ?";
+
+	private static final String INSERT_SQL = "insert into m_outbound_messages (id, tenant_id, external_id, internal_id,"
+			+ " submitted_on_date, delivered_on_date, delivery_status, delivery_error_message, source_address,"
+			+ " sms_bridge_id, mobile_number, message, response, claim_token, lease_expires_at) values ";
+
+	private static final String UPDATE_CLAIMED_SQL = "update m_outbound_messages set sms_bridge_id = ?, external_id = ?,"
+			+ " submitted_on_date = ?, delivered_on_date = ?, delivery_status = ?, delivery_error_message = ?, response = ?,"
+			+ " claim_token = ?, lease_expires_at = ?, attempt_count = ?, next_attempt_at = ? where id = ? and claim_token <=> ?";
+
+	private static final String LOCK_CLAIMED_SQL = "select id, claim_token from m_outbound_messages where id in (%s) for update";
+
+	private static final String RENEW_SQL = "update m_outbound_messages set lease_expires_at = ? where claim_token in (%s)"
+			+ " and (lease_expires_at is null or lease_expires_at < ?)";
+
+	private static final String UPDATE_STATUS_SQL = "update m_outbound_messages set delivery_status = ?,"
+			+ " delivery_error_message = ?, delivered_on_date = coalesce(?, delivered_on_date) where external_id = ?";
+
+	private static final String ROW_PLACEHOLDERS = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+	private static final int COLUMNS = 15;
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final int rowsPerStatement;
+
+	@Autowired
+	public OutboundMessageWriter(final DataSource dataSource,
+								 final PlatformTransactionManager transactionManager,
+								 @Value("${dispatch.insert.rowsPerStatement:500}") final int rowsPerStatement) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.rowsPerStatement = rowsPerStatement;
+	}
+
+	/**
+	 * Assigns ids to the messages and inserts them, <code>dispatch.insert.rowsPerStatement</code> rows per statement.
+	 */
+	public void insert(final List<SMSMessage> messages) {
+		if (messages.isEmpty()) {
+			return;
+		}
+		final long firstId = allocate(messages.size());
+		for (int i = 0; i < messages.size(); i++) {
+			messages.get(i).assignId(firstId + i);
+		}
+		this.transactionTemplate.executeWithoutResult(status -> {
+			for (int from = 0; from < messages.size(); from += this.rowsPerStatement) {
+				final List<SMSMessage> rows = messages.subList(from, Math.min(from + this.rowsPerStatement, messages.size()));
+				this.jdbcTemplate.update(insertSql(rows.size()), values(rows));
+			}
+		});
+	}
+
+	/**
+	 * Stores the outcome of a send, but only for the rows that are still claimed with the token the message was
+	 * dispatched with: a row whose lease expired and was claimed by another dispatcher belongs to that dispatcher, and
+	 * its result is not overwritten.
+	 * <p>
+	 * The rows still claimed are selected and locked first, and only those are updated, in the same transaction.
+	 * Drivers that rewrite batches report <code>Statement.SUCCESS_NO_INFO</code> instead of a count per row, so the
+	 * counts of the batch cannot tell which rows the claim token let through.
+	 *
+	 * @param claimTokens the claim token of each message when it was dispatched, in the order of <code>messages</code>
+	 * @return the messages that were stored
+	 */
+	public List<SMSMessage> updateClaimed(final List<SMSMessage> messages, final List<String> claimTokens) {
+		if (messages.isEmpty()) {
+			return messages;
+		}
+		return this.transactionTemplate.execute(status -> {
+			final List<SMSMessage> stored = new ArrayList<>(messages.size());
+			final List<String> storedTokens = new ArrayList<>(messages.size());
+			for (int from = 0; from < messages.size(); from += this.rowsPerStatement) {
+				final int to = Math.min(from + this.rowsPerStatement, messages.size());
+				final Map<Long, String> current = lockClaims(messages.subList(from, to));
+				for (int i = from; i < to; i++) {
+					final Long id = messages.get(i).getId();
+					if (current.containsKey(id) && Objects.equals(current.get(id), claimTokens.get(i))) {
+						stored.add(messages.get(i));
+						storedTokens.add(claimTokens.get(i));
+					}
+				}
+			}
+			if (!stored.isEmpty()) {
+				this.jdbcTemplate.batchUpdate(UPDATE_CLAIMED_SQL, claimedRows(stored, storedTokens));
+			}
+			return stored;
+		});
+	}
+
+	/**
+	 * @return the current claim token of each row, by id, locked until the end of the transaction
+	 */
+	private Map<Long, String> lockClaims(final List<SMSMessage> messages) {
+		final Object[] ids = new Object[messages.size()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = messages.get(i).getId();
+		}
+		final Map<Long, String> claims = new HashMap<>();
+		this.jdbcTemplate.query(String.format(LOCK_CLAIMED_SQL, String.join(", ", Collections.nCopies(ids.length, "?"))),
+				(RowCallbackHandler) resultSet -> claims.put(resultSet.getLong(1), resultSet.getString(2)), ids);
+		return claims;
+	}
+
+	private static List<Object[]> claimedRows(final List<SMSMessage> messages, final List<String> claimTokens) {
+		final List<Object[]> rows = new ArrayList<>(messages.size());
+		for (int i = 0; i < messages.size(); i++) {
+			final SMSMessage message = messages.get(i);
+			rows.add(new Object[] {message.getBridgeId(), message.getExternalId(),
+					message.getSubmittedOnDate() == null ? null : new java.sql.Date(message.getSubmittedOnDate().getTime()),
+					timestamp(message.getDeliveredOnDate()), message.getDeliveryStatus(), message.getDeliveryErrorMessage(),
+					message.getResponse(), message.getClaimToken(), timestamp(message.getLeaseExpiresAt()),
+					message.getAttemptCount(), timestamp(message.getNextAttemptAt()), message.getId(), claimTokens.get(i)});
+		}
+		return rows;
+	}
+
+	/**
+	 * Stores statuses fetched from a provider with one JDBC batch. Error messages are truncated to their column, and
+	 * the delivery date is kept when the update has none.
+	 */
+	public void updateDeliveryStatuses(final List<StatusUpdate> updates) {
+		if (updates.isEmpty()) {
+			return;
+		}
+		final List<Object[]> rows = new ArrayList<>(updates.size());
+		for (StatusUpdate update : updates) {
+			rows.add(new Object[] {update.deliveryStatus(), truncate(update.deliveryErrorMessage()),
+					timestamp(update.deliveredOnDate()), update.externalId()});
+		}
+		this.jdbcTemplate.batchUpdate(UPDATE_STATUS_SQL, rows);
+	}
+
+	/**
+	 * Extends the lease of the rows claimed with the given tokens to <code>leaseExpiresAt</code>, never shortening it.
+	 *
+	 * @return the number of rows whose lease was extended
+	 */
+	public int renewLeases(final Collection<String> claimTokens, final Date leaseExpiresAt) {
+		final List<String> tokens = new ArrayList<>(claimTokens);
+		int renewed = 0;
+		for (int from = 0; from < tokens.size(); from += this.rowsPerStatement) {
+			final List<String> chunk = tokens.subList(from, Math.min(from + this.rowsPerStatement, tokens.size()));
+			final List<Object> values = new ArrayList<>(chunk.size() + 2);
+			values.add(timestamp(leaseExpiresAt));
+			values.addAll(chunk);
+			values.add(timestamp(leaseExpiresAt));
+			renewed += this.jdbcTemplate.update(String.format(RENEW_SQL, String.join(", ", Collections.nCopies(chunk.size(), "?"))),
+					values.toArray());
+		}
+		return renewed;
+	}
+
+	/**
+	 * Reserves <code>count</code> consecutive ids. <code>LAST_INSERT_ID(expr)</code> is per connection, so the new
+	 * counter value is read back on the connection that moved it.
+	 *
+	 * @return the first id of the block
+	 */
+	long allocate(final int count) {
+		final Long next = this.jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+			try (PreparedStatement update = connection.prepareStatement(ALLOCATE_SQL)) {
+				update.setLong(1, count);
+				update.setString(2, ALLOCATOR_NAME);
+				if (update.executeUpdate() != 1) {
+					throw new IncorrectResultSizeDataAccessException("No id allocator named " + ALLOCATOR_NAME, 1);
+				}
+			}
+			try (PreparedStatement select = connection.prepareStatement("select last_insert_id()");
+					ResultSet resultSet = select.executeQuery()) {
+				resultSet.next();
+				return resultSet.getLong(1);
+			}
+		});
+		return next - count;
+	}
+
+	private static String insertSql(final int rows) {
+		final StringBuilder sql = new StringBuilder(INSERT_SQL.length() + rows * (ROW_PLACEHOLDERS.length() + 2))
+				.append(INSERT_SQL);
+		for (int i = 0; i < rows; i++) {
+			if (i > 0) {
+				sql.append(", ");
+			}
+			sql.append(ROW_PLACEHOLDERS);
+		}
+		return sql.toString();
+	}
+
+	private static Object[] values(final List<SMSMessage> rows) {
+		final List<Object> values = new ArrayList<>(rows.size() * COLUMNS);
+		for (SMSMessage message : rows) {
+			values.add(message.getId());
+			values.add(message.getTenantId());
+			values.add(message.getExternalId());
+			values.add(message.getInternalId());
+			values.add(message.getSubmittedOnDate() == null ? null : new java.sql.Date(message.getSubmittedOnDate().getTime()));
+			values.add(timestamp(message.getDeliveredOnDate()));
+			values.add(message.getDeliveryStatus());
+			values.add(message.getDeliveryErrorMessage());
+			values.add(message.getSourceAddress());
+			values.add(message.getBridgeId());
+			values.add(message.getMobileNumber());
+			values.add(message.getMessage());
+			values.add(message.getResponse());
+			values.add(message.getClaimToken());
+			values.add(timestamp(message.getLeaseExpiresAt()));
+		}
+		return values.toArray();
+	}
+
+	private static Timestamp timestamp(final Date date) {
+		return date == null ? null : new Timestamp(date.getTime());
+	}
+
+	/**
+	 * @return the error message cut to the width of its column
+	 */
+	public static String truncate(final String errorMessage) {
+		return errorMessage == null || errorMessage.length() <= ERROR_MESSAGE_LENGTH ? errorMessage
+				: errorMessage.substring(0, ERROR_MESSAGE_LENGTH);
+	}
+
+	/**
+	 * A delivery status reported by a provider for the message it knows as <code>externalId</code>.
+	 */
+	public record StatusUpdate(String externalId, Integer deliveryStatus, String deliveryErrorMessage,
+			Date deliveredOnDate) {
+	}
+}
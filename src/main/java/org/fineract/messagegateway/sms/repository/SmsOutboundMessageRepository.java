@@ -18,6 +18,7 @@
  */
 package org.fineract.messagegateway.sms.repository;
 
+import java.util.Date;
 import java.util.List;
 
 import org.fineract.messagegateway.sms.domain.SMSMessage;
@@ -26,7 +27,11 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 @Repository
 public interface SmsOutboundMessageRepository extends JpaRepository<SMSMessage, Long>, JpaSpecificationExecutor<SMSMessage> {
@@ -56,4 +61,46 @@ public interface SmsOutboundMessageRepository extends JpaRepository<SMSMessage,
 	 * @return List of {@link SmsMessageStatusType} objects
 	 **/
 	List<SMSMessage> findByIdInAndTenantId(List<Long> idList, String mifosTenantIdentifier);
+
+	/**
+	 * find {@link SMSMessage} objects claimed by a dispatcher
+	 *
+	 * @param claimToken -- token written by the claim
+	 * @return List of {@link SMSMessage} objects
+	 **/
+	List<SMSMessage> findByClaimToken(String claimToken);
+
+	/**
+	 * update the status of a message in one statement, without loading it. The delivery date is kept when
+	 * <code>deliveredOnDate</code> is null.
+	 *
+	 * @param id -- message id
+	 * @param deliveryStatus -- {@link SmsMessageStatusType} value
+	 * @param deliveryErrorMessage -- provider error, null clears it
+	 * @param deliveredOnDate -- delivery date or null
+	 * @return number of updated messages
+	 **/
+	@Modifying
+	@Transactional
+	@Query("update SMSMessage m set m.deliveryStatus = :deliveryStatus, m.deliveryErrorMessage = :deliveryErrorMessage,"
+			+ " m.deliveredOnDate = coalesce(:deliveredOnDate, m.deliveredOnDate) where m.id = :id")
+	int updateDeliveryStatus(@Param("id") Long id, @Param("deliveryStatus") Integer deliveryStatus,
+			@Param("deliveryErrorMessage") String deliveryErrorMessage, @Param("deliveredOnDate") Date deliveredOnDate);
+
+	/**
+	 * update the status of a message by externalId in one statement, without loading it. The delivery date is kept
+	 * when <code>deliveredOnDate</code> is null.
+	 *
+	 * @param externalId -- provider message id
+	 * @param deliveryStatus -- {@link SmsMessageStatusType} value
+	 * @param deliveryErrorMessage -- provider error, null clears it
+	 * @param deliveredOnDate -- delivery date or null
+	 * @return number of updated messages
+	 **/
+	@Modifying
+	@Transactional
+	@Query("update SMSMessage m set m.deliveryStatus = :deliveryStatus, m.deliveryErrorMessage = :deliveryErrorMessage,"
+			+ " m.deliveredOnDate = coalesce(:deliveredOnDate, m.deliveredOnDate) where m.externalId = :externalId")
+	int updateDeliveryStatusByExternalId(@Param("externalId") String externalId, @Param("deliveryStatus") Integer deliveryStatus,
+			@Param("deliveryErrorMessage") String deliveryErrorMessage, @Param("deliveredOnDate") Date deliveredOnDate);
 }
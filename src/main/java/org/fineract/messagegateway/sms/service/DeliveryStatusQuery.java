@@ -0,0 +1,137 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.service;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.fineract.messagegateway.sms.data.DeliveryStatusData;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+
+/**
+ * Delivery status lookups on <code>m_outbound_messages</code>. Ids are queried in chunks whose IN list always has one
+ * of {@link #IN_LIST_SIZES} placeholders, padded with the last id of the chunk, so that only four distinct statements
+ * per lookup are ever sent and their plans can be reused. Rows are handed to the caller chunk by chunk.
+ */
+final class DeliveryStatusQuery {
+
+	static final int[] IN_LIST_SIZES = {1, 8, 64, 512};
+
+	private static final String SCHEMA = "select internal_id, external_id, delivered_on_date, delivery_status, delivery_error_message, sms_bridge_id, tenant_id from m_outbound_messages m";
+
+	private static final DeliveryStatusDataRowMapper MAPPER = new DeliveryStatusDataRowMapper();
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final String[] byInternalIdQueries = queries(" where m.tenant_id=? and m.internal_id in (");
+
+	private final String[] byIdQueries = queries(" where m.id in (");
+
+	private final String[] byExternalIdQueries = queries(" where m.external_id in (");
+
+	DeliveryStatusQuery(final JdbcTemplate jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+	}
+
+	private static String[] queries(final String where) {
+		final String[] queries = new String[IN_LIST_SIZES.length];
+		for (int i = 0; i < IN_LIST_SIZES.length; i++) {
+			queries[i] = SCHEMA + where + String.join(",", Collections.nCopies(IN_LIST_SIZES[i], "?")) + ")";
+		}
+		return queries;
+	}
+
+	void forEachByInternalIds(final Long tenantId, final Collection<Long> internalIds,
+			final Consumer<DeliveryStatusData> consumer) {
+		final List<String> ids = new ArrayList<>(internalIds.size());
+		for (Long internalId : internalIds) {
+			//tenant_id and internal_id are VARCHAR columns, numeric parameters would make MySQL skip their index
+			ids.add(String.valueOf(internalId));
+		}
+		forEachIn(this.byInternalIdQueries, String.valueOf(tenantId), ids, consumer);
+	}
+
+	void forEachByIds(final Collection<Long> ids, final Consumer<DeliveryStatusData> consumer) {
+		forEachIn(this.byIdQueries, null, ids, consumer);
+	}
+
+	void forEachByExternalIds(final Collection<String> externalIds, final Consumer<DeliveryStatusData> consumer) {
+		forEachIn(this.byExternalIdQueries, null, externalIds, consumer);
+	}
+
+	private void forEachIn(final String[] queries, final Object leadingParam, final Collection<?> keys,
+			final Consumer<DeliveryStatusData> consumer) {
+		final int maxChunk = IN_LIST_SIZES[IN_LIST_SIZES.length - 1];
+		final Iterator<?> distinctKeys = new LinkedHashSet<>(keys).iterator();
+		final List<Object> chunk = new ArrayList<>(maxChunk);
+		while (distinctKeys.hasNext()) {
+			chunk.add(distinctKeys.next());
+			if (chunk.size() == maxChunk || !distinctKeys.hasNext()) {
+				queryChunk(queries, leadingParam, chunk, consumer);
+				chunk.clear();
+			}
+		}
+	}
+
+	private void queryChunk(final String[] queries, final Object leadingParam, final List<Object> keys,
+			final Consumer<DeliveryStatusData> consumer) {
+		int bucket = 0;
+		while (IN_LIST_SIZES[bucket] < keys.size()) {
+			bucket++;
+		}
+		final int offset = leadingParam == null ? 0 : 1;
+		final Object[] params = new Object[IN_LIST_SIZES[bucket] + offset];
+		if (leadingParam != null) {
+			params[0] = leadingParam;
+		}
+		for (int i = 0; i < keys.size(); i++) {
+			params[i + offset] = keys.get(i);
+		}
+		Arrays.fill(params, keys.size() + offset, params.length, keys.get(keys.size() - 1));
+		this.jdbcTemplate.query(queries[bucket],
+				(RowCallbackHandler) rs -> consumer.accept(MAPPER.mapRow(rs, rs.getRow())), params);
+	}
+
+	static final class DeliveryStatusDataRowMapper implements RowMapper<DeliveryStatusData> {
+
+		@Override
+		public DeliveryStatusData mapRow(ResultSet rs, int rowNum) throws SQLException {
+			String internalId = rs.getString("internal_id") ;
+			String externalId = rs.getString("external_id") ;
+			Date deliveredOnDate = rs.getDate("delivered_on_date") ;
+			Integer deliveryStatus = rs.getInt("delivery_status") ;
+			String errorMessage = rs.getString("delivery_error_message") ;
+			Long bridgeId = Long.valueOf(rs.getInt("sms_bridge_id"));
+			Long tenantId = rs.getLong("tenant_id") ;
+			DeliveryStatusData data = new DeliveryStatusData(internalId, externalId, deliveredOnDate, deliveryStatus, errorMessage, bridgeId,tenantId) ;
+			return data;
+		}
+	}
+}
@@ -0,0 +1,190 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.fineract.messagegateway.sms.cache.SMSBridgeCache;
+import org.fineract.messagegateway.sms.data.DeliveryStatusData;
+import org.fineract.messagegateway.sms.domain.SMSBridge;
+import org.fineract.messagegateway.sms.exception.ProviderNotDefinedException;
+import org.fineract.messagegateway.sms.providers.SMSProvider;
+import org.fineract.messagegateway.sms.providers.SMSProviderFactory;
+import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Refreshes the status of messages that are not delivered or failed yet from their providers before a status report
+ * is returned. Messages are grouped by bridge and refreshed in slices through
+ * {@link SMSProvider#updateStatusByMessageIds}, skipping providers that cannot query a status. The slices run on a
+ * pool of <code>statusRefresh.parallelism</code> threads shared by all requests, and whatever is not done within
+ * <code>statusRefresh.timeBudgetMs</code> is cancelled, so a report returns in bounded time with the statuses known
+ * by then.
+ */
+@Service
+public class DeliveryStatusRefresher {
+
+	private static final Logger logger = LoggerFactory.getLogger(DeliveryStatusRefresher.class);
+
+	private final SMSMessageService smsMessageService;
+
+	private final SMSBridgeCache smsBridgeCache;
+
+	private final SMSProviderFactory smsProviderFactory;
+
+	private final ThreadPoolExecutor executorService;
+
+	private final long timeBudgetMs;
+
+	private final int sliceSize;
+
+	@Autowired
+	public DeliveryStatusRefresher(final SMSMessageService smsMessageService,
+								   final SMSBridgeCache smsBridgeCache,
+								   final SMSProviderFactory smsProviderFactory,
+								   @Value("${statusRefresh.parallelism:8}") final int parallelism,
+								   @Value("${statusRefresh.timeBudgetMs:5000}") final long timeBudgetMs,
+								   @Value("${statusRefresh.sliceSize:50}") final int sliceSize) {
+		this.smsMessageService = smsMessageService;
+		this.smsBridgeCache = smsBridgeCache;
+		this.smsProviderFactory = smsProviderFactory;
+		this.timeBudgetMs = timeBudgetMs;
+		this.sliceSize = Math.max(1, sliceSize);
+		this.executorService = new ThreadPoolExecutor(parallelism, parallelism, 60L, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), new CustomizableThreadFactory("status-refresh-"));
+		this.executorService.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * @return <code>statuses</code> with the rows of refreshed messages replaced by their current status
+	 */
+	public Collection<DeliveryStatusData> refresh(final String tenantId, final String tenantAppKey,
+			final Collection<DeliveryStatusData> statuses) {
+		final Map<Long, List<DeliveryStatusData>> openByBridge = new LinkedHashMap<>();
+		for (DeliveryStatusData status : statuses) {
+			if (!isFinal(status.getDeliveryStatus()) && status.getExternalId() != null) {
+				openByBridge.computeIfAbsent(status.getBridgeId(), id -> new ArrayList<>()).add(status);
+			}
+		}
+		final List<Callable<Void>> tasks = new ArrayList<>();
+		final List<Long> refreshedIds = new ArrayList<>();
+		for (List<DeliveryStatusData> bridgeStatuses : openByBridge.values()) {
+			final DeliveryStatusData first = bridgeStatuses.get(0);
+			final SMSBridge bridge = this.smsBridgeCache.get(first.getBridgeId(), first.getTenantId());
+			final SMSProvider provider = provider(bridge, first.getBridgeId());
+			if (provider == null || !provider.supportsStatusQuery()) {
+				continue;
+			}
+			for (int from = 0; from < bridgeStatuses.size(); from += this.sliceSize) {
+				final List<String> externalIds = new ArrayList<>();
+				for (DeliveryStatusData status : bridgeStatuses.subList(from, Math.min(from + this.sliceSize, bridgeStatuses.size()))) {
+					externalIds.add(status.getExternalId());
+					refreshedIds.add(Long.valueOf(status.getId()));
+				}
+				tasks.add(() -> {
+					provider.updateStatusByMessageIds(bridge, externalIds);
+					return null;
+				});
+			}
+		}
+		if (tasks.isEmpty()) {
+			return statuses;
+		}
+		if (!runWithinBudget(tasks)) {
+			return statuses;
+		}
+		final Map<String, DeliveryStatusData> merged = new LinkedHashMap<>();
+		for (DeliveryStatusData status : statuses) {
+			merged.put(status.getId(), status);
+		}
+		this.smsMessageService.forEachDeliveryStatus(tenantId, tenantAppKey, refreshedIds,
+				status -> merged.put(status.getId(), status));
+		return new ArrayList<>(merged.values());
+	}
+
+	private boolean runWithinBudget(final List<Callable<Void>> tasks) {
+		final List<Future<Void>> futures;
+		try {
+			futures = this.executorService.invokeAll(tasks, this.timeBudgetMs, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		int cancelled = 0;
+		for (Future<Void> future : futures) {
+			if (future.isCancelled()) {
+				cancelled++;
+				continue;
+			}
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				logger.error("Refreshing message statuses failed with reason {}", e.getCause().getMessage());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		if (cancelled > 0) {
+			logger.warn("{} of {} status refreshes did not finish within {} ms", cancelled, futures.size(), this.timeBudgetMs);
+		}
+		return true;
+	}
+
+	private SMSProvider provider(final SMSBridge bridge, final Long bridgeId) {
+		if (bridge == null) {
+			logger.warn("Bridge {} not found, statuses of its messages are not refreshed", bridgeId);
+			return null;
+		}
+		try {
+			return this.smsProviderFactory.getSMSProvider(bridge);
+		} catch (ProviderNotDefinedException | BeansException e) {
+			logger.warn("No provider {} for bridge {}, statuses of its messages are not refreshed", bridge.getProviderKey(), bridgeId);
+			return null;
+		}
+	}
+
+	private static boolean isFinal(final Integer deliveryStatus) {
+		return SmsMessageStatusType.DELIVERED.getValue().equals(deliveryStatus)
+				|| SmsMessageStatusType.FAILED.getValue().equals(deliveryStatus);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		this.executorService.shutdownNow();
+	}
+}
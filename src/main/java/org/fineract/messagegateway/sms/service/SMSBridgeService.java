@@ -22,6 +22,7 @@ import java.util.Collection;
 import java.util.Objects;
 
 import org.fineract.messagegateway.service.SecurityService;
+import org.fineract.messagegateway.sms.cache.SMSBridgeCache;
 import org.fineract.messagegateway.sms.domain.Country;
 import org.fineract.messagegateway.sms.domain.SMSBridge;
 import org.fineract.messagegateway.sms.exception.SMSBridgeNotFoundException;
@@ -42,16 +43,20 @@ public class SMSBridgeService {
 	private final SecurityService securityService ;
 
 	private final CountryService countryService;
+
+	private final SMSBridgeCache smsBridgeCache;
 	
 	@Autowired
 	public SMSBridgeService(final SMSBridgeRepository smsBridgeRepository,
 			final SmsBridgeSerializer smsBridgeSerializer,
 			final SecurityService securityService,
-			final CountryService countryService) {
+			final CountryService countryService,
+			final SMSBridgeCache smsBridgeCache) {
 		this.smsBridgeRepository = smsBridgeRepository;
 		this.smsBridgeSerializer = smsBridgeSerializer ;
 		this.securityService = securityService ;
 		this.countryService = countryService;
+		this.smsBridgeCache = smsBridgeCache;
 	}
 
 	public Collection<SMSBridge> retrieveProviderDetails(final String tenantId, final String tenantAppKey, String country) {
@@ -84,6 +89,7 @@ public class SMSBridgeService {
 		}
 
 		this.smsBridgeRepository.save(bridge);
+		this.smsBridgeCache.invalidate(tenant.getId(), bridgeId);
 	}
 	
 	public Long deleteSmsBridge(final String tenantId, final String tenantAppKey, final Long bridgeId) throws SMSBridgeNotFoundException{
@@ -94,6 +100,7 @@ public class SMSBridgeService {
 		}
 		
 		this.smsBridgeRepository.delete(bridge);
+		this.smsBridgeCache.invalidate(tenant.getId(), bridgeId);
 		return bridgeId ;
 	}
 	
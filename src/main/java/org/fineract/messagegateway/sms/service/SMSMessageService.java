@@ -18,33 +18,25 @@
  */
 package org.fineract.messagegateway.sms.service;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Date;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-
-import javax.annotation.PostConstruct;
+import java.util.List;
+import java.util.function.Consumer;
+
 import javax.sql.DataSource;
 
+import org.fineract.messagegateway.exception.PlatformApiDataValidationException;
+import org.fineract.messagegateway.helpers.ApiParameterError;
 import org.fineract.messagegateway.service.SecurityService;
+import org.fineract.messagegateway.sms.cache.DeliveryStatusCache;
 import org.fineract.messagegateway.sms.data.DeliveryStatusData;
+import org.fineract.messagegateway.sms.dispatch.OutboundMessageQueue;
 import org.fineract.messagegateway.sms.domain.SMSMessage;
-import org.fineract.messagegateway.sms.providers.SMSProviderFactory;
-import org.fineract.messagegateway.sms.repository.SmsOutboundMessageRepository;
-import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
 import org.fineract.messagegateway.tenants.domain.Tenant;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -52,145 +44,101 @@ public class SMSMessageService {
 
 	private static final Logger logger = LoggerFactory.getLogger(SMSMessageService.class);
 
-	private final SmsOutboundMessageRepository smsOutboundMessageRepository ;
-
-	private final SMSProviderFactory smsProviderFactory ;
-
-	private final JdbcTemplate jdbcTemplate ;
-
-	private ExecutorService executorService ;
+	private final DeliveryStatusQuery deliveryStatusQuery ;
 
-	private ScheduledExecutorService scheduledExecutorService ;
+	private final OutboundMessageQueue outboundMessageQueue ;
 
 	private final SecurityService securityService ;
 
+	private final DeliveryStatusCache deliveryStatusCache ;
 
 	@Autowired
-	public SMSMessageService(final SmsOutboundMessageRepository smsOutboundMessageRepository,
-							 final SMSProviderFactory smsProviderFactory,
-							 final DataSource dataSource,
-							 final SecurityService securityService) {
-		this.smsOutboundMessageRepository = smsOutboundMessageRepository ;
-		this.smsProviderFactory = smsProviderFactory ;
-		this.jdbcTemplate = new JdbcTemplate(dataSource) ;
+	public SMSMessageService(final DataSource dataSource,
+							 final SecurityService securityService,
+							 final OutboundMessageQueue outboundMessageQueue,
+							 final DeliveryStatusCache deliveryStatusCache) {
+		this.deliveryStatusQuery = new DeliveryStatusQuery(new JdbcTemplate(dataSource)) ;
 		this.securityService = securityService ;
+		this.outboundMessageQueue = outboundMessageQueue ;
+		this.deliveryStatusCache = deliveryStatusCache ;
 	}
 
-	@PostConstruct
-	public void init() {
-		logger.debug("Intializing SMSMessage Service.....");
-		executorService = Executors.newSingleThreadExecutor();
-		scheduledExecutorService = Executors.newSingleThreadScheduledExecutor() ;
-		scheduledExecutorService.schedule(new BootupPendingMessagesTask(this.smsOutboundMessageRepository, this.smsProviderFactory) , 1, TimeUnit.MINUTES) ;
-		//When do I have to shutdown  scheduledExecutorService ? :-( as it is no use after triggering BootupPendingMessagesTask
-		//Shutdown scheduledExecutorService on application close event
-	}
-
-	public void sendShortMessage(final String tenantId, final String tenantAppKey, final Collection<SMSMessage> messages) {
+	/**
+	 * Validates and stores the messages for dispatch.
+	 *
+	 * @return the ids assigned to the messages, in the order of <code>messages</code>
+	 */
+	public List<Long> sendShortMessage(final String tenantId, final String tenantAppKey, final List<SMSMessage> messages) {
 		logger.debug("Request Received to send messages.....");
 		Tenant tenant = this.securityService.authenticate(tenantId, tenantAppKey) ;
+		validate(messages) ;
 		for(SMSMessage message: messages) {
 			message.setTenant(tenant.getId());
 		}
-		this.smsOutboundMessageRepository.saveAll(messages) ;
-		this.executorService.execute(new MessageTask(tenant, this.smsOutboundMessageRepository, this.smsProviderFactory, messages));
-	}
-
-	public Collection<DeliveryStatusData> getDeliveryStatus(final String tenantId, final String tenantAppKey, final Collection<Long> internalIds) {
-		Tenant tenant = this.securityService.authenticate(tenantId, tenantAppKey) ;
-		DeliveryStatusDataRowMapper mapper = new DeliveryStatusDataRowMapper() ;
-		String internaIdString = internalIds.toString() ;
-		internaIdString = internaIdString.replace("[", "(") ;
-		internaIdString = internaIdString.replace("]", ")") ;
-		String query = mapper.schema() + " where m.tenant_id=?"+" and m.internal_id in " +internaIdString;
-		Collection<DeliveryStatusData> datas = this.jdbcTemplate.query(query, mapper, new Object[] {tenant.getId()}) ;
-		return datas ;
-	}
-
-	public Collection<DeliveryStatusData>  getDeliveryCallbackStatus( String externalId) {
-		DeliveryStatusDataRowMapper mapper = new DeliveryStatusDataRowMapper() ;
-		String query = mapper.schema() +" where m.external_id=?";
-		Collection<DeliveryStatusData> datas = this.jdbcTemplate.query(query, mapper, externalId) ;
-		return datas ;
+		this.outboundMessageQueue.submit(messages);
+		final List<Long> ids = new ArrayList<>(messages.size()) ;
+		for(SMSMessage message: messages) {
+			ids.add(message.getId()) ;
+		}
+		return ids ;
 	}
 
-
-	class DeliveryStatusDataRowMapper implements RowMapper<DeliveryStatusData> {
-
-		private final StringBuilder buff = new StringBuilder() ;
-
-		public DeliveryStatusDataRowMapper() {
-			buff.append("select internal_id, external_id, delivered_on_date, delivery_status, delivery_error_message, sms_bridge_id, tenant_id from m_outbound_messages m") ;
+	private void validate(final List<SMSMessage> messages) {
+		final List<ApiParameterError> dataValidationErrors = new ArrayList<>();
+		if (messages.isEmpty()) {
+			throw new PlatformApiDataValidationException("validation.msg.sms.messages.cannot.be.empty",
+					"At least one message is required", dataValidationErrors);
 		}
-
-		public String schema() {
-			return buff.toString() ;
+		for (int i = 0; i < messages.size(); i++) {
+			SMSMessageValidator.validate(messages.get(i), i, dataValidationErrors);
 		}
-
-		@Override
-		public DeliveryStatusData mapRow(ResultSet rs, int rowNum) throws SQLException {
-			String internalId = rs.getString("internal_id") ;
-			String externalId = rs.getString("external_id") ;
-			Date deliveredOnDate = rs.getDate("delivered_on_date") ;
-			Integer deliveryStatus = rs.getInt("delivery_status") ;
-			String errorMessage = rs.getString("delivery_error_message") ;
-			Long bridgeId = Long.valueOf(rs.getInt("sms_bridge_id"));
-			Long tenantId = rs.getLong("tenant_id") ;
-			DeliveryStatusData data = new DeliveryStatusData(internalId, externalId, deliveredOnDate, deliveryStatus, errorMessage, bridgeId,tenantId) ;
-			return data;
+		if (!dataValidationErrors.isEmpty()) {
+			throw new PlatformApiDataValidationException(dataValidationErrors);
 		}
 	}
 
-	class MessageTask implements Runnable {
-
-		final Collection<SMSMessage> messages ;
-		final SmsOutboundMessageRepository smsOutboundMessageRepository ;
-		final SMSProviderFactory smsProviderFactory ;
-		final Tenant tenant ;
-
-		public MessageTask(final Tenant tenant, final SmsOutboundMessageRepository smsOutboundMessageRepository,
-						   final SMSProviderFactory smsProviderFactory,
-						   final Collection<SMSMessage> messages) {
-			this.tenant = tenant ;
-			this.messages = messages ;
-			this.smsOutboundMessageRepository = smsOutboundMessageRepository ;
-			this.smsProviderFactory = smsProviderFactory ;
-		}
+	/**
+	 * Returns the delivery status of the given messages from the {@link DeliveryStatusCache}, querying only the
+	 * messages that are not cached.
+	 */
+	public Collection<DeliveryStatusData> getDeliveryStatus(final String tenantId, final String tenantAppKey, final Collection<Long> internalIds) {
+		Tenant tenant = this.securityService.authenticate(tenantId, tenantAppKey) ;
+		return this.deliveryStatusCache.getAll(tenant.getId(), internalIds, missingIds -> {
+			final List<DeliveryStatusData> datas = new ArrayList<>(missingIds.size()) ;
+			this.deliveryStatusQuery.forEachByInternalIds(tenant.getId(), missingIds, datas::add) ;
+			return datas ;
+		}) ;
+	}
 
-		@Override
-		public void run() {
-			this.smsProviderFactory.sendShortMessage(messages);
-			this.smsOutboundMessageRepository.saveAll(messages) ;
-		}
+	/**
+	 * Streams the stored delivery status of the given messages to <code>consumer</code>, querying them in bounded
+	 * chunks. The statuses read replace the cached ones.
+	 */
+	public void forEachDeliveryStatus(final String tenantId, final String tenantAppKey, final Collection<Long> internalIds,
+			final Consumer<DeliveryStatusData> consumer) {
+		Tenant tenant = this.securityService.authenticate(tenantId, tenantAppKey) ;
+		this.deliveryStatusQuery.forEachByInternalIds(tenant.getId(), internalIds, cached(consumer)) ;
 	}
 
-	class BootupPendingMessagesTask implements Callable<Integer> {
+	/**
+	 * Streams the delivery status of the messages with the given ids to <code>consumer</code>, whatever their tenant.
+	 */
+	public void forEachDeliveryStatusById(final Collection<Long> ids, final Consumer<DeliveryStatusData> consumer) {
+		this.deliveryStatusQuery.forEachByIds(ids, cached(consumer)) ;
+	}
 
-		final SmsOutboundMessageRepository smsOutboundMessageRepository ;
-		final SMSProviderFactory smsProviderFactory ;
-		public BootupPendingMessagesTask(final SmsOutboundMessageRepository smsOutboundMessageRepository,
-										 final SMSProviderFactory smsProviderFactory) {
-			this.smsOutboundMessageRepository = smsOutboundMessageRepository ;
-			this.smsProviderFactory = smsProviderFactory ;
-		}
+	/**
+	 * Streams the delivery status of the messages with the given provider ids to <code>consumer</code>, whatever their
+	 * tenant.
+	 */
+	public void forEachDeliveryStatusByExternalId(final Collection<String> externalIds, final Consumer<DeliveryStatusData> consumer) {
+		this.deliveryStatusQuery.forEachByExternalIds(externalIds, cached(consumer)) ;
+	}
 
-		@Override
-		public Integer call() throws Exception {
-			logger.info("Sending Pending Messages on bootup.....");
-			Integer page = 0;
-			Integer initialSize = 200;
-			Integer totalPageSize = 0;
-			do {
-				PageRequest pageRequest = PageRequest.of(page, initialSize);
-				logger.info("Reading Pending Messages on bootup.....");
-				Page<SMSMessage> messages = this.smsOutboundMessageRepository.findByDeliveryStatus(SmsMessageStatusType.PENDING.getValue(), pageRequest) ;
-				logger.info("Pending Messages size.....{}", messages.getTotalElements());
-				page++;
-				totalPageSize = messages.getTotalPages();
-				this.smsProviderFactory.sendShortMessage(messages.getContent());
-				this.smsOutboundMessageRepository.saveAll(messages);
-			}while (page < totalPageSize);
-			return totalPageSize;
-		}
+	private Consumer<DeliveryStatusData> cached(final Consumer<DeliveryStatusData> consumer) {
+		return status -> {
+			this.deliveryStatusCache.put(status) ;
+			consumer.accept(status) ;
+		} ;
 	}
 }
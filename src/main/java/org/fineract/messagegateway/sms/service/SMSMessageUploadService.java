@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.fineract.messagegateway.helpers.ApiParameterError;
+import org.fineract.messagegateway.service.SecurityService;
+import org.fineract.messagegateway.sms.data.SMSUploadData;
+import org.fineract.messagegateway.sms.dispatch.OutboundMessageQueue;
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.tenants.domain.Tenant;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * Accepts messages as newline delimited JSON, one message per line. Lines are parsed and validated one at a time and
+ * stored in batches of <code>sms.upload.batchSize</code>, so memory use does not depend on the size of the upload.
+ * Invalid lines are reported and skipped, the other lines are sent. Every batch is committed on its own, so an upload
+ * that breaks off keeps the batches stored before.
+ */
+@Service
+public class SMSMessageUploadService {
+
+	private static final Logger logger = LoggerFactory.getLogger(SMSMessageUploadService.class);
+
+	private final SecurityService securityService ;
+
+	private final OutboundMessageQueue outboundMessageQueue ;
+
+	private final ObjectReader messageReader ;
+
+	private final int batchSize ;
+
+	private final int maxReportedErrors ;
+
+	@Autowired
+	public SMSMessageUploadService(final SecurityService securityService,
+								   final OutboundMessageQueue outboundMessageQueue,
+								   final ObjectMapper objectMapper,
+								   @Value("${sms.upload.batchSize:1000}") final int batchSize,
+								   @Value("${sms.upload.maxReportedErrors:1000}") final int maxReportedErrors) {
+		this.securityService = securityService ;
+		this.outboundMessageQueue = outboundMessageQueue ;
+		this.messageReader = objectMapper.readerFor(SMSMessage.class) ;
+		this.batchSize = batchSize ;
+		this.maxReportedErrors = maxReportedErrors ;
+	}
+
+	public SMSUploadData upload(final String tenantId, final String tenantAppKey, final InputStream body) throws IOException {
+		final Tenant tenant = this.securityService.authenticate(tenantId, tenantAppKey) ;
+		final SMSUploadData result = new SMSUploadData() ;
+		final List<SMSMessage> batch = new ArrayList<>(this.batchSize) ;
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8)) ;
+		long lineNumber = 0 ;
+		String line ;
+		while ((line = reader.readLine()) != null) {
+			lineNumber++ ;
+			if (line.trim().isEmpty()) {
+				continue ;
+			}
+			final List<ApiParameterError> lineErrors = new ArrayList<>() ;
+			final SMSMessage message = parse(line, lineNumber, lineErrors) ;
+			if (message != null) {
+				SMSMessageValidator.validate(message, (int) lineNumber, lineErrors) ;
+			}
+			if (!lineErrors.isEmpty()) {
+				result.rejected(lineNumber, lineErrors, this.maxReportedErrors) ;
+				continue ;
+			}
+			message.setTenant(tenant.getId()) ;
+			batch.add(message) ;
+			if (batch.size() == this.batchSize) {
+				submit(batch, result) ;
+			}
+		}
+		submit(batch, result) ;
+		logger.info("Upload of tenant {} done, {} messages accepted and {} rejected", tenantId, result.getAccepted(),
+				result.getRejected()) ;
+		return result ;
+	}
+
+	private SMSMessage parse(final String line, final long lineNumber, final List<ApiParameterError> lineErrors) {
+		try {
+			return this.messageReader.readValue(line) ;
+		} catch (JsonProcessingException e) {
+			lineErrors.add(ApiParameterError.parameterError("validation.msg.sms.messages.invalid.json",
+					"Line " + lineNumber + " is not a valid message: " + e.getOriginalMessage(), "messages[" + lineNumber + "]")) ;
+			return null ;
+		}
+	}
+
+	private void submit(final List<SMSMessage> batch, final SMSUploadData result) {
+		if (batch.isEmpty()) {
+			return ;
+		}
+		this.outboundMessageQueue.submit(new ArrayList<>(batch)) ;
+		result.accepted(batch.size()) ;
+		batch.clear() ;
+	}
+}
@@ -0,0 +1,46 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.sms.service;
+
+import java.util.List;
+
+import org.fineract.messagegateway.helpers.ApiParameterError;
+import org.fineract.messagegateway.helpers.DataValidatorBuilder;
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+
+/**
+ * Checks the fields a new outbound message needs before it is stored.
+ */
+final class SMSMessageValidator {
+
+	private SMSMessageValidator() {
+	}
+
+	/**
+	 * Adds an error to <code>dataValidationErrors</code> for every missing field of the message at
+	 * <code>index</code>.
+	 */
+	static void validate(final SMSMessage message, final int index, final List<ApiParameterError> dataValidationErrors) {
+		final DataValidatorBuilder baseDataValidator = new DataValidatorBuilder(dataValidationErrors).resource("sms");
+		baseDataValidator.reset().parameter("messages").parameterAtIndexArray("internalId", index).value(message.getInternalId()).notNull();
+		baseDataValidator.reset().parameter("messages").parameterAtIndexArray("mobileNumber", index).value(message.getMobileNumber()).notBlank();
+		baseDataValidator.reset().parameter("messages").parameterAtIndexArray("message", index).value(message.getMessage()).notBlank();
+		baseDataValidator.reset().parameter("messages").parameterAtIndexArray("providerId", index).value(message.getBridgeId()).notNull();
+	}
+}
@@ -1,34 +1,24 @@
 package org.fineract.messagegateway.sms.util;
 
-import org.fineract.messagegateway.sms.domain.SMSMessage;
-import org.fineract.messagegateway.sms.repository.SmsOutboundMessageRepository;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.fineract.messagegateway.sms.data.DeliveryStatusData;
 import org.springframework.context.ApplicationEvent;
 
+/**
+ * Published once the final delivery status of a message is stored. The event carries the stored status, so listeners
+ * do not read the message again.
+ */
 public class CallbackEvent extends ApplicationEvent {
-    private static final Logger logger = LoggerFactory.getLogger(CallbackEvent.class);
-
-    @Autowired
-    private SmsOutboundMessageRepository smsOutboundMessageRepository ;
-    private String messageId;
-    private SMSMessage message;
-
 
+    private final DeliveryStatusData status;
 
     //Constructor's first parameter must be source
-    public CallbackEvent(Object source, SmsOutboundMessageRepository smsOutboundMessageRepository, String messageId)
+    public CallbackEvent(Object source, DeliveryStatusData status)
     {
         super(source);
-        this.smsOutboundMessageRepository = smsOutboundMessageRepository;
-        this.messageId = messageId;
+        this.status = status;
     }
-    public SMSMessage getMessage() {
-        logger.info("Called get message from callback event listener");
-        logger.info("Message id is:" + messageId);
-        message = this.smsOutboundMessageRepository.findByExternalId(messageId);
-        logger.info("Response is:" + message);
-        return message;
+
+    public DeliveryStatusData getStatus() {
+        return status;
     }
 }
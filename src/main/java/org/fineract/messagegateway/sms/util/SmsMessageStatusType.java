@@ -86,4 +86,11 @@ public enum SmsMessageStatusType {
     public String getCode() {
         return this.code;
     }
+
+    /**
+     * @return whether the provider reports no further status after this one
+     **/
+    public boolean isFinal() {
+        return this == DELIVERED || this == FAILED;
+    }
 }
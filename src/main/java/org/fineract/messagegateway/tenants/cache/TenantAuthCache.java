@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.fineract.messagegateway.tenants.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+import org.fineract.messagegateway.tenants.domain.Tenant;
+import org.fineract.messagegateway.tenants.exception.TenantNotFoundException;
+import org.fineract.messagegateway.tenants.repository.TenantRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Authenticates tenants against an in-memory copy of <code>m_tenants</code>. Tenants are cached by tenant id together
+ * with a SHA-256 digest of their app key, and presented keys are compared against that digest in constant time, so a
+ * warm authentication never reaches the database. Unknown tenant ids are remembered for
+ * <code>cache.tenant.negativeTtlSeconds</code> so that repeated attempts with bad credentials are rejected from memory
+ * as well. A tenant without an app key is rejected like a wrong key. Entries are evicted through
+ * {@link #invalidate(String)} whenever a tenant is created or changed.
+ */
+@Component
+public class TenantAuthCache {
+
+	private final TenantRepository tenantRepository;
+
+	private final Cache<String, AuthenticatedTenant> tenants;
+
+	private final Cache<String, Boolean> unknownTenants;
+
+	private final Counter failures;
+
+	@Autowired
+	public TenantAuthCache(final TenantRepository tenantRepository,
+						   final MeterRegistry meterRegistry,
+						   @Value("${cache.tenant.ttlSeconds:300}") final long ttlSeconds,
+						   @Value("${cache.tenant.maxSize:1000}") final long maxSize,
+						   @Value("${cache.tenant.negativeTtlSeconds:30}") final long negativeTtlSeconds,
+						   @Value("${cache.tenant.negativeMaxSize:10000}") final long negativeMaxSize) {
+		this.tenantRepository = tenantRepository;
+		this.tenants = Caffeine.newBuilder()
+				.expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+				.maximumSize(maxSize)
+				.recordStats()
+				.build();
+		this.unknownTenants = Caffeine.newBuilder()
+				.expireAfterWrite(negativeTtlSeconds, TimeUnit.SECONDS)
+				.maximumSize(negativeMaxSize)
+				.recordStats()
+				.build();
+		this.failures = meterRegistry.counter("tenant.authentication.failures");
+		CaffeineCacheMetrics.monitor(meterRegistry, this.tenants, "tenants");
+		CaffeineCacheMetrics.monitor(meterRegistry, this.unknownTenants, "unknownTenants");
+	}
+
+	/**
+	 * @throws TenantNotFoundException when the tenant does not exist or the app key does not match
+	 */
+	public Tenant authenticate(final String tenantId, final String tenantAppKey) {
+		if (tenantId == null || tenantAppKey == null || this.unknownTenants.getIfPresent(tenantId) != null) {
+			throw reject(tenantId, tenantAppKey);
+		}
+		final AuthenticatedTenant cached = this.tenants.get(tenantId, this::load);
+		if (cached == null) {
+			this.unknownTenants.put(tenantId, Boolean.TRUE);
+			throw reject(tenantId, tenantAppKey);
+		}
+		if (cached.appKeyDigest() == null || !MessageDigest.isEqual(cached.appKeyDigest(), digest(tenantAppKey))) {
+			throw reject(tenantId, tenantAppKey);
+		}
+		return cached.tenant();
+	}
+
+	public void invalidate(final String tenantId) {
+		this.tenants.invalidate(tenantId);
+		this.unknownTenants.invalidate(tenantId);
+	}
+
+	private AuthenticatedTenant load(final String tenantId) {
+		final Tenant tenant = this.tenantRepository.findByTenantId(tenantId);
+		if (tenant == null) {
+			return null;
+		}
+		//a tenant without an app key cannot authenticate with any key
+		return new AuthenticatedTenant(tenant, tenant.getTenantAppKey() == null ? null : digest(tenant.getTenantAppKey()));
+	}
+
+	private TenantNotFoundException reject(final String tenantId, final String tenantAppKey) {
+		this.failures.increment();
+		return new TenantNotFoundException(tenantId, tenantAppKey);
+	}
+
+	private static byte[] digest(final String value) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	record AuthenticatedTenant(Tenant tenant, byte[] appKeyDigest) {
+	}
+}
@@ -19,6 +19,7 @@
 package org.fineract.messagegateway.tenants.service;
 
 import org.fineract.messagegateway.service.SecurityService;
+import org.fineract.messagegateway.tenants.cache.TenantAuthCache;
 import org.fineract.messagegateway.tenants.domain.Tenant;
 import org.fineract.messagegateway.tenants.exception.TenantNotFoundException;
 import org.fineract.messagegateway.tenants.repository.TenantRepository;
@@ -33,16 +34,21 @@ public class TenantsService {
 	
 	private final SecurityService securityService ;
 	
+	private final TenantAuthCache tenantAuthCache ;
+	
 	@Autowired
 	public TenantsService(final TenantRepository tenantRepository,
-			@Lazy final SecurityService securityService) {
+			@Lazy final SecurityService securityService,
+			final TenantAuthCache tenantAuthCache) {
 		this.tenantRepository = tenantRepository ;
 		this.securityService = securityService ;
+		this.tenantAuthCache = tenantAuthCache ;
 	}
 	
 	public String createTenant(final Tenant tenant) {
 		tenant.setTenantAppKey(this.securityService.generateApiKey(tenant.getTenantId()));
 		this.tenantRepository.save(tenant) ;
+		this.tenantAuthCache.invalidate(tenant.getTenantId()) ;
 		return tenant.getTenantAppKey() ;
 	}
 	
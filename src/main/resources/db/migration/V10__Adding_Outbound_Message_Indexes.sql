@@ -0,0 +1,27 @@
+--
+-- Licensed to the Apache Software Foundation (ASF) under one
+-- or more contributor license agreements. See the NOTICE file
+-- distributed with this work for additional information
+-- regarding copyright ownership. The ASF licenses this file
+-- to you under the Apache License, Version 2.0 (the
+-- "License"); you may not use this file except in compliance
+-- with the License. You may obtain a copy of the License at
+--
+-- http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing,
+-- software distributed under the License is distributed on an
+-- "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+-- KIND, either express or implied. See the License for the
+-- specific language governing permissions and limitations
+-- under the License.
+--
+
+-- Indexes for the delivery report and status lookups on m_outbound_messages.
+-- (delivery_status, id) serves both the status filter and the id ordered sweep of pending messages,
+-- so it replaces the lease index added with the outbound queue.
+ALTER TABLE m_outbound_messages
+    ADD INDEX IDX_OUTBOUND_EXTERNAL_ID (external_id),
+    ADD INDEX IDX_OUTBOUND_TENANT_INTERNAL_ID (tenant_id, internal_id),
+    ADD INDEX IDX_OUTBOUND_STATUS_ID (delivery_status, id),
+    DROP INDEX IDX_OUTBOUND_STATUS_LEASE;
@@ -0,0 +1,30 @@
+--
+-- Licensed to the Apache Software Foundation (ASF) under one
+-- or more contributor license agreements. See the NOTICE file
+-- distributed with this work for additional information
+-- regarding copyright ownership. The ASF licenses this file
+-- to you under the Apache License, Version 2.0 (the
+-- "License"); you may not use this file except in compliance
+-- with the License. You may obtain a copy of the License at
+--
+-- http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing,
+-- software distributed under the License is distributed on an
+-- "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+-- KIND, either express or implied. See the License for the
+-- specific language governing permissions and limitations
+-- under the License.
+--
+
+-- Id blocks for rows written with multi-row inserts, which cannot use AUTO_INCREMENT and still return the ids.
+-- Once blocks are allocated, rows must no longer be inserted through AUTO_INCREMENT: every explicit id moves the
+-- table's counter past it, so such rows would take ids of the next block. Instances running the previous release
+-- insert that way, so all of them must be stopped before this migration runs; a rolling upgrade is not supported.
+CREATE TABLE m_id_allocator (
+  name                    VARCHAR(64) PRIMARY KEY NOT NULL,
+  next_id                 BIGINT(20)              NOT NULL
+);
+
+INSERT INTO m_id_allocator (name, next_id)
+SELECT 'm_outbound_messages', COALESCE(MAX(id), 0) + 1 FROM m_outbound_messages;
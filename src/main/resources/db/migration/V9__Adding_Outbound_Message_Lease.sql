@@ -0,0 +1,25 @@
+--
+-- Licensed to the Apache Software Foundation (ASF) under one
+-- or more contributor license agreements. See the NOTICE file
+-- distributed with this work for additional information
+-- regarding copyright ownership. The ASF licenses this file
+-- to you under the Apache License, Version 2.0 (the
+-- "License"); you may not use this file except in compliance
+-- with the License. You may obtain a copy of the License at
+--
+-- http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing,
+-- software distributed under the License is distributed on an
+-- "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+-- KIND, either express or implied. See the License for the
+-- specific language governing permissions and limitations
+-- under the License.
+--
+
+-- Lease columns of the outbound dispatch queue
+ALTER TABLE m_outbound_messages
+    ADD COLUMN claim_token VARCHAR(36) NULL DEFAULT NULL,
+    ADD COLUMN lease_expires_at TIMESTAMP NULL DEFAULT NULL,
+    ADD INDEX IDX_OUTBOUND_STATUS_LEASE (delivery_status, lease_expires_at),
+    ADD INDEX IDX_OUTBOUND_CLAIM_TOKEN (claim_token);
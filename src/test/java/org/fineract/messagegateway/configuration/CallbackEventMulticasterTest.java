@@ -0,0 +1,55 @@
+package org.fineract.messagegateway.configuration;
+
+import org.fineract.messagegateway.sms.cache.SMSBridgeInvalidatedEvent;
+import org.fineract.messagegateway.sms.util.CallbackEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link CallbackEventMulticaster}
+ */
+class CallbackEventMulticasterTest {
+
+    private final List<Runnable> queued = new ArrayList<>();
+
+    private final List<ApplicationEvent> received = new ArrayList<>();
+
+    private CallbackEventMulticaster multicaster;
+
+    @BeforeEach
+    void setUp() {
+        multicaster = new CallbackEventMulticaster(queued::add);
+        multicaster.addApplicationListener((ApplicationListener<ApplicationEvent>) received::add);
+    }
+
+    @Test
+    @DisplayName("Test multicastEvent of a delivery callback, should hand it to the executor")
+    void multicastEvent_callback_queuesOnExecutor() {
+        multicaster.multicastEvent(new CallbackEvent(this, null));
+
+        assertTrue(received.isEmpty());
+        assertEquals(1, queued.size());
+        queued.get(0).run();
+        assertEquals(1, received.size());
+    }
+
+    @Test
+    @DisplayName("Test multicastEvent of a bridge invalidation, should deliver it on the publishing thread even if the executor drops events")
+    void multicastEvent_bridgeInvalidated_deliversSynchronously() {
+        SMSBridgeInvalidatedEvent event = new SMSBridgeInvalidatedEvent(this, 1L, 2L);
+
+        multicaster.multicastEvent(event);
+
+        assertTrue(queued.isEmpty());
+        assertEquals(List.of(event), received);
+    }
+}
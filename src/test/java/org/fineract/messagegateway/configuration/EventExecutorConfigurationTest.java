@@ -0,0 +1,87 @@
+package org.fineract.messagegateway.configuration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link EventExecutorConfiguration}
+ */
+class EventExecutorConfigurationTest {
+
+    @Test
+    @DisplayName("Test eventTaskExecutor with a full queue and the discard policy, should drop and count the overflowing events")
+    void eventTaskExecutor_queueFullWithDiscard_dropsAndCountsEvents() throws InterruptedException {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ThreadPoolTaskExecutor executor = executor(EventExecutorConfiguration.DISCARD, meterRegistry);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger ran = new AtomicInteger();
+        try {
+            for (int i = 0; i < 4; i++) {
+                executor.execute(() -> {
+                    awaitQuietly(release);
+                    ran.incrementAndGet();
+                });
+            }
+            release.countDown();
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(executor.getThreadPoolExecutor().awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(2, ran.get());
+        assertEquals(2.0, meterRegistry.get("events.executor.overflow").counter().count());
+        assertEquals(1, meterRegistry.find("executor.pool.size").tag("name", "events").gauges().size());
+    }
+
+    @Test
+    @DisplayName("Test eventTaskExecutor with a full queue and the caller-runs policy, should run the overflowing event on the publisher")
+    void eventTaskExecutor_queueFullWithCallerRuns_runsOnPublisher() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ThreadPoolTaskExecutor executor = executor("caller-runs", meterRegistry);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread publisher = Thread.currentThread();
+        AtomicInteger ranOnPublisher = new AtomicInteger();
+        try {
+            executor.execute(() -> awaitQuietly(release));
+            executor.execute(() -> awaitQuietly(release));
+            executor.execute(() -> {
+                if (Thread.currentThread() == publisher) {
+                    ranOnPublisher.incrementAndGet();
+                }
+            });
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+
+        assertEquals(1, ranOnPublisher.get());
+        assertEquals(1.0, meterRegistry.get("events.executor.overflow").counter().count());
+    }
+
+    private static ThreadPoolTaskExecutor executor(final String overflowPolicy, final MeterRegistry meterRegistry) {
+        EventExecutorConfiguration configuration = new EventExecutorConfiguration();
+        ReflectionTestUtils.setField(configuration, "concurrency", 1);
+        ReflectionTestUtils.setField(configuration, "queueCapacity", 1);
+        ReflectionTestUtils.setField(configuration, "overflowPolicy", overflowPolicy);
+        return configuration.eventTaskExecutor(meterRegistry);
+    }
+
+    private static void awaitQuietly(final CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
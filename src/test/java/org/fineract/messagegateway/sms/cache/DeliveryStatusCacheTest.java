@@ -0,0 +1,70 @@
+package org.fineract.messagegateway.sms.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.fineract.messagegateway.sms.data.DeliveryStatusData;
+import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Unit tests for {@link DeliveryStatusCache}
+ */
+class DeliveryStatusCacheTest {
+
+    private DeliveryStatusCache deliveryStatusCache;
+
+    private List<Collection<Long>> loads;
+
+    @BeforeEach
+    void setUp() {
+        deliveryStatusCache = new DeliveryStatusCache(new SimpleMeterRegistry(), 300, 300, 1_000_000);
+        loads = new ArrayList<>();
+    }
+
+    @Test
+    @DisplayName("Test getAll on partly cached messages, should load only the missing ones and keep the request order")
+    void getAll_partlyCached_loadsMissingOnly() {
+        DeliveryStatusData cached = status("1", SmsMessageStatusType.DELIVERED);
+        DeliveryStatusData loaded = status("2", SmsMessageStatusType.SENT);
+        deliveryStatusCache.put(cached);
+
+        List<DeliveryStatusData> result = deliveryStatusCache.getAll(3L, Arrays.asList(2L, 1L, 9L), ids -> {
+            loads.add(new ArrayList<>(ids));
+            return Collections.singletonList(loaded);
+        });
+
+        assertEquals(Arrays.asList(loaded, cached), result);
+        assertEquals(1, loads.size());
+        assertEquals(2, loads.get(0).size());
+    }
+
+    @Test
+    @DisplayName("Test put of an open status over a final one, should keep the final status")
+    void put_openAfterFinal_keepsFinalStatus() {
+        DeliveryStatusData delivered = status("1", SmsMessageStatusType.DELIVERED);
+        deliveryStatusCache.put(delivered);
+        deliveryStatusCache.put(status("1", SmsMessageStatusType.SENT));
+
+        List<DeliveryStatusData> result = deliveryStatusCache.getAll(3L, Collections.singletonList(1L), ids -> {
+            loads.add(ids);
+            return Collections.emptyList();
+        });
+
+        assertSame(delivered, result.get(0));
+        assertEquals(0, loads.size());
+    }
+
+    private static DeliveryStatusData status(final String internalId, final SmsMessageStatusType status) {
+        return new DeliveryStatusData(internalId, "ext-" + internalId, null, status.getValue(), null, 1L, 3L);
+    }
+}
@@ -0,0 +1,76 @@
+package org.fineract.messagegateway.sms.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.fineract.messagegateway.sms.domain.SMSBridge;
+import org.fineract.messagegateway.sms.repository.SMSBridgeRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link SMSBridgeCache}
+ */
+@ExtendWith(MockitoExtension.class)
+class SMSBridgeCacheTest {
+
+    @Mock
+    private SMSBridgeRepository smsBridgeRepository;
+
+    @Mock
+    private ApplicationEventPublisher publisher;
+
+    private SMSBridgeCache smsBridgeCache;
+
+    @BeforeEach
+    void setUp() {
+        smsBridgeCache = new SMSBridgeCache(smsBridgeRepository, new SimpleMeterRegistry(), publisher, 300, 100);
+    }
+
+    @Test
+    @DisplayName("Test get on a cached bridge, should query the repository once")
+    void get_twice_queriesRepositoryOnce() {
+        SMSBridge bridge = new SMSBridge(1L);
+        when(smsBridgeRepository.findByIdAndTenantId(2L, 1L)).thenReturn(bridge);
+
+        assertSame(bridge, smsBridgeCache.get(2L, 1L));
+        assertSame(bridge, smsBridgeCache.get(2L, 1L));
+
+        verify(smsBridgeRepository, times(1)).findByIdAndTenantId(2L, 1L);
+    }
+
+    @Test
+    @DisplayName("Test get after invalidate, should reload the bridge")
+    void get_afterInvalidate_reloadsBridge() {
+        SMSBridge bridge = new SMSBridge(1L);
+        SMSBridge updatedBridge = new SMSBridge(1L);
+        when(smsBridgeRepository.findByIdAndTenantId(2L, 1L)).thenReturn(bridge, updatedBridge);
+
+        assertSame(bridge, smsBridgeCache.get(2L, 1L));
+        smsBridgeCache.invalidate(1L, 2L);
+        verify(publisher).publishEvent(any(SMSBridgeInvalidatedEvent.class));
+
+        assertSame(updatedBridge, smsBridgeCache.get(2L, 1L));
+    }
+
+    @Test
+    @DisplayName("Test get on an unknown bridge, should not cache the miss")
+    void get_unknownBridge_returnsNull() {
+        when(smsBridgeRepository.findByIdAndTenantId(3L, 1L)).thenReturn(null);
+
+        assertNull(smsBridgeCache.get(3L, 1L));
+        assertNull(smsBridgeCache.get(3L, 1L));
+
+        verify(smsBridgeRepository, times(2)).findByIdAndTenantId(3L, 1L);
+    }
+}
@@ -0,0 +1,196 @@
+package org.fineract.messagegateway.sms.callback;
+
+import com.squareup.okhttp.OkHttpClient;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.fineract.messagegateway.sms.data.DeliveryStatusData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link CallbackForwarder}
+ */
+class CallbackForwarderTest {
+
+    @TempDir
+    Path spoolDir;
+
+    private HttpServer server;
+
+    private final List<String> received = new CopyOnWriteArrayList<>();
+
+    private final AtomicInteger responseCode = new AtomicInteger(200);
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private CallbackForwarder callbackForwarder;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/sms/callback/", exchange -> {
+            String body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            received.add(body);
+            exchange.sendResponseHeaders(body.contains("poison") ? 400 : responseCode.get(), -1);
+            exchange.close();
+        });
+        server.start();
+        callbackForwarder = forwarder(100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    @DisplayName("Test forwardPending, should post the queued statuses as one batch")
+    void forwardPending_queuedStatuses_postedInOneRequest() throws InterruptedException {
+        callbackForwarder.forward(Arrays.asList(status("1"), status("2")));
+        callbackForwarder.forward(Arrays.asList(status("3")));
+
+        callbackForwarder.forwardPending();
+
+        assertEquals(1, received.size());
+        assertTrue(received.get(0).contains("\"id\":\"1\"") && received.get(0).contains("\"id\":\"3\""));
+    }
+
+    @Test
+    @DisplayName("Test forwardPending while the downstream system fails, should spool the batch and send it once it recovers")
+    void forwardPending_downstreamUnavailable_spoolsAndReplays() throws InterruptedException, IOException {
+        responseCode.set(503);
+        callbackForwarder.forward(Arrays.asList(status("1"), status("2")));
+
+        callbackForwarder.forwardPending();
+
+        assertEquals(2, received.size());
+        assertEquals(1, spooledFiles());
+
+        responseCode.set(200);
+        Thread.sleep(60);
+        callbackForwarder.forwardPending();
+
+        assertEquals(3, received.size());
+        assertEquals(received.get(0), received.get(2));
+        assertEquals(0, spooledFiles());
+    }
+
+    @Test
+    @DisplayName("Test forwardPending with spooled batches left, should replay them before the new batch")
+    void forwardPending_spoolNotEmpty_replaysBeforeNewBatch() throws InterruptedException {
+        responseCode.set(503);
+        callbackForwarder.forward(Arrays.asList(status("1")));
+        callbackForwarder.forwardPending();
+        responseCode.set(200);
+        Thread.sleep(60);
+
+        callbackForwarder.forward(Arrays.asList(status("2")));
+        callbackForwarder.forwardPending();
+
+        assertEquals(4, received.size());
+        assertTrue(received.get(2).contains("\"id\":\"1\""));
+        assertTrue(received.get(3).contains("\"id\":\"2\""));
+    }
+
+    @Test
+    @DisplayName("Test forwardPending with more spooled batches than one round replays, should spool the new batch behind them")
+    void forwardPending_spoolLeftAfterRound_spoolsNewBatchBehind() throws InterruptedException, IOException {
+        for (int i = 1; i <= 10; i++) {
+            Files.write(spoolDir.resolve(String.format("%013d-%06d-1.json", i, i)),
+                    ("[{\"id\":\"old-" + i + "\"}]").getBytes(StandardCharsets.UTF_8));
+        }
+        callbackForwarder.forward(Arrays.asList(status("new")));
+
+        callbackForwarder.forwardPending();
+
+        assertEquals(10, received.size());
+        assertEquals(1, spooledFiles());
+
+        callbackForwarder.forwardPending();
+
+        assertEquals(11, received.size());
+        assertTrue(received.get(10).contains("\"id\":\"new\""));
+        assertEquals(0, spooledFiles());
+    }
+
+    @Test
+    @DisplayName("Test forwardPending with a batch the downstream system refuses, should drop it once and keep forwarding later batches")
+    void forwardPending_batchRefused_dropsItAndForwardsLaterBatches() throws InterruptedException {
+        callbackForwarder.forward(Arrays.asList(status("poison")));
+        callbackForwarder.forwardPending();
+
+        callbackForwarder.forward(Arrays.asList(status("2")));
+        callbackForwarder.forwardPending();
+
+        assertEquals(2, received.size());
+        assertTrue(received.get(1).contains("\"id\":\"2\""));
+        assertEquals(1.0, meterRegistry.get("callbacks.forward.rejected").counter().count());
+    }
+
+    @Test
+    @DisplayName("Test forwardPending with a spooled batch the downstream system refuses, should remove it and send the new batch")
+    void forwardPending_spooledBatchRefused_removesItAndForwards() throws InterruptedException, IOException {
+        Files.write(spoolDir.resolve("0000000000001-000001-1.json"),
+                "[{\"id\":\"poison\"}]".getBytes(StandardCharsets.UTF_8));
+        callbackForwarder.forward(Arrays.asList(status("2")));
+
+        callbackForwarder.forwardPending();
+
+        assertEquals(2, received.size());
+        assertTrue(received.get(1).contains("\"id\":\"2\""));
+        assertEquals(0, spooledFiles());
+    }
+
+    @Test
+    @DisplayName("Test forwardPending with a full spool, should drop and count the batches that do not fit")
+    void forwardPending_spoolFull_dropsBatches() throws InterruptedException, IOException {
+        callbackForwarder = forwarder(1);
+        responseCode.set(503);
+        callbackForwarder.forward(Arrays.asList(status("1")));
+        callbackForwarder.forwardPending();
+
+        callbackForwarder.forward(Arrays.asList(status("2")));
+        callbackForwarder.forwardPending();
+
+        assertEquals(1, spooledFiles());
+        assertEquals(1.0, meterRegistry.get("callbacks.forward.dropped").counter().count());
+    }
+
+    private CallbackForwarder forwarder(final int maxSpoolFiles) {
+        meterRegistry = new SimpleMeterRegistry();
+        return new CallbackForwarder(new OkHttpClient(), meterRegistry, "http", "127.0.0.1",
+                server.getAddress().getPort(), 500, 10, 1000, 2, 50, 50, spoolDir.toString(), maxSpoolFiles);
+    }
+
+    private long spooledFiles() throws IOException {
+        try (Stream<Path> files = Files.list(spoolDir)) {
+            return files.count();
+        }
+    }
+
+    private static DeliveryStatusData status(final String id) {
+        return new DeliveryStatusData(id, "ext-" + id, null, 300, null, 1L, 1L);
+    }
+}
@@ -0,0 +1,164 @@
+package org.fineract.messagegateway.sms.callback;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.fineract.messagegateway.sms.data.DeliveryStatusData;
+import org.fineract.messagegateway.sms.repository.OutboundMessageWriter;
+import org.fineract.messagegateway.sms.service.SMSMessageService;
+import org.fineract.messagegateway.sms.util.CallbackEvent;
+import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link DeliveryReportBuffer}
+ */
+@ExtendWith(MockitoExtension.class)
+class DeliveryReportBufferTest {
+
+    @Mock
+    private DataSource dataSource;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PreparedStatement statement;
+
+    @Mock
+    private SMSMessageService smsMessageService;
+
+    @Mock
+    private ApplicationEventPublisher publisher;
+
+    @Mock
+    private PreparedStatement refusedStatement;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private DeliveryReportBuffer deliveryReportBuffer;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        meterRegistry = new SimpleMeterRegistry();
+        deliveryReportBuffer = new DeliveryReportBuffer(dataSource, smsMessageService, publisher, meterRegistry);
+        ReflectionTestUtils.setField(deliveryReportBuffer, "batchSize", 500);
+        ReflectionTestUtils.setField(deliveryReportBuffer, "maxSize", 1000);
+        ReflectionTestUtils.setField(deliveryReportBuffer, "maxAttempts", 3);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+    }
+
+    @Test
+    @DisplayName("Test flush of several reports for one message, should store one update that keeps the final status and its date")
+    void flush_reportsForSameMessage_mergedIntoOneUpdate() throws SQLException {
+        when(statement.executeUpdate()).thenReturn(1);
+        deliveryReportBuffer.report(7L, new DeliveryReport(SmsMessageStatusType.SENT, null));
+        deliveryReportBuffer.report(7L, new DeliveryReport(SmsMessageStatusType.DELIVERED, null));
+        deliveryReportBuffer.report(7L, new DeliveryReport(SmsMessageStatusType.SENT, null));
+
+        assertEquals(1, deliveryReportBuffer.flush());
+
+        assertEquals(0, deliveryReportBuffer.depth());
+        verify(connection).prepareStatement("update m_outbound_messages set delivery_status = case id when ? then ?"
+                + " else delivery_status end, delivered_on_date = case id when ? then ? else delivered_on_date end"
+                + " where id in (?)");
+        verify(statement).setObject(1, 7L);
+        verify(statement).setObject(2, SmsMessageStatusType.DELIVERED.getValue());
+    }
+
+    @Test
+    @DisplayName("Test flush of a final report by external id, should publish the stored status after storing it")
+    void flush_finalReportByExternalId_publishesCallbackAfterUpdate() throws SQLException {
+        when(statement.executeUpdate()).thenReturn(1);
+        DeliveryStatusData stored = new DeliveryStatusData("12", "ext-1", null, SmsMessageStatusType.FAILED.getValue(),
+                "Rejected", 1L, 3L);
+        doAnswer(invocation -> {
+            Consumer<DeliveryStatusData> consumer = invocation.getArgument(1);
+            consumer.accept(stored);
+            return null;
+        }).when(smsMessageService).forEachDeliveryStatusByExternalId(eq(Collections.singletonList("ext-1")), any());
+        deliveryReportBuffer.reportByExternalId("ext-1", new DeliveryReport(SmsMessageStatusType.FAILED, "Rejected"));
+
+        deliveryReportBuffer.flush();
+
+        verify(connection).prepareStatement("update m_outbound_messages set delivery_status = case external_id when ? then ?"
+                + " else delivery_status end, delivery_error_message = case external_id when ? then ? else delivery_error_message end"
+                + " where external_id in (?)");
+        ArgumentCaptor<CallbackEvent> event = ArgumentCaptor.forClass(CallbackEvent.class);
+        InOrder inOrder = inOrder(statement, publisher);
+        inOrder.verify(statement).executeUpdate();
+        inOrder.verify(publisher).publishEvent(event.capture());
+        assertSame(stored, event.getValue().getStatus());
+    }
+
+    @Test
+    @DisplayName("Test flush of an error message longer than its column, should store it truncated to the column width")
+    void flush_longErrorMessage_truncated() throws SQLException {
+        when(statement.executeUpdate()).thenReturn(1);
+        deliveryReportBuffer.report(7L, new DeliveryReport(SmsMessageStatusType.FAILED, "x".repeat(600)));
+
+        deliveryReportBuffer.flush();
+
+        verify(statement).setString(4, "x".repeat(OutboundMessageWriter.ERROR_MESSAGE_LENGTH));
+    }
+
+    @Test
+    @DisplayName("Test flush of a batch with a report the database refuses, should store the others and drop it after maxAttempts flushes")
+    void flush_refusedReport_isolatedAndDropped() throws SQLException {
+        when(statement.executeUpdate()).thenReturn(1);
+        when(connection.prepareStatement(argThat(sql -> sql.contains("delivery_error_message")))).thenReturn(refusedStatement);
+        when(refusedStatement.executeUpdate()).thenThrow(new SQLException("Incorrect string value", "22007"));
+        deliveryReportBuffer.report(1L, new DeliveryReport(SmsMessageStatusType.DELIVERED, null));
+        deliveryReportBuffer.report(2L, new DeliveryReport(SmsMessageStatusType.FAILED, "bad"));
+
+        assertEquals(1, deliveryReportBuffer.flush());
+        assertEquals(1, deliveryReportBuffer.depth());
+        assertEquals(0, deliveryReportBuffer.flush());
+        assertEquals(1, deliveryReportBuffer.depth());
+        assertEquals(0, deliveryReportBuffer.flush());
+
+        assertEquals(0, deliveryReportBuffer.depth());
+        assertEquals(1.0, meterRegistry.get("callbacks.buffer.dropped").counter().count());
+    }
+
+    @Test
+    @DisplayName("Test flush while the database is unavailable, should keep the whole batch for the next flush")
+    void flush_databaseUnavailable_keepsBatch() throws SQLException {
+        when(statement.executeUpdate()).thenThrow(new SQLException("Communications link failure", "08S01"));
+        deliveryReportBuffer.report(1L, new DeliveryReport(SmsMessageStatusType.DELIVERED, null));
+        deliveryReportBuffer.report(2L, new DeliveryReport(SmsMessageStatusType.DELIVERED, null));
+
+        assertThrows(DataAccessResourceFailureException.class, () -> deliveryReportBuffer.flush());
+
+        assertEquals(2, deliveryReportBuffer.depth());
+        assertEquals(0.0, meterRegistry.get("callbacks.buffer.dropped").counter().count());
+    }
+}
@@ -0,0 +1,98 @@
+package org.fineract.messagegateway.sms.dispatch;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.fineract.messagegateway.constants.MessageGatewayConstants;
+import org.fineract.messagegateway.sms.cache.SMSBridgeCache;
+import org.fineract.messagegateway.sms.domain.Country;
+import org.fineract.messagegateway.sms.domain.SMSBridge;
+import org.fineract.messagegateway.sms.domain.SMSBridgeConfig;
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.sms.repository.SMSBridgeRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link BridgeRouter}
+ */
+@ExtendWith(MockitoExtension.class)
+class BridgeRouterTest {
+
+    private static final Country KENYA = new Country(3L, "KE", "Kenya");
+
+    @Mock
+    private SMSBridgeCache smsBridgeCache;
+
+    @Mock
+    private SMSBridgeRepository smsBridgeRepository;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private BridgeCircuitBreakers bridgeCircuitBreakers;
+
+    private BridgeRouter bridgeRouter;
+
+    @BeforeEach
+    void setUp() {
+        bridgeCircuitBreakers = new BridgeCircuitBreakers(meterRegistry, 50, 10, 100, 10_000, 30_000, 1);
+        bridgeRouter = new BridgeRouter(smsBridgeCache, smsBridgeRepository, bridgeCircuitBreakers,
+                new BridgeHealth(meterRegistry, 60, 10), meterRegistry, 300, 20, 5000, () -> 0d);
+    }
+
+    @Test
+    @DisplayName("Test route with the circuit of the bridge open, should fail the messages over to the healthy bridge of the country")
+    void route_primaryCircuitOpen_failsOverToSecondary() {
+        SMSBridge primary = bridge(1L, KENYA, "1");
+        SMSBridge secondary = bridge(2L, KENYA, "1");
+        when(smsBridgeCache.get(1L, 3L)).thenReturn(primary);
+        when(smsBridgeCache.get(2L, 3L)).thenReturn(secondary);
+        when(smsBridgeRepository.findByTenantIdAndCountryName(3L, "Kenya")).thenReturn(Arrays.asList(primary, secondary));
+        bridgeCircuitBreakers.record(1L, 0, 10, 0L);
+        List<SMSMessage> messages = Arrays.asList(message(1L), message(1L));
+
+        bridgeRouter.route(messages);
+
+        assertEquals(2L, messages.get(0).getBridgeId());
+        assertEquals(2L, messages.get(1).getBridgeId());
+        assertEquals(2d, meterRegistry.get("dispatch.routing.decisions").tag("from", "1").tag("to", "2")
+                .tag("reason", "failover").counter().count());
+    }
+
+    @Test
+    @DisplayName("Test route of a bridge without a routing weight, should keep the messages on it")
+    void route_bridgeWithoutWeight_keepsBridge() {
+        when(smsBridgeCache.get(1L, 3L)).thenReturn(bridge(1L, KENYA, null));
+        List<SMSMessage> messages = Arrays.asList(message(1L));
+
+        bridgeRouter.route(messages);
+
+        assertEquals(1L, messages.get(0).getBridgeId());
+        verifyNoInteractions(smsBridgeRepository);
+    }
+
+    private static SMSBridge bridge(final Long id, final Country country, final String weight) {
+        SMSBridge bridge = new SMSBridge(3L);
+        ReflectionTestUtils.setField(bridge, "id", id);
+        bridge.country = country;
+        if (weight != null) {
+            bridge.bridgeConfigurations.add(new SMSBridgeConfig(MessageGatewayConstants.ROUTING_WEIGHT, weight));
+        }
+        return bridge;
+    }
+
+    private static SMSMessage message(final Long bridgeId) {
+        return SMSMessage.getPendingMessages(null, 1L, 3L, new Date(), null, null, null, "254700000001", "hello", bridgeId);
+    }
+}
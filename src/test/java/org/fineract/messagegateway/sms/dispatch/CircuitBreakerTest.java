@@ -0,0 +1,88 @@
+package org.fineract.messagegateway.sms.dispatch;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link CircuitBreaker}
+ */
+class CircuitBreakerTest {
+
+    private final AtomicLong clock = new AtomicLong(1_000_000L);
+
+    private CircuitBreaker circuitBreaker;
+
+    @BeforeEach
+    void setUp() {
+        circuitBreaker = new CircuitBreaker(50, 10, 100, 30_000, 1, clock::get);
+    }
+
+    @Test
+    @DisplayName("Test record with half of the sends failed, should open and reject sends until the probe")
+    void record_failureRateReached_opensCircuit() {
+        circuitBreaker.record(6, 3);
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+
+        circuitBreaker.record(0, 3);
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertEquals(0, circuitBreaker.acquire());
+        assertEquals(1_030_000L, circuitBreaker.getOpenUntil());
+    }
+
+    @Test
+    @DisplayName("Test acquire after the open time, should let one probe through and close when it succeeds")
+    void acquire_afterOpenTime_probesAndCloses() {
+        circuitBreaker.record(0, 10);
+        clock.addAndGet(30_000);
+
+        assertEquals(1, circuitBreaker.acquire());
+        assertEquals(0, circuitBreaker.acquire());
+        circuitBreaker.record(1, 0);
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertEquals(Integer.MAX_VALUE, circuitBreaker.acquire());
+    }
+
+    @Test
+    @DisplayName("Test a failed probe, should open the circuit again")
+    void record_failedProbe_reopensCircuit() {
+        circuitBreaker.record(0, 10);
+        clock.addAndGet(30_000);
+        circuitBreaker.acquire();
+
+        circuitBreaker.record(0, 1);
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertEquals(0, circuitBreaker.acquire());
+    }
+
+    @Test
+    @DisplayName("Test a send rejected while the probe is out, should be retried when the probe is replaced, not at the past end of the open time")
+    void getRetryAt_rejectedWhileHalfOpen_returnsProbeReplacement() {
+        circuitBreaker.record(0, 10);
+        clock.addAndGet(30_000);
+        assertEquals(1, circuitBreaker.acquire());
+        clock.addAndGet(5_000);
+
+        assertEquals(0, circuitBreaker.acquire());
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        assertEquals(1_060_000L, circuitBreaker.getRetryAt());
+        assertTrue(circuitBreaker.getRetryAt() > clock.get());
+    }
+
+    @Test
+    @DisplayName("Test getRetryAt of an open circuit, should return the end of the open time")
+    void getRetryAt_open_returnsOpenUntil() {
+        circuitBreaker.record(0, 10);
+
+        assertEquals(1_030_000L, circuitBreaker.getRetryAt());
+    }
+}
@@ -0,0 +1,170 @@
+package org.fineract.messagegateway.sms.dispatch;
+
+import org.fineract.messagegateway.constants.MessageGatewayConstants;
+import org.fineract.messagegateway.sms.cache.DeliveryStatusCache;
+import org.fineract.messagegateway.sms.cache.SMSBridgeCache;
+import org.fineract.messagegateway.sms.domain.SMSBridge;
+import org.fineract.messagegateway.sms.domain.SMSBridgeConfig;
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.sms.providers.SMSProviderFactory;
+import org.fineract.messagegateway.sms.repository.OutboundMessageWriter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link MessageDispatcher}
+ */
+@ExtendWith(MockitoExtension.class)
+class MessageDispatcherTest {
+
+    @Mock
+    private SMSBridgeCache smsBridgeCache;
+
+    @Mock
+    private SMSProviderFactory smsProviderFactory;
+
+    @Mock
+    private OutboundMessageWriter outboundMessageWriter;
+
+    @Mock
+    private DeliveryStatusCache deliveryStatusCache;
+
+    @Mock
+    private RetryScheduler retryScheduler;
+
+    @Mock
+    private BridgeRouter bridgeRouter;
+
+    private MessageDispatcher messageDispatcher;
+
+    @BeforeEach
+    void setUp() {
+        messageDispatcher = new MessageDispatcher(smsBridgeCache, smsProviderFactory, outboundMessageWriter,
+                deliveryStatusCache, retryScheduler, bridgeRouter);
+        ReflectionTestUtils.setField(messageDispatcher, "executionModeName", "platform");
+        ReflectionTestUtils.setField(messageDispatcher, "platformConcurrency", 4);
+        ReflectionTestUtils.setField(messageDispatcher, "chunkSize", 2);
+        messageDispatcher.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        messageDispatcher.shutdown();
+    }
+
+    @Test
+    @DisplayName("Test dispatch of messages of two bridges, should send them in chunks of chunkSize on one lane per bridge")
+    void dispatch_twoBridges_chunksPerLane() {
+        List<SMSMessage> messages = new ArrayList<>();
+        for (long i = 0; i < 5; i++) {
+            messages.add(message(1L));
+        }
+        messages.add(message(2L));
+
+        messageDispatcher.dispatch(messages);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<SMSMessage>> chunks = ArgumentCaptor.forClass(Collection.class);
+        verify(smsProviderFactory, timeout(5000).times(4)).sendShortMessage(chunks.capture());
+        List<Integer> sizes = new ArrayList<>();
+        for (Collection<SMSMessage> chunk : chunks.getAllValues()) {
+            Set<Long> bridgeIds = new HashSet<>();
+            chunk.forEach(message -> bridgeIds.add(message.getBridgeId()));
+            assertEquals(1, bridgeIds.size());
+            sizes.add(chunk.size());
+        }
+        sizes.sort(null);
+        assertEquals(List.of(1, 1, 2, 2), sizes);
+        Map<Long, BridgeLane> lanes = lanes();
+        assertEquals(Set.of(1L, 2L), lanes.keySet());
+    }
+
+    @Test
+    @DisplayName("Test dispatch of a chunk whose send throws, should still release its messages from the in flight count")
+    void dispatch_chunkThrows_releasesInFlight() throws InterruptedException {
+        doThrow(new IllegalStateException("provider exploded")).when(smsProviderFactory).sendShortMessage(any(Collection.class));
+
+        messageDispatcher.dispatch(List.of(message(1L), message(1L), message(1L)));
+
+        verify(retryScheduler, timeout(5000).times(2)).cancel(any());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (messageDispatcher.getInFlight() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, messageDispatcher.getInFlight());
+    }
+
+    @Test
+    @DisplayName("Test dispatch of a chunk with a row claimed by another dispatcher, should only cache and schedule the stored messages")
+    void dispatch_rowClaimedElsewhere_skipsItsOutcome() {
+        SMSMessage ours = message(1L);
+        SMSMessage lost = message(1L);
+        ours.lease("claim-1", new Date());
+        lost.lease("claim-1", new Date());
+        when(retryScheduler.prepare(any())).thenReturn(List.of(ours, lost));
+        when(outboundMessageWriter.updateClaimed(any(), eq(List.of("claim-1", "claim-1")))).thenReturn(List.of(ours));
+
+        messageDispatcher.dispatch(List.of(ours, lost));
+
+        verify(retryScheduler, timeout(5000)).cancel(List.of(lost));
+        verify(retryScheduler).schedule(List.of(ours));
+        verify(deliveryStatusCache).putAll(List.of(ours));
+        assertEquals(0, messageDispatcher.getClaimTokens().size());
+    }
+
+    @Test
+    @DisplayName("Test resolveConcurrency of an ordered bridge, should pin the lane to one worker")
+    void resolveConcurrency_orderedBridge_returnsOne() {
+        SMSBridge bridge = bridge(MessageGatewayConstants.DISPATCH_ORDERED, "true");
+        bridge.bridgeConfigurations.add(new SMSBridgeConfig(MessageGatewayConstants.DISPATCH_CONCURRENCY, "8"));
+
+        assertEquals(1, messageDispatcher.resolveConcurrency(bridge));
+    }
+
+    @Test
+    @DisplayName("Test resolveConcurrency with a missing or invalid concurrency, should use the default")
+    void resolveConcurrency_missingOrInvalid_returnsDefault() {
+        assertEquals(4, messageDispatcher.resolveConcurrency(null));
+        assertEquals(4, messageDispatcher.resolveConcurrency(new SMSBridge(3L)));
+        assertEquals(4, messageDispatcher.resolveConcurrency(bridge(MessageGatewayConstants.DISPATCH_CONCURRENCY, "many")));
+        assertEquals(8, messageDispatcher.resolveConcurrency(bridge(MessageGatewayConstants.DISPATCH_CONCURRENCY, " 8 ")));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Long, BridgeLane> lanes() {
+        return (Map<Long, BridgeLane>) ReflectionTestUtils.getField(messageDispatcher, "lanes");
+    }
+
+    private static SMSBridge bridge(final String configName, final String configValue) {
+        SMSBridge bridge = new SMSBridge(3L);
+        bridge.bridgeConfigurations.add(new SMSBridgeConfig(configName, configValue));
+        return bridge;
+    }
+
+    private static SMSMessage message(final Long bridgeId) {
+        return SMSMessage.getPendingMessages(null, 1L, 3L, new Date(), null, null, null, "254700000001", "hello", bridgeId);
+    }
+}
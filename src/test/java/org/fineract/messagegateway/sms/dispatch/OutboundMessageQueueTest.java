@@ -0,0 +1,201 @@
+package org.fineract.messagegateway.sms.dispatch;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.sms.repository.OutboundMessageWriter;
+import org.fineract.messagegateway.sms.repository.SmsOutboundMessageRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link OutboundMessageQueue}
+ */
+@ExtendWith(MockitoExtension.class)
+class OutboundMessageQueueTest {
+
+    @Mock
+    private SmsOutboundMessageRepository smsOutboundMessageRepository;
+
+    @Mock
+    private OutboundMessageWriter outboundMessageWriter;
+
+    @Mock
+    private MessageDispatcher messageDispatcher;
+
+    @Mock
+    private DataSource dataSource;
+
+    private OutboundMessageQueue outboundMessageQueue;
+
+    @BeforeEach
+    void setUp() {
+        outboundMessageQueue = new OutboundMessageQueue(smsOutboundMessageRepository, outboundMessageWriter,
+                messageDispatcher, dataSource, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(outboundMessageQueue, "maxInFlight", 100);
+    }
+
+    @Test
+    @DisplayName("Test submit, should lease the messages to one claim before storing and dispatching them")
+    void submit_leasesStoresAndDispatches() {
+        SMSMessage first = SMSMessage.getPendingMessages(null, 1L, 1L, new Date(), null, null, null, "254700000001", "hello", 1L);
+        SMSMessage second = SMSMessage.getPendingMessages(null, 2L, 1L, new Date(), null, null, null, "254700000002", "hello", 1L);
+        List<SMSMessage> messages = Arrays.asList(first, second);
+
+        outboundMessageQueue.submit(messages);
+
+        assertNotNull(first.getClaimToken());
+        assertEquals(first.getClaimToken(), second.getClaimToken());
+        assertTrue(first.getLeaseExpiresAt().after(new Date(System.currentTimeMillis() - 1000)));
+        InOrder inOrder = inOrder(outboundMessageWriter, messageDispatcher);
+        inOrder.verify(outboundMessageWriter).insert(messages);
+        inOrder.verify(messageDispatcher).dispatch(messages);
+    }
+
+    @Test
+    @DisplayName("Test submit while the lanes are full, should store the messages without a lease and not dispatch them")
+    void submit_lanesFull_storesForNextSweep() {
+        SMSMessage message = SMSMessage.getPendingMessages(null, 1L, 1L, new Date(), null, null, null, "254700000001", "hello", 1L);
+        List<SMSMessage> messages = Arrays.asList(message);
+        when(messageDispatcher.getInFlight()).thenReturn(100);
+
+        outboundMessageQueue.submit(messages);
+
+        assertNull(message.getClaimToken());
+        verify(outboundMessageWriter).insert(messages);
+        verify(messageDispatcher, never()).dispatch(messages);
+    }
+
+    @Test
+    @DisplayName("Test renewLeases, should extend the leases of the claims the dispatcher still holds")
+    void renewLeases_claimsHeld_extendsLeases() {
+        List<String> claimTokens = List.of("claim-1", "claim-2");
+        when(messageDispatcher.getClaimTokens()).thenReturn(claimTokens);
+        when(outboundMessageWriter.renewLeases(eq(claimTokens), any(Date.class))).thenReturn(3);
+
+        assertEquals(3, outboundMessageQueue.renewLeases());
+    }
+
+    @Test
+    @DisplayName("Test renewLeases without claims, should not touch the database")
+    void renewLeases_noClaims_skipsWriter() {
+        when(messageDispatcher.getClaimTokens()).thenReturn(List.of());
+
+        assertEquals(0, outboundMessageQueue.renewLeases());
+        verify(outboundMessageWriter, never()).renewLeases(any(), any());
+    }
+
+    @Test
+    @DisplayName("Test reclaim of a backlog larger than a batch, should claim batches after the last claimed id until one comes back short")
+    void reclaim_backlog_advancesLastIdUntilShortBatch() {
+        ReflectionTestUtils.setField(outboundMessageQueue, "claimSize", 2);
+        ClaimingJdbcTemplate jdbcTemplate = claimingJdbcTemplate(2, 1);
+        when(smsOutboundMessageRepository.findByClaimToken(anyString()))
+                .thenReturn(List.of(claimedMessage(7L), claimedMessage(5L)), List.of(claimedMessage(9L)));
+
+        assertEquals(3, outboundMessageQueue.reclaim());
+
+        ArgumentCaptor<String> claimTokens = ArgumentCaptor.forClass(String.class);
+        verify(smsOutboundMessageRepository, times(2)).findByClaimToken(claimTokens.capture());
+        assertEquals(jdbcTemplate.claimTokens, claimTokens.getAllValues());
+        assertEquals(List.of(0L, 7L), jdbcTemplate.lastIds);
+        assertEquals(List.of(2, 2), jdbcTemplate.limits);
+        verify(messageDispatcher, times(2)).dispatch(any());
+    }
+
+    @Test
+    @DisplayName("Test reclaim with messages in flight, should claim at most the room left below maxInFlight and stop once the lanes are full")
+    void reclaim_messagesInFlight_stopsAtMaxInFlight() {
+        ReflectionTestUtils.setField(outboundMessageQueue, "claimSize", 50);
+        ClaimingJdbcTemplate jdbcTemplate = claimingJdbcTemplate(20, 20);
+        when(messageDispatcher.getInFlight()).thenReturn(80, 100);
+        when(smsOutboundMessageRepository.findByClaimToken(anyString())).thenReturn(List.of(claimedMessage(1L)));
+
+        assertEquals(1, outboundMessageQueue.reclaim());
+
+        assertEquals(List.of(20), jdbcTemplate.limits);
+        verify(messageDispatcher).dispatch(any());
+    }
+
+    @Test
+    @DisplayName("Test reclaim without expired messages, should claim once and dispatch nothing")
+    void reclaim_nothingExpired_dispatchesNothing() {
+        ReflectionTestUtils.setField(outboundMessageQueue, "claimSize", 50);
+        ClaimingJdbcTemplate jdbcTemplate = claimingJdbcTemplate(0);
+
+        assertEquals(0, outboundMessageQueue.reclaim());
+
+        assertEquals(List.of(50), jdbcTemplate.limits);
+        verify(smsOutboundMessageRepository, never()).findByClaimToken(any());
+        verify(messageDispatcher, never()).dispatch(any());
+    }
+
+    private ClaimingJdbcTemplate claimingJdbcTemplate(final int... claims) {
+        ClaimingJdbcTemplate jdbcTemplate = new ClaimingJdbcTemplate(claims);
+        ReflectionTestUtils.setField(outboundMessageQueue, "jdbcTemplate", jdbcTemplate);
+        return jdbcTemplate;
+    }
+
+    private static SMSMessage claimedMessage(final Long id) {
+        SMSMessage message = SMSMessage.getPendingMessages(null, 1L, 1L, new Date(), null, null, null, "254700000001", "hello", 1L);
+        message.assignId(id);
+        return message;
+    }
+
+    /**
+     * Stands in for the claim update, answering each batch with the next claimed count and recording its arguments
+     */
+    private static class ClaimingJdbcTemplate extends JdbcTemplate {
+
+        private final int[] claims;
+
+        private final List<String> claimTokens = new ArrayList<>();
+
+        private final List<Long> lastIds = new ArrayList<>();
+
+        private final List<Integer> limits = new ArrayList<>();
+
+        ClaimingJdbcTemplate(final int... claims) {
+            this.claims = claims;
+        }
+
+        @Override
+        public int update(final String sql, final Object... args) {
+            claimTokens.add((String) args[0]);
+            lastIds.add((Long) args[5]);
+            limits.add((Integer) args[6]);
+            return claims[claimTokens.size() - 1];
+        }
+
+        @Override
+        public <T> T queryForObject(final String sql, final Class<T> requiredType, final Object... args) {
+            return requiredType.cast(0L);
+        }
+    }
+}
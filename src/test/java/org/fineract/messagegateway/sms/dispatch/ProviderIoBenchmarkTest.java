@@ -0,0 +1,118 @@
+package org.fineract.messagegateway.sms.dispatch;
+
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.sun.net.httpserver.HttpServer;
+import org.fineract.messagegateway.sms.dispatch.DispatchThreads.ExecutionMode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Throughput of blocking provider calls on a {@link BridgeLane} against a local stub provider that answers after
+ * a fixed latency. Run with <code>./gradlew benchmark</code>; the results are written to the test log.
+ *
+ * Platform lanes are capped at {@value #PLATFORM_POOL_LIMIT} workers, as a realistic pool size, while virtual lanes
+ * get one worker per in-flight send.
+ */
+@Tag("benchmark")
+class ProviderIoBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProviderIoBenchmarkTest.class);
+
+    private static final long STUB_LATENCY_MILLIS = 50L;
+
+    private static final int PLATFORM_POOL_LIMIT = 200;
+
+    private HttpServer server;
+
+    private ExecutorService serverExecutor;
+
+    private String url;
+
+    static Stream<Arguments> scenarios() {
+        return Stream.of(1, 100, 10_000)
+                .flatMap(sends -> Stream.of(Arguments.of(sends, ExecutionMode.PLATFORM), Arguments.of(sends, ExecutionMode.VIRTUAL)));
+    }
+
+    @BeforeEach
+    void startStubProvider() throws IOException {
+        byte[] body = "{\"status\":\"queued\"}".getBytes(StandardCharsets.UTF_8);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 10_000);
+        server.createContext("/send", exchange -> {
+            try {
+                Thread.sleep(STUB_LATENCY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        serverExecutor = Executors.newCachedThreadPool(DispatchThreads.factory(ExecutionMode.VIRTUAL, "stub-provider-"));
+        server.setExecutor(serverExecutor);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/send";
+    }
+
+    @AfterEach
+    void stopStubProvider() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @ParameterizedTest(name = "{0} concurrent sends on {1} threads")
+    @MethodSource("scenarios")
+    void throughput(final int concurrentSends, final ExecutionMode mode) throws InterruptedException {
+        assumeTrue(mode == ExecutionMode.PLATFORM || DispatchThreads.virtualThreadsSupported(), "Virtual threads need Java 21");
+
+        OkHttpClient client = new OkHttpClient();
+        int concurrency = mode == ExecutionMode.VIRTUAL ? concurrentSends : Math.min(concurrentSends, PLATFORM_POOL_LIMIT);
+        BridgeLane lane = new BridgeLane(1L, concurrency, DispatchThreads.factory(mode, "benchmark-"));
+        CountDownLatch completed = new CountDownLatch(concurrentSends);
+        AtomicInteger failures = new AtomicInteger();
+
+        long started = System.nanoTime();
+        for (int i = 0; i < concurrentSends; i++) {
+            lane.execute(() -> {
+                try {
+                    Response response = client.newCall(new Request.Builder().url(url).build()).execute();
+                    response.body().string();
+                } catch (IOException e) {
+                    failures.incrementAndGet();
+                } finally {
+                    completed.countDown();
+                }
+            });
+        }
+        assertTrue(completed.await(10, TimeUnit.MINUTES), "Sends did not complete in time");
+        long elapsedNanos = System.nanoTime() - started;
+        lane.shutdown(1, TimeUnit.MINUTES);
+
+        double seconds = elapsedNanos / 1_000_000_000d;
+        logger.info("{} sends on {} lane with {} workers: {} ms, {} sends/s, {} failed", concurrentSends, mode, concurrency,
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos), String.format("%.1f", concurrentSends / seconds), failures.get());
+    }
+}
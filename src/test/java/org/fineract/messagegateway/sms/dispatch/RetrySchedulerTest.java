@@ -0,0 +1,78 @@
+package org.fineract.messagegateway.sms.dispatch;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link RetryScheduler}
+ */
+class RetrySchedulerTest {
+
+    private RetryScheduler retryScheduler;
+
+    @BeforeEach
+    void setUp() {
+        retryScheduler = new RetryScheduler(new SimpleMeterRegistry(), 3, 1000, 60000, 1, 300);
+    }
+
+    @Test
+    @DisplayName("Test prepare, should hold pending messages within the bridge budget and leave the others to the sweep")
+    void prepare_pendingMessages_schedulesWithinBudget() {
+        SMSMessage sent = message();
+        sent.setDeliveryStatus(SmsMessageStatusType.SENT.getValue());
+        SMSMessage first = message();
+        SMSMessage second = message();
+        long before = System.currentTimeMillis();
+
+        List<SMSMessage> held = retryScheduler.prepare(Arrays.asList(sent, first, second));
+
+        assertEquals(Arrays.asList(first), held);
+        assertEquals(0, sent.getAttemptCount());
+        assertEquals(1, first.getAttemptCount());
+        long delay = first.getNextAttemptAt().getTime() - before;
+        assertTrue(delay >= 500 && delay <= 1100, "delay " + delay);
+        assertEquals(first.getNextAttemptAt().getTime() + 300_000, first.getLeaseExpiresAt().getTime());
+        assertEquals(1, second.getAttemptCount());
+        assertNull(second.getLeaseExpiresAt());
+    }
+
+    @Test
+    @DisplayName("Test prepare on the last attempt, should fail the message")
+    void prepare_lastAttempt_failsMessage() {
+        SMSMessage message = message();
+        message.setDeliveryErrorMessage("timeout");
+        ReflectionTestUtils.setField(message, "attemptCount", 2);
+
+        List<SMSMessage> held = retryScheduler.prepare(Arrays.asList(message));
+
+        assertTrue(held.isEmpty());
+        assertEquals(SmsMessageStatusType.FAILED.getValue(), message.getDeliveryStatus());
+        assertEquals("Failed after 3 attempts: timeout", message.getDeliveryErrorMessage());
+    }
+
+    @Test
+    @DisplayName("Test delayMs, should double per attempt up to the maximum delay")
+    void delayMs_growsExponentiallyUpToMaximum() {
+        long third = retryScheduler.delayMs(3);
+        assertTrue(third >= 2000 && third <= 4000, "third " + third);
+        long capped = retryScheduler.delayMs(20);
+        assertTrue(capped >= 30000 && capped <= 60000, "capped " + capped);
+    }
+
+    private static SMSMessage message() {
+        return SMSMessage.getPendingMessages(null, 1L, 1L, new Date(), null, null, null, "254700000000", "hello", 1L);
+    }
+}
@@ -0,0 +1,52 @@
+package org.fineract.messagegateway.sms.dispatch;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link TokenBucket}
+ */
+class TokenBucketTest {
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.SECONDS.toNanos(100));
+
+    private TokenBucket tokenBucket;
+
+    @BeforeEach
+    void setUp() {
+        tokenBucket = new TokenBucket(10, 10, 1, 0.5, 1, clock::get);
+    }
+
+    @Test
+    @DisplayName("Test reserve beyond the burst, should make the caller wait until the debt is refilled")
+    void reserve_beyondBurst_returnsWait() {
+        assertEquals(0L, tokenBucket.reserve(10));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), tokenBucket.reserve(5));
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+
+        assertEquals(0d, tokenBucket.available(), 0.001);
+    }
+
+    @Test
+    @DisplayName("Test throttled, should halve the rate once per second and recover it linearly")
+    void throttled_twice_lowersRateOnceAndRecovers() {
+        assertTrue(tokenBucket.throttled());
+        assertFalse(tokenBucket.throttled());
+        assertEquals(5d, tokenBucket.rate(), 0.001);
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        assertEquals(7d, tokenBucket.rate(), 0.001);
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertEquals(10d, tokenBucket.rate(), 0.001);
+    }
+}
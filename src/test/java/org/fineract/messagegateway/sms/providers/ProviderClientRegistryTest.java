@@ -0,0 +1,88 @@
+package org.fineract.messagegateway.sms.providers;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.fineract.messagegateway.constants.MessageGatewayConstants;
+import org.fineract.messagegateway.sms.cache.SMSBridgeInvalidatedEvent;
+import org.fineract.messagegateway.sms.domain.SMSBridge;
+import org.fineract.messagegateway.sms.domain.SMSBridgeConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Unit tests for {@link ProviderClientRegistry}
+ */
+class ProviderClientRegistryTest {
+
+    private final AtomicInteger created = new AtomicInteger();
+
+    private ProviderClientRegistry registry;
+
+    private SMSBridge bridge;
+
+    @BeforeEach
+    void setUp() {
+        registry = new ProviderClientRegistry(new SimpleMeterRegistry(), 100);
+        bridge = new SMSBridge(1L);
+        ReflectionTestUtils.setField(bridge, "id", 7L);
+        bridge.setModifiedOnDate(new Date(1000L));
+    }
+
+    @Test
+    @DisplayName("Test compiled for the same bridge version, should reuse the client")
+    void compiled_sameVersion_reusesClient() {
+        String first = registry.context(bridge).compiled(String.class, this::newClient);
+        String second = registry.context(bridge).compiled(String.class, this::newClient);
+
+        assertEquals(first, second);
+        assertEquals(1, created.get());
+    }
+
+    @Test
+    @DisplayName("Test compiled after the bridge was modified, should build a new client")
+    void compiled_modifiedBridge_rebuildsClient() {
+        String first = registry.context(bridge).compiled(String.class, this::newClient);
+        bridge.setModifiedOnDate(new Date(2000L));
+
+        String second = registry.context(bridge).compiled(String.class, this::newClient);
+
+        assertNotEquals(first, second);
+    }
+
+    @Test
+    @DisplayName("Test compiled after the bridge was invalidated, should build a new client")
+    void compiled_afterInvalidation_rebuildsClient() {
+        registry.context(bridge).compiled(String.class, this::newClient);
+
+        registry.onApplicationEvent(new SMSBridgeInvalidatedEvent(this, 1L, 7L));
+        registry.context(bridge).compiled(String.class, this::newClient);
+
+        assertEquals(2, created.get());
+    }
+
+    @Test
+    @DisplayName("Test context, should expose the bridge configuration and prefix numbers with the country code")
+    void context_configuredBridge_compilesConfiguration() {
+        bridge.setCountryCode("+254");
+        bridge.bridgeConfigurations.add(new SMSBridgeConfig(MessageGatewayConstants.PROVIDER_URL, "https://old.example.com"));
+        bridge.bridgeConfigurations.add(new SMSBridgeConfig(MessageGatewayConstants.PROVIDER_URL, "https://sms.example.com"));
+
+        BridgeSendContext context = registry.context(bridge);
+
+        assertEquals("https://sms.example.com", context.getProviderUrl());
+        assertEquals("+254700000001", context.internationalNumber("700000001"));
+        assertSame(context, registry.context(bridge));
+    }
+
+    private String newClient(BridgeSendContext context) {
+        return "client-" + created.incrementAndGet();
+    }
+}
@@ -0,0 +1,51 @@
+package org.fineract.messagegateway.sms.providers;
+
+import org.fineract.messagegateway.exception.MessageGatewayException;
+import org.fineract.messagegateway.sms.domain.SMSBridge;
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Unit tests for the default {@link SMSProvider#sendMessages}
+ */
+class SMSProviderTest {
+
+    private final SMSProvider provider = new SMSProvider() {
+        @Override
+        public void sendMessage(SMSBridge smsBridgeConfig, SMSMessage message) throws MessageGatewayException {
+            if ("fail".equals(message.getMessage())) {
+                throw new MessageGatewayException("Rejected by provider");
+            }
+            message.setDeliveryStatus(SmsMessageStatusType.SENT.getValue());
+        }
+
+        @Override
+        public void updateStatusByMessageId(SMSBridge bridge, String externalId) {
+        }
+    };
+
+    @Test
+    @DisplayName("Test sendMessages with a failing message, should send the others and mark only it as failed")
+    void sendMessages_oneFailure_marksOnlyThatMessage() throws MessageGatewayException {
+        SMSMessage first = message("hello");
+        SMSMessage failing = message("fail");
+        SMSMessage last = message("bye");
+
+        provider.sendMessages(new SMSBridge(1L), Arrays.asList(first, failing, last));
+
+        assertEquals(SmsMessageStatusType.SENT.getValue(), first.getDeliveryStatus());
+        assertEquals(SmsMessageStatusType.FAILED.getValue(), failing.getDeliveryStatus());
+        assertEquals(SmsMessageStatusType.SENT.getValue(), last.getDeliveryStatus());
+    }
+
+    private SMSMessage message(String text) {
+        return SMSMessage.getPendingMessages(null, 1L, 1L, new Date(), null, null, null, "254700000000", text, 1L);
+    }
+}
@@ -0,0 +1,99 @@
+package org.fineract.messagegateway.sms.repository;
+
+import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that the hot lookups on m_outbound_messages are served by the indexes of the Flyway migrations. Seeds a
+ * MySQL container with {@value #ROWS} messages and inspects the query plans. Needs Docker, run with
+ * <code>./gradlew integrationTest</code>.
+ */
+@Tag("integration")
+@Testcontainers
+class OutboundMessageIndexIntegrationTest {
+
+    private static final int ROWS = 200_000;
+
+    private static final int INSERT_BATCH = 1_000;
+
+    private static final String DELIVERY_STATUS_SQL = "select internal_id, external_id, delivered_on_date, delivery_status,"
+            + " delivery_error_message, sms_bridge_id, tenant_id from m_outbound_messages m";
+
+    @Container
+    private static final MySQLContainer<?> mysql = new MySQLContainer<>(DockerImageName.parse("mysql:5.7"));
+
+    private static JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    static void migrateAndSeed() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(mysql.getJdbcUrl(), mysql.getUsername(),
+                mysql.getPassword());
+        Flyway.configure().dataSource(dataSource).load().migrate();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+
+        for (int from = 0; from < ROWS; from += INSERT_BATCH) {
+            StringBuilder sql = new StringBuilder("insert into m_outbound_messages (tenant_id, external_id, internal_id,"
+                    + " sms_bridge_id, mobile_number, delivery_status, message) values ");
+            List<Object> params = new ArrayList<>();
+            for (int i = from; i < from + INSERT_BATCH; i++) {
+                sql.append(i == from ? "" : ",").append("(?, ?, ?, 1, '254700000000', ?, 'Seeded message')");
+                params.add(String.valueOf(i % 20 + 1));
+                params.add("ext-" + i);
+                params.add(String.valueOf(i));
+                // about one message in a hundred is still pending, as in production
+                params.add(i % 100 == 0 ? SmsMessageStatusType.PENDING.getValue() : SmsMessageStatusType.DELIVERED.getValue());
+            }
+            jdbcTemplate.update(sql.toString(), params.toArray());
+        }
+        jdbcTemplate.execute("analyze table m_outbound_messages");
+    }
+
+    @Test
+    @DisplayName("Test delivery report lookup by external id, should use the external id index")
+    void externalIdLookup_usesIndex() {
+        assertEquals("IDX_OUTBOUND_EXTERNAL_ID",
+                indexUsedBy(DELIVERY_STATUS_SQL + " where m.external_id=?", "ext-4242"));
+        assertEquals("IDX_OUTBOUND_EXTERNAL_ID",
+                indexUsedBy("select * from m_outbound_messages where external_id = ?", "ext-4242"));
+    }
+
+    @Test
+    @DisplayName("Test delivery status lookup by tenant and internal ids, should use the tenant internal id index")
+    void tenantInternalIdLookup_usesIndex() {
+        assertEquals("IDX_OUTBOUND_TENANT_INTERNAL_ID",
+                indexUsedBy(DELIVERY_STATUS_SQL + " where m.tenant_id=? and m.internal_id in (?,?,?)",
+                        "3", "42", "62", "1002"));
+    }
+
+    @Test
+    @DisplayName("Test pending message lookups, should use the status index")
+    void deliveryStatusLookup_usesIndex() {
+        assertEquals("IDX_OUTBOUND_STATUS_ID",
+                indexUsedBy("select * from m_outbound_messages where delivery_status = ? limit 200",
+                        SmsMessageStatusType.PENDING.getValue()));
+        assertEquals("IDX_OUTBOUND_STATUS_ID",
+                indexUsedBy("select id from m_outbound_messages where delivery_status = ? and id > ? order by id limit 500",
+                        SmsMessageStatusType.PENDING.getValue(), 0L));
+    }
+
+    private String indexUsedBy(String sql, Object... params) {
+        List<Map<String, Object>> plan = jdbcTemplate.queryForList("explain " + sql, params);
+        return (String) plan.get(0).get("key");
+    }
+}
@@ -0,0 +1,122 @@
+package org.fineract.messagegateway.sms.repository;
+
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Accept latency of the {@link OutboundMessageWriter} by request size, against a MySQL container. Up to
+ * {@value #ROW_BY_ROW_LIMIT} messages the same request is also written one row at a time with generated keys, the way
+ * JPA writes <code>AUTO_INCREMENT</code> entities. Needs Docker, run with <code>./gradlew benchmark</code>; the results
+ * are written to the test log.
+ */
+@Tag("benchmark")
+@Testcontainers
+class OutboundMessageWriterBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboundMessageWriterBenchmarkTest.class);
+
+    private static final int ROW_BY_ROW_LIMIT = 10_000;
+
+    @Container
+    private static final MySQLContainer<?> mysql = new MySQLContainer<>(DockerImageName.parse("mysql:5.7"));
+
+    private static DriverManagerDataSource dataSource;
+
+    private static JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    static void migrate() {
+        dataSource = new DriverManagerDataSource(mysql.getJdbcUrl(), mysql.getUsername(), mysql.getPassword());
+        Flyway.configure().dataSource(dataSource).load().migrate();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @ParameterizedTest(name = "{0} messages per request")
+    @ValueSource(ints = {1, 100, 1_000, 10_000, 100_000})
+    void acceptLatency(final int size) {
+        OutboundMessageWriter writer = new OutboundMessageWriter(dataSource, new DataSourceTransactionManager(dataSource), 500);
+        List<SMSMessage> messages = messages(size);
+        long before = count();
+
+        long started = System.nanoTime();
+        writer.insert(messages);
+        long elapsedNanos = System.nanoTime() - started;
+
+        assertEquals(before + size, count());
+        assertEquals(size - 1, messages.get(size - 1).getId() - messages.get(0).getId());
+        report("multi-row insert", size, elapsedNanos);
+
+        if (size <= ROW_BY_ROW_LIMIT) {
+            report("row by row insert", size, insertRowByRow(messages(size)));
+        }
+    }
+
+    private static long insertRowByRow(final List<SMSMessage> messages) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        long started = System.nanoTime();
+        transactionTemplate.executeWithoutResult(status -> {
+            for (SMSMessage message : messages) {
+                GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
+                jdbcTemplate.update(connection -> {
+                    PreparedStatement statement = connection.prepareStatement("insert into m_outbound_messages"
+                            + " (tenant_id, internal_id, sms_bridge_id, mobile_number, delivery_status, message)"
+                            + " values (?, ?, ?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS);
+                    statement.setLong(1, message.getTenantId());
+                    statement.setLong(2, message.getInternalId());
+                    statement.setLong(3, message.getBridgeId());
+                    statement.setString(4, message.getMobileNumber());
+                    statement.setInt(5, message.getDeliveryStatus());
+                    statement.setString(6, message.getMessage());
+                    return statement;
+                }, keyHolder);
+                message.assignId(keyHolder.getKey().longValue());
+            }
+        });
+        return System.nanoTime() - started;
+    }
+
+    private static List<SMSMessage> messages(final int size) {
+        List<SMSMessage> messages = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            SMSMessage message = SMSMessage.getPendingMessages(null, (long) i, 1L, new Date(), null, null, null,
+                    "254700000000", "Benchmark message", 1L);
+            message.lease("benchmark", new Date());
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    private static long count() {
+        return jdbcTemplate.queryForObject("select count(*) from m_outbound_messages", Long.class);
+    }
+
+    private static void report(final String mode, final int size, final long elapsedNanos) {
+        double seconds = elapsedNanos / 1_000_000_000d;
+        logger.info("{} of {} messages: {} ms, {} messages/s", mode, size, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                String.format("%.1f", size / seconds));
+    }
+}
@@ -0,0 +1,82 @@
+package org.fineract.messagegateway.sms.repository;
+
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the claim fence of {@link OutboundMessageWriter#updateClaimed} against a MySQL container whose driver
+ * rewrites batches, and so reports no count per row. Needs Docker, run with <code>./gradlew integrationTest</code>.
+ */
+@Tag("integration")
+@Testcontainers
+class OutboundMessageWriterIntegrationTest {
+
+    @Container
+    private static final MySQLContainer<?> mysql = new MySQLContainer<>(DockerImageName.parse("mysql:5.7"))
+            .withUrlParam("rewriteBatchedStatements", "true");
+
+    private static JdbcTemplate jdbcTemplate;
+
+    private static OutboundMessageWriter writer;
+
+    @BeforeAll
+    static void migrate() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(mysql.getJdbcUrl(), mysql.getUsername(),
+                mysql.getPassword());
+        Flyway.configure().dataSource(dataSource).load().migrate();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        writer = new OutboundMessageWriter(dataSource, new DataSourceTransactionManager(dataSource), 500);
+    }
+
+    @Test
+    @DisplayName("Test updateClaimed of a row claimed by another dispatcher, should only store the rows still claimed by the token")
+    void updateClaimed_rowClaimedElsewhere_skipsIt() {
+        SMSMessage ours = message("254700000001");
+        SMSMessage lost = message("254700000002");
+        List<SMSMessage> messages = Arrays.asList(ours, lost);
+        writer.insert(messages);
+        jdbcTemplate.update("update m_outbound_messages set claim_token = 'claim-2' where id = ?", lost.getId());
+        for (SMSMessage message : messages) {
+            message.setDeliveryStatus(SmsMessageStatusType.SENT.getValue());
+            message.releaseClaim();
+        }
+
+        List<SMSMessage> stored = writer.updateClaimed(messages, Arrays.asList("claim-1", "claim-1"));
+
+        assertEquals(List.of(ours), stored);
+        assertEquals(SmsMessageStatusType.SENT.getValue(), status(ours));
+        assertEquals(SmsMessageStatusType.PENDING.getValue(), status(lost));
+        assertEquals("claim-2", jdbcTemplate.queryForObject("select claim_token from m_outbound_messages where id = ?",
+                String.class, lost.getId()));
+    }
+
+    private static Integer status(final SMSMessage message) {
+        return jdbcTemplate.queryForObject("select delivery_status from m_outbound_messages where id = ?", Integer.class,
+                message.getId());
+    }
+
+    private static SMSMessage message(final String mobileNumber) {
+        SMSMessage message = SMSMessage.getPendingMessages(null, 1L, 1L, new Date(), null, null, null, mobileNumber,
+                "hello", 1L);
+        message.lease("claim-1", new Date(System.currentTimeMillis() + 60_000));
+        return message;
+    }
+}
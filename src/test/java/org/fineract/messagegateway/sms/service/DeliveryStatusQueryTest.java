@@ -0,0 +1,88 @@
+package org.fineract.messagegateway.sms.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link DeliveryStatusQuery}
+ */
+class DeliveryStatusQueryTest {
+
+    private final RecordingJdbcTemplate jdbcTemplate = new RecordingJdbcTemplate();
+
+    private final DeliveryStatusQuery deliveryStatusQuery = new DeliveryStatusQuery(jdbcTemplate);
+
+    @Test
+    @DisplayName("Test a small id list, should pad it to the next IN list size with the last id")
+    void forEachByInternalIds_smallList_padsToBucket() {
+        deliveryStatusQuery.forEachByInternalIds(7L, Arrays.asList(1L, 2L, 3L, 3L, 4L), data -> { });
+
+        assertEquals(1, jdbcTemplate.queries.size());
+        assertEquals(8, placeholders(jdbcTemplate.queries.get(0)));
+        assertArrayEquals(new Object[] {"7", "1", "2", "3", "4", "4", "4", "4", "4"}, jdbcTemplate.params.get(0));
+    }
+
+    @Test
+    @DisplayName("Test a large id list, should query it in chunks of the largest IN list size")
+    void forEachByInternalIds_largeList_queriesInChunks() {
+        List<Long> ids = LongStream.rangeClosed(1, 600).boxed().collect(Collectors.toList());
+
+        deliveryStatusQuery.forEachByInternalIds(7L, ids, data -> { });
+
+        assertEquals(2, jdbcTemplate.queries.size());
+        assertEquals(512, placeholders(jdbcTemplate.queries.get(0)));
+        assertEquals(512, placeholders(jdbcTemplate.queries.get(1)));
+        assertEquals("513", jdbcTemplate.params.get(1)[1]);
+        assertEquals("600", jdbcTemplate.params.get(1)[512]);
+    }
+
+    @Test
+    @DisplayName("Test an empty id list, should not query")
+    void forEachByInternalIds_emptyList_doesNotQuery() {
+        deliveryStatusQuery.forEachByInternalIds(7L, new ArrayList<>(), data -> { });
+
+        assertTrue(jdbcTemplate.queries.isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test an external id list, should query by external id without a tenant parameter")
+    void forEachByExternalIds_list_queriesByExternalId() {
+        deliveryStatusQuery.forEachByExternalIds(Arrays.asList("ext-1", "ext-2"), data -> { });
+
+        assertEquals(1, jdbcTemplate.queries.size());
+        assertTrue(jdbcTemplate.queries.get(0).contains("where m.external_id in (?,?,?,?,?,?,?,?)"));
+        assertArrayEquals(new Object[] {"ext-1", "ext-2", "ext-2", "ext-2", "ext-2", "ext-2", "ext-2", "ext-2"},
+                jdbcTemplate.params.get(0));
+    }
+
+    private long placeholders(String sql) {
+        String inList = sql.substring(sql.indexOf("in ("));
+        return inList.chars().filter(c -> c == '?').count();
+    }
+
+    private static class RecordingJdbcTemplate extends JdbcTemplate {
+
+        final List<String> queries = new ArrayList<>();
+
+        final List<Object[]> params = new ArrayList<>();
+
+        @Override
+        public void query(String sql, RowCallbackHandler rch, Object... args) throws DataAccessException {
+            queries.add(sql);
+            params.add(args);
+        }
+    }
+}
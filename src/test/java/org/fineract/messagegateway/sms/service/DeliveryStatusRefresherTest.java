@@ -0,0 +1,112 @@
+package org.fineract.messagegateway.sms.service;
+
+import org.fineract.messagegateway.exception.MessageGatewayException;
+import org.fineract.messagegateway.sms.cache.SMSBridgeCache;
+import org.fineract.messagegateway.sms.data.DeliveryStatusData;
+import org.fineract.messagegateway.sms.domain.SMSBridge;
+import org.fineract.messagegateway.sms.exception.ProviderNotDefinedException;
+import org.fineract.messagegateway.sms.providers.SMSProvider;
+import org.fineract.messagegateway.sms.providers.SMSProviderFactory;
+import org.fineract.messagegateway.sms.util.SmsMessageStatusType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link DeliveryStatusRefresher}
+ */
+@ExtendWith(MockitoExtension.class)
+class DeliveryStatusRefresherTest {
+
+    @Mock
+    private SMSMessageService smsMessageService;
+
+    @Mock
+    private SMSBridgeCache smsBridgeCache;
+
+    @Mock
+    private SMSProviderFactory smsProviderFactory;
+
+    @Mock
+    private SMSProvider provider;
+
+    private DeliveryStatusRefresher refresher;
+
+    @BeforeEach
+    void setUp() {
+        refresher = new DeliveryStatusRefresher(smsMessageService, smsBridgeCache, smsProviderFactory, 2, 5000, 50);
+    }
+
+    @AfterEach
+    void tearDown() {
+        refresher.shutdown();
+    }
+
+    @Test
+    @DisplayName("Test refresh with open messages, should refresh them in one bulk call and merge the new statuses")
+    @SuppressWarnings("unchecked")
+    void refresh_openMessages_refreshesInBulkAndMerges() throws ProviderNotDefinedException, MessageGatewayException {
+        SMSBridge bridge = mock(SMSBridge.class);
+        when(smsBridgeCache.get(1L, 7L)).thenReturn(bridge);
+        when(smsProviderFactory.getSMSProvider(bridge)).thenReturn(provider);
+        when(provider.supportsStatusQuery()).thenReturn(true);
+        DeliveryStatusData refreshed = status("2", "ext-2", SmsMessageStatusType.DELIVERED);
+        doAnswer(invocation -> {
+            invocation.getArgument(3, Consumer.class).accept(refreshed);
+            return null;
+        }).when(smsMessageService).forEachDeliveryStatus(eq("tenant"), eq("key"), anyCollection(), any(Consumer.class));
+        DeliveryStatusData delivered = status("1", "ext-1", SmsMessageStatusType.DELIVERED);
+        List<DeliveryStatusData> statuses = Arrays.asList(delivered,
+                status("2", "ext-2", SmsMessageStatusType.WAITING_FOR_REPORT),
+                status("3", "ext-3", SmsMessageStatusType.SENT));
+
+        List<DeliveryStatusData> result = new ArrayList<>(refresher.refresh("tenant", "key", statuses));
+
+        verify(provider).updateStatusByMessageIds(bridge, Arrays.asList("ext-2", "ext-3"));
+        assertEquals(3, result.size());
+        assertSame(delivered, result.get(0));
+        assertSame(refreshed, result.get(1));
+        assertEquals("3", result.get(2).getId());
+    }
+
+    @Test
+    @DisplayName("Test refresh for a provider without status queries, should return the statuses as they are")
+    void refresh_providerWithoutStatusQuery_returnsStatuses() throws ProviderNotDefinedException, MessageGatewayException {
+        SMSBridge bridge = mock(SMSBridge.class);
+        when(smsBridgeCache.get(1L, 7L)).thenReturn(bridge);
+        when(smsProviderFactory.getSMSProvider(bridge)).thenReturn(provider);
+        when(provider.supportsStatusQuery()).thenReturn(false);
+        Collection<DeliveryStatusData> statuses = Arrays.asList(status("2", "ext-2", SmsMessageStatusType.SENT));
+
+        assertSame(statuses, refresher.refresh("tenant", "key", statuses));
+
+        verify(provider, never()).updateStatusByMessageIds(any(), anyCollection());
+        verifyNoInteractions(smsMessageService);
+    }
+
+    private DeliveryStatusData status(String internalId, String externalId, SmsMessageStatusType status) {
+        return new DeliveryStatusData(internalId, externalId, null, status.getValue(), null, 1L, 7L);
+    }
+}
@@ -3,6 +3,7 @@ package org.fineract.messagegateway.sms.service;
 import org.fineract.messagegateway.exception.PlatformApiDataValidationException;
 import org.fineract.messagegateway.helpers.ApiParameterError;
 import org.fineract.messagegateway.service.SecurityService;
+import org.fineract.messagegateway.sms.cache.SMSBridgeCache;
 import org.fineract.messagegateway.sms.domain.Country;
 import org.fineract.messagegateway.sms.domain.SMSBridge;
 import org.fineract.messagegateway.sms.exception.CountryNotFoundException;
@@ -53,6 +54,8 @@ class SMSBridgeServiceTest {
     @Mock
     private CountryService countryService;
 
+    @Mock
+    private SMSBridgeCache smsBridgeCache;
 
     private SMSBridgeService smsBridgeService;
 
@@ -61,7 +64,7 @@ class SMSBridgeServiceTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
-        smsBridgeService = new SMSBridgeService(smsBridgeRepository, smsBridgeSerializer, securityService,countryService );
+        smsBridgeService = new SMSBridgeService(smsBridgeRepository, smsBridgeSerializer, securityService, countryService, smsBridgeCache);
     }
 
     @Test
@@ -154,6 +157,7 @@ class SMSBridgeServiceTest {
         smsBridgeService.updateSmsBridge(tenantId, tenantAppKey, bridgeId, json);
 
         verify(smsBridgeRepository).save(bridge);
+        verify(smsBridgeCache).invalidate(tenant.getId(), bridgeId);
     }
 
     @Test
@@ -242,6 +246,7 @@ class SMSBridgeServiceTest {
         assertNotNull(deletedBridgeId);
         assertEquals(bridgeId, deletedBridgeId);
         verify(smsBridgeRepository).delete(bridge);
+        verify(smsBridgeCache).invalidate(tenant.getId(), bridgeId);
     }
 
     @Test
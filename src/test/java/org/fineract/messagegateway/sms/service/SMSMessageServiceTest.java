@@ -0,0 +1,93 @@
+package org.fineract.messagegateway.sms.service;
+
+import org.fineract.messagegateway.exception.PlatformApiDataValidationException;
+import org.fineract.messagegateway.service.SecurityService;
+import org.fineract.messagegateway.sms.cache.DeliveryStatusCache;
+import org.fineract.messagegateway.sms.dispatch.OutboundMessageQueue;
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.tenants.domain.Tenant;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link SMSMessageService}
+ */
+@ExtendWith(MockitoExtension.class)
+class SMSMessageServiceTest {
+
+    @Mock
+    private DataSource dataSource;
+
+    @Mock
+    private SecurityService securityService;
+
+    @Mock
+    private OutboundMessageQueue outboundMessageQueue;
+
+    @Mock
+    private DeliveryStatusCache deliveryStatusCache;
+
+    private SMSMessageService smsMessageService;
+
+    @BeforeEach
+    void setUp() {
+        smsMessageService = new SMSMessageService(dataSource, securityService, outboundMessageQueue, deliveryStatusCache);
+        Tenant tenant = new Tenant("tenant", "key", "Test tenant");
+        ReflectionTestUtils.setField(tenant, "id", 3L);
+        when(securityService.authenticate("tenant", "key")).thenReturn(tenant);
+    }
+
+    @Test
+    @DisplayName("Test sendShortMessage, should submit the messages for the tenant and return their ids in order")
+    void sendShortMessage_validMessages_returnsAssignedIds() {
+        SMSMessage first = message(1L, "254700000001");
+        SMSMessage second = message(2L, "254700000002");
+        doAnswer(invocation -> {
+            List<SMSMessage> messages = invocation.getArgument(0);
+            for (int i = 0; i < messages.size(); i++) {
+                messages.get(i).assignId(100L + i);
+            }
+            return null;
+        }).when(outboundMessageQueue).submit(any());
+
+        List<Long> ids = smsMessageService.sendShortMessage("tenant", "key", Arrays.asList(first, second));
+
+        assertEquals(Arrays.asList(100L, 101L), ids);
+        assertEquals(3L, first.getTenantId());
+        assertEquals(3L, second.getTenantId());
+    }
+
+    @Test
+    @DisplayName("Test sendShortMessage with a blank mobile number, should reject the request before storing anything")
+    void sendShortMessage_blankMobileNumber_throwsValidationException() {
+        List<SMSMessage> messages = Arrays.asList(message(1L, "254700000001"), message(2L, " "));
+
+        PlatformApiDataValidationException exception = assertThrows(PlatformApiDataValidationException.class,
+                () -> smsMessageService.sendShortMessage("tenant", "key", messages));
+
+        assertEquals(1, exception.getErrors().size());
+        assertEquals("messages[1][mobileNumber]", exception.getErrors().get(0).getParameterName());
+        verifyNoInteractions(outboundMessageQueue);
+    }
+
+    private static SMSMessage message(final Long internalId, final String mobileNumber) {
+        return SMSMessage.getPendingMessages(null, internalId, null, new Date(), null, null, null, mobileNumber, "hello", 1L);
+    }
+}
@@ -0,0 +1,83 @@
+package org.fineract.messagegateway.sms.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.fineract.messagegateway.service.SecurityService;
+import org.fineract.messagegateway.sms.data.SMSUploadData;
+import org.fineract.messagegateway.sms.dispatch.OutboundMessageQueue;
+import org.fineract.messagegateway.sms.domain.SMSMessage;
+import org.fineract.messagegateway.tenants.domain.Tenant;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link SMSMessageUploadService}
+ */
+@ExtendWith(MockitoExtension.class)
+class SMSMessageUploadServiceTest {
+
+    @Mock
+    private SecurityService securityService;
+
+    @Mock
+    private OutboundMessageQueue outboundMessageQueue;
+
+    @Captor
+    private ArgumentCaptor<List<SMSMessage>> batches;
+
+    private SMSMessageUploadService smsMessageUploadService;
+
+    @BeforeEach
+    void setUp() {
+        smsMessageUploadService = new SMSMessageUploadService(securityService, outboundMessageQueue, new ObjectMapper(), 2, 10);
+        Tenant tenant = new Tenant("tenant", "key", "Test tenant");
+        ReflectionTestUtils.setField(tenant, "id", 3L);
+        when(securityService.authenticate("tenant", "key")).thenReturn(tenant);
+    }
+
+    @Test
+    @DisplayName("Test upload, should store valid lines in batches and report the invalid lines")
+    void upload_mixedLines_storesValidLinesInBatches() throws IOException {
+        String body = line(1, "254700000001") + "\n"
+                + "{not json\n"
+                + line(2, "254700000002") + "\n"
+                + "\n"
+                + line(3, "") + "\n"
+                + line(4, "254700000004") + "\n";
+
+        SMSUploadData result = smsMessageUploadService.upload("tenant", "key",
+                new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(3, result.getAccepted());
+        assertEquals(2, result.getRejected());
+        assertEquals(2, result.getErrors().get(0).getLine());
+        assertEquals(5, result.getErrors().get(1).getLine());
+        assertEquals("messages[5][mobileNumber]", result.getErrors().get(1).getErrors().get(0).getParameterName());
+        verify(outboundMessageQueue, times(2)).submit(batches.capture());
+        assertEquals(2, batches.getAllValues().get(0).size());
+        assertEquals(1, batches.getAllValues().get(1).size());
+        assertEquals(3L, batches.getAllValues().get(1).get(0).getTenantId());
+        assertEquals(4L, batches.getAllValues().get(1).get(0).getInternalId());
+    }
+
+    private static String line(final long internalId, final String mobileNumber) {
+        return "{\"internalId\":" + internalId + ",\"mobileNumber\":\"" + mobileNumber
+                + "\",\"message\":\"hello\",\"providerId\":1}";
+    }
+}
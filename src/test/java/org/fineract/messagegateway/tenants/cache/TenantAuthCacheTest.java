@@ -0,0 +1,83 @@
+package org.fineract.messagegateway.tenants.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.fineract.messagegateway.tenants.domain.Tenant;
+import org.fineract.messagegateway.tenants.exception.TenantNotFoundException;
+import org.fineract.messagegateway.tenants.repository.TenantRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link TenantAuthCache}
+ */
+@ExtendWith(MockitoExtension.class)
+class TenantAuthCacheTest {
+
+    @Mock
+    private TenantRepository tenantRepository;
+
+    private TenantAuthCache tenantAuthCache;
+
+    @BeforeEach
+    void setUp() {
+        tenantAuthCache = new TenantAuthCache(tenantRepository, new SimpleMeterRegistry(), 300, 100, 30, 100);
+    }
+
+    @Test
+    @DisplayName("Test authenticate twice, should query the repository once")
+    void authenticate_twice_queriesRepositoryOnce() {
+        Tenant tenant = new Tenant("default", "app-key", "Test tenant");
+        when(tenantRepository.findByTenantId("default")).thenReturn(tenant);
+
+        assertSame(tenant, tenantAuthCache.authenticate("default", "app-key"));
+        assertSame(tenant, tenantAuthCache.authenticate("default", "app-key"));
+
+        verify(tenantRepository, times(1)).findByTenantId("default");
+    }
+
+    @Test
+    @DisplayName("Test authenticate with a wrong key, should throw TenantNotFoundException without querying again")
+    void authenticate_wrongKey_throwsException() {
+        Tenant tenant = new Tenant("default", "app-key", "Test tenant");
+        when(tenantRepository.findByTenantId("default")).thenReturn(tenant);
+        tenantAuthCache.authenticate("default", "app-key");
+
+        assertThrows(TenantNotFoundException.class, () -> tenantAuthCache.authenticate("default", "wrong-key"));
+        assertThrows(TenantNotFoundException.class, () -> tenantAuthCache.authenticate("default", null));
+
+        verify(tenantRepository, times(1)).findByTenantId("default");
+    }
+
+    @Test
+    @DisplayName("Test authenticate an unknown tenant, should cache the failure until invalidated")
+    void authenticate_unknownTenant_cachesFailure() {
+        Tenant tenant = new Tenant("new-tenant", "app-key", "Test tenant");
+        when(tenantRepository.findByTenantId("new-tenant")).thenReturn(null, tenant);
+
+        assertThrows(TenantNotFoundException.class, () -> tenantAuthCache.authenticate("new-tenant", "app-key"));
+        assertThrows(TenantNotFoundException.class, () -> tenantAuthCache.authenticate("new-tenant", "app-key"));
+        verify(tenantRepository, times(1)).findByTenantId("new-tenant");
+
+        tenantAuthCache.invalidate("new-tenant");
+
+        assertSame(tenant, tenantAuthCache.authenticate("new-tenant", "app-key"));
+    }
+
+    @Test
+    @DisplayName("Test authenticate a tenant without an app key, should throw TenantNotFoundException")
+    void authenticate_tenantWithoutAppKey_throwsException() {
+        when(tenantRepository.findByTenantId("default")).thenReturn(new Tenant("default", null, "Test tenant"));
+
+        assertThrows(TenantNotFoundException.class, () -> tenantAuthCache.authenticate("default", "app-key"));
+    }
+}